@@ -0,0 +1,65 @@
+package cpen221.mp3.fsftbuffer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures get() throughput on a warm buffer of 10k objects read by 32 threads at once,
+ * for the single-lock FSFTBuffer and the striped ConcurrentFSFTBuffer. Other thread
+ * counts can be measured by passing -t to JMH.
+ * Run with: gradle jmh -Pjmh.includes=BufferContentionBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class BufferContentionBenchmark {
+
+    private static final int CAPACITY = 10_000;
+
+    @Param({"FSFTBuffer", "ConcurrentFSFTBuffer"})
+    String implementation;
+
+    Buffer<FSFTBufferBenchmark.Item> buffer;
+    String[] ids;
+
+    /**
+     * Where a thread reads from: each thread walks the ids from its own starting point.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+        int next;
+
+        @Setup(Level.Trial)
+        public void start(ThreadParams threads) {
+            next = threads.getThreadIndex() * 7919;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void fill() {
+        buffer = FSFTBufferBenchmark.create(implementation, CAPACITY);
+        ids = new String[CAPACITY];
+        for (int i = 0; i < CAPACITY; i++) {
+            FSFTBufferBenchmark.Item item = new FSFTBufferBenchmark.Item(i);
+            buffer.put(item);
+            ids[i] = item.id();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void empty() {
+        // the timing wheel is shared, so leave nothing scheduled on it
+        FSFTBufferBenchmark.clear(buffer);
+    }
+
+    @Benchmark
+    public FSFTBufferBenchmark.Item get(Reader reader) {
+        return buffer.get(ids[(reader.next++ & Integer.MAX_VALUE) % CAPACITY]);
+    }
+}
@@ -0,0 +1,11 @@
+package cpen221.mp3.fsftbuffer;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * The benchmarks of FSFTBufferBenchmark, run on every available core at once
+ * against one shared buffer.
+ */
+@Threads(Threads.MAX)
+public class ContendedFSFTBufferBenchmark extends FSFTBufferBenchmark {
+}
@@ -0,0 +1,206 @@
+package cpen221.mp3.fsftbuffer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measures the core operations of FSFTBuffer and ConcurrentFSFTBuffer on a
+ * single thread, at capacities from 32 to about a million objects.
+ * ContendedFSFTBufferBenchmark runs the same benchmarks on every core at once.
+ * Run with: gradle jmh (results are written to build/reports/jmh/results.json)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class FSFTBufferBenchmark {
+
+    /* a loader that finds nothing, so a miss costs a lookup and no load */
+    private static final Function<String, Item> NOTHING = id -> null;
+
+    static final class Item implements Bufferable {
+        private final String id;
+
+        Item(int i) {
+            this("page-" + i);
+        }
+
+        Item(String id) {
+            this.id = id;
+        }
+
+        public String id() {
+            return id;
+        }
+    }
+
+    /**
+     * A buffer filled to capacity with objects that have all been accessed, so every
+     * one of them may be evicted, and a pool of twice as many objects: the first
+     * half are in the buffer and the second half are not.
+     */
+    @State(Scope.Benchmark)
+    public static class Full {
+        @Param({"32", "1024", "32768", "1048576"})
+        int capacity;
+
+        @Param({"FSFTBuffer", "ConcurrentFSFTBuffer"})
+        String implementation;
+
+        Buffer<Item> buffer;
+        Item[] items;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            buffer = create(implementation, capacity);
+            items = new Item[2 * capacity];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = new Item(i);
+            }
+            for (int i = 0; i < capacity; i++) {
+                buffer.put(items[i]);
+                buffer.get(items[i].id());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void empty() {
+            // the timing wheel is shared, so leave nothing scheduled on it
+            clear(buffer);
+        }
+    }
+
+    /**
+     * An empty buffer and a pool of as many objects as it can hold.
+     */
+    @State(Scope.Benchmark)
+    public static class Empty {
+        @Param({"32", "1024", "32768", "1048576"})
+        int capacity;
+
+        @Param({"FSFTBuffer", "ConcurrentFSFTBuffer"})
+        String implementation;
+
+        Buffer<Item> buffer;
+        Item[] items;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            buffer = create(implementation, capacity);
+            items = new Item[capacity];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = new Item(i);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void empty() {
+            clear(buffer);
+        }
+    }
+
+    /**
+     * Where a thread is in the pool: a pseudo-random generator for lookups, and a
+     * cursor over the thread's own slice of the pool for puts, so that threads do
+     * not put the same objects.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int random;
+        int slice;
+        int next;
+
+        @Setup(Level.Trial)
+        public void start(ThreadParams threads) {
+            random = 0x9e3779b9 * (threads.getThreadIndex() + 1);
+            slice = threads.getThreadIndex();
+        }
+
+        /**
+         * @param bound a power of two
+         * @return a pseudo-random number in [0, bound)
+         */
+        int nextInt(int bound) {
+            random ^= random << 13;
+            random ^= random >>> 17;
+            random ^= random << 5;
+            return random & (bound - 1);
+        }
+
+        /**
+         * @param pool the number of objects in the pool
+         * @param threads the number of threads sharing the pool
+         * @return the index of the next object in this thread's slice, and -1 once the
+         * slice has been used up, after which it starts over
+         */
+        int nextInSlice(int pool, int threads) {
+            int size = Math.max(1, pool / threads);
+            if (next == size) {
+                next = 0;
+                return -1;
+            }
+            return (slice * size + next++) % pool;
+        }
+    }
+
+    static Buffer<Item> create(String implementation, int capacity) {
+        return implementation.equals("FSFTBuffer")
+                ? new FSFTBuffer<>(capacity, FSFTBuffer.DTIMEOUT)
+                : new ConcurrentFSFTBuffer<>(capacity, FSFTBuffer.DTIMEOUT);
+    }
+
+    /* empties a buffer without reporting removals */
+    static void clear(Buffer<Item> buffer) {
+        if (buffer instanceof ConcurrentFSFTBuffer) {
+            ((ConcurrentFSFTBuffer<Item>) buffer).clear();
+        } else {
+            ((FSFTBuffer<Item>) buffer).clear();
+        }
+    }
+
+    @Benchmark
+    public Item getHit(Full full, Cursor cursor) {
+        return full.buffer.get(full.items[cursor.nextInt(full.capacity)].id());
+    }
+
+    @Benchmark
+    public Item getMiss(Full full, Cursor cursor) {
+        return full.buffer.get(full.items[full.capacity + cursor.nextInt(full.capacity)].id(), NOTHING);
+    }
+
+    @Benchmark
+    public boolean touch(Full full, Cursor cursor) {
+        return full.buffer.touch(full.items[cursor.nextInt(full.capacity)].id());
+    }
+
+    /**
+     * put() into a buffer with room. Once a thread has put its whole slice the buffer
+     * is emptied, which costs each put a constant amount on average.
+     */
+    @Benchmark
+    public boolean put(Empty empty, Cursor cursor, ThreadParams threads) {
+        int i = cursor.nextInSlice(empty.capacity, threads.getThreadCount());
+        if (i == -1) {
+            clear(empty.buffer);
+            return false;
+        }
+        return empty.buffer.put(empty.items[i]);
+    }
+
+    /**
+     * put() into a full buffer, so that every put evicts the least recently accessed
+     * object, followed by a get() that makes the new object evictable in turn.
+     */
+    @Benchmark
+    public Item putEvicting(Full full, Cursor cursor, ThreadParams threads) {
+        int i = cursor.nextInSlice(full.items.length, threads.getThreadCount());
+        Item item = full.items[i == -1 ? cursor.nextInSlice(full.items.length, threads.getThreadCount()) : i];
+        full.buffer.put(item);
+        return full.buffer.get(item.id(), NOTHING);
+    }
+}
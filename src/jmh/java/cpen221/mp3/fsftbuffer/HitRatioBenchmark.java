@@ -0,0 +1,121 @@
+package cpen221.mp3.fsftbuffer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays request traces against FSFTBuffers with each eviction policy. Every request is
+ * a get() whose loader returns the requested object, as in WikiMediator.getPage. Each trial replays
+ * the whole trace once and prints the hit ratio; the benchmark measures one more request
+ * on the warm buffer. The synthetic traces have 1M requests over 100k ids; any other
+ * trace is read from a file, one requested id per line, e.g. with -p trace=requests.txt.
+ * Run with: gradle jmh -Pjmh.includes=HitRatioBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HitRatioBenchmark {
+
+    private static final int REQUESTS = 1_000_000;
+    private static final int IDS = 100_000;
+
+    @Param({"zipf", "zipf+scans", "loop"})
+    String trace;
+
+    @Param({"500", "2000"})
+    int capacity;
+
+    @Param({"LRU", "TINY_LFU"})
+    String policy;
+
+    FSFTBuffer<FSFTBufferBenchmark.Item> buffer;
+    FSFTBufferBenchmark.Item[] requests;
+    int next;
+
+    @Setup(Level.Trial)
+    public void replay() throws IOException {
+        String[] ids;
+        switch (trace) {
+            case "zipf":
+                ids = zipf(new Random(221), 0.9, 0);
+                break;
+            case "zipf+scans":
+                ids = zipf(new Random(221), 0.9, 5_000);
+                break;
+            case "loop":
+                ids = loop(2400);
+                break;
+            default:
+                ids = Files.readAllLines(Paths.get(trace)).toArray(new String[0]);
+        }
+        requests = new FSFTBufferBenchmark.Item[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            requests[i] = new FSFTBufferBenchmark.Item(ids[i]);
+        }
+
+        buffer = new FSFTBuffer<>(capacity, 3600, EvictionPolicy.valueOf(policy));
+        for (FSFTBufferBenchmark.Item item : requests) {
+            request(item);
+        }
+        System.out.printf("%n%s, capacity %d, %s: %.2f%% hits%n", trace, capacity, policy,
+                100 * buffer.stats().getHitRate());
+    }
+
+    @TearDown(Level.Trial)
+    public void empty() {
+        // the timing wheel is shared, so leave nothing scheduled on it
+        buffer.clear();
+    }
+
+    private FSFTBufferBenchmark.Item request(FSFTBufferBenchmark.Item item) {
+        return buffer.get(item.id(), id -> item);
+    }
+
+    /**
+     * @param scanLength if > 0, after every 10 * scanLength requests a scan of
+     *                   scanLength ids that are never requested again is inserted
+     */
+    private static String[] zipf(Random random, double skew, int scanLength) {
+        // inverse-CDF sampling over a precomputed cumulative distribution
+        double[] cumulative = new double[IDS];
+        double sum = 0;
+        for (int i = 0; i < IDS; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+
+        String[] trace = new String[REQUESTS];
+        int scanned = 0;
+        for (int r = 0; r < REQUESTS; r++) {
+            if (scanLength > 0 && r % (11 * scanLength) >= 10 * scanLength) {
+                trace[r] = "scan-" + scanned++;
+                continue;
+            }
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            trace[r] = "page-" + (index < 0 ? -index - 1 : index);
+        }
+        return trace;
+    }
+
+    private static String[] loop(int length) {
+        String[] trace = new String[REQUESTS];
+        for (int r = 0; r < REQUESTS; r++) {
+            trace[r] = "page-" + (r % length);
+        }
+        return trace;
+    }
+
+    @Benchmark
+    public FSFTBufferBenchmark.Item request() {
+        return request(requests[next++ % requests.length]);
+    }
+}
@@ -0,0 +1,103 @@
+package cpen221.mp3.wikimediator;
+
+import com.sun.net.httpserver.HttpServer;
+import org.fastily.jwiki.core.Wiki;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures getPage() on cached pages from every core at once, with requests counted as they are
+ * made (ringSize 0) and through the event ring, with and without flushing before reads. Every
+ * 64th call per thread also asks for zeitgeist(). Pages come from a local stand-in for Wikipedia,
+ * so only the cache and the request counting are measured.
+ * Run with: gradle jmh -Pjmh.includes=AsyncAnalyticsBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class AsyncAnalyticsBenchmark {
+
+    private static final int TITLES = 1000;
+
+    @Param({"0", "65536"})
+    int ringSize;
+
+    @Param({"false", "true"})
+    boolean flushOnRead;
+
+    HttpServer server;
+    WikiMediator mediator;
+    List<String> titles;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = stubWikipedia();
+        server.start();
+        Wiki wiki = new Wiki.Builder().withApiEndpoint(okhttp3.HttpUrl.parse(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/w/api.php")).build();
+        mediator = new WikiMediator(wiki, TITLES, 3600);
+        titles = new ArrayList<>();
+        for (int i = 0; i < TITLES; i++) {
+            titles.add("Page" + i);
+        }
+        mediator.getPages(titles);
+        mediator.setAsyncAnalytics(ringSize, flushOnRead);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        mediator.setAsyncAnalytics(0, false);
+        server.stop(0);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public Object getPage(Cursor cursor) {
+        int i = cursor.next++;
+        if ((i & 63) == 63) {
+            return mediator.zeitgeist(10);
+        }
+        return mediator.getPage(titles.get((i * 31) % TITLES));
+    }
+
+    /* answers the namespace query and page text queries, with a page "Title" of text "text of Title" */
+    private static HttpServer stubWikipedia() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/w/api.php", exchange -> {
+            String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+            String body;
+            if (query.contains("siteinfo")) {
+                body = "{\"query\":{\"namespaces\":{\"0\":{\"id\":0,\"case\":\"first-letter\",\"*\":\"\"}},"
+                        + "\"namespacealiases\":[]}}";
+            } else {
+                List<String> pages = new ArrayList<>();
+                String[] titles = query.replaceAll(".*titles=([^&]*).*", "$1").split("\\|");
+                for (int i = 0; i < titles.length; i++) {
+                    pages.add("\"" + (i + 1) + "\":{\"pageid\":" + (i + 1) + ",\"ns\":0,\"title\":\"" + titles[i]
+                            + "\",\"revisions\":[{\"*\":\"text of " + titles[i] + "\"}]}");
+                }
+                body = "{\"batchcomplete\":\"\",\"query\":{\"pages\":{" + String.join(",", pages) + "}}}";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        return server;
+    }
+}
@@ -0,0 +1,142 @@
+package cpen221.mp3.wikimediator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares exact and approximate request counting over an hour holding 2M requests for about
+ * 1M distinct Strings, most used once and a few very popular. maxError 0 is the exact tracker.
+ * Besides the times measured, each trial prints the heap the tracker retains, the share of the
+ * true top 10 that zeitgeist() and trending() list, and the largest error of a top 10 count
+ * relative to the true count.
+ * Run with: gradle jmh -Pjmh.includes=HeavyHittersBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx6g")
+@State(Scope.Benchmark)
+public class HeavyHittersBenchmark {
+
+    private static final int REQUESTS = 2_000_000;
+    private static final int HISTORY = 3600;
+    private static final int TRENDING = 300;
+
+    @Param({"0", "0.01", "0.001", "0.0001"})
+    double maxError;
+
+    RequestTracker exact;
+    HeavyHitters approximate;
+    int[] stream;
+    long now;
+    int next;
+
+    @Setup(Level.Trial)
+    public void record() {
+        Random random = new Random(221);
+        stream = new int[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            // half the requests are for Strings never used again, the rest skewed towards low numbers
+            double u = random.nextDouble();
+            stream[i] = random.nextBoolean() ? REQUESTS + i : (int) (u * u * u * 100_000);
+        }
+        // a whole number of minutes, so the trending() time frame falls on slot boundaries
+        now = 3_600_000;
+
+        long before = usedHeap();
+        if (maxError == 0) {
+            exact = new RequestTracker();
+        } else {
+            approximate = new HeavyHitters(maxError, HISTORY, 60);
+        }
+        for (int i = 0; i < REQUESTS; i++) {
+            recordAt(i, timeOf(i));
+        }
+        long retained = usedHeap() - before;
+
+        System.out.printf("%nmaxError %s: %d KiB retained, zeitgeist top 10 recall %.2f, max error %.4f,"
+                        + " trending top 10 recall %.2f, max error %.4f%n", maxError, retained >> 10,
+                recall(0, zeitgeist()), maxRelativeError(0), recall(now - TRENDING, trending()),
+                maxRelativeError(now - TRENDING));
+    }
+
+    private long timeOf(int i) {
+        return now - HISTORY + (long) i * HISTORY / REQUESTS;
+    }
+
+    private void recordAt(int i, long time) {
+        String request = "Title " + stream[i];
+        if (exact != null) {
+            exact.record(request, time);
+        } else {
+            approximate.record(request, time);
+        }
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /* the true counts of the requests made at or after since */
+    private Map<String, Integer> trueCounts(long since) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            if (timeOf(i) >= since) {
+                counts.merge("Title " + stream[i], 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private List<String> trueTop(Map<String, Integer> counts) {
+        List<String> top = new ArrayList<>(counts.keySet());
+        top.sort((s1, s2) -> Integer.compare(counts.get(s2), counts.get(s1)));
+        return top.subList(0, 10);
+    }
+
+    private double recall(long since, List<String> listed) {
+        List<String> top = trueTop(trueCounts(since));
+        return top.stream().filter(listed::contains).count() / 10.0;
+    }
+
+    /* how far off the all-time count or the count since a time of the true top 10 is, at worst */
+    private double maxRelativeError(long since) {
+        if (exact != null) {
+            return 0;
+        }
+        Map<String, Integer> counts = trueCounts(since);
+        double worst = 0;
+        for (String request : trueTop(counts)) {
+            long estimate = since == 0 ? approximate.count(request)
+                    : approximate.countSince(request, now, (int) (now - since));
+            worst = Math.max(worst, Math.abs(estimate - counts.get(request)) / (double) counts.get(request));
+        }
+        return worst;
+    }
+
+    @Benchmark
+    public void recordOne() {
+        int i = next++ % REQUESTS;
+        recordAt(i, now);
+    }
+
+    @Benchmark
+    public List<String> zeitgeist() {
+        return exact != null ? exact.mostCommon(10) : approximate.mostCommon(10);
+    }
+
+    @Benchmark
+    public List<String> trending() {
+        return exact != null ? exact.mostCommonSince(now, TRENDING, 10)
+                : approximate.mostCommonSince(now, TRENDING, 10);
+    }
+}
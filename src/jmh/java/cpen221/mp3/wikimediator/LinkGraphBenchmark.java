@@ -0,0 +1,56 @@
+package cpen221.mp3.wikimediator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures shortestPath() over an offline link graph of PAGES pages with LINKS random links each,
+ * between random pairs of pages, and prints the graph's size and how long building it took.
+ * Run with: gradle jmh -Pjmh.includes=LinkGraphBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class LinkGraphBenchmark {
+
+    private static final int LINKS = 10;
+
+    @Param({"1000000", "3000000"})
+    int pages;
+
+    LinkGraph graph;
+    String[] titles;
+    Random random;
+
+    @Setup(Level.Trial)
+    public void build() {
+        // zero-padded, so that title order is number order and the links can be numbered directly
+        titles = new String[pages];
+        for (int i = 0; i < pages; i++) {
+            titles[i] = String.format("Page %08d", i);
+        }
+        random = new Random(221);
+        int[] sources = new int[pages * LINKS];
+        int[] targets = new int[pages * LINKS];
+        for (int e = 0; e < sources.length; e++) {
+            sources[e] = e / LINKS;
+            targets[e] = random.nextInt(pages);
+        }
+        long start = System.nanoTime();
+        graph = LinkGraph.of(titles, sources, targets, sources.length);
+        System.out.printf("%n%d pages, %d links, built in %d ms%n", graph.pageCount(), graph.linkCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Benchmark
+    public List<String> shortestPath() {
+        return graph.shortestPath(titles[random.nextInt(pages)], titles[random.nextInt(pages)],
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+    }
+}
@@ -0,0 +1,95 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.fsftbuffer.FSFTBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a page cache holding 10k synthetic pages of wiki-like text on the heap against
+ * one holding them compressed off-heap. Each trial fills the cache and prints the heap
+ * retained, the off-heap memory reserved and the length of a full GC; the benchmark
+ * measures reading the text of a random cached page. Run with -prof gc to also see the
+ * garbage each read leaves behind.
+ * Run with: gradle jmh -Pjmh.includes=OffHeapPageBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class OffHeapPageBenchmark {
+
+    private static final String[] WORDS = {
+        "the", "of", "and", "in", "was", "[[Category:", "]]", "{{cite web", "|url=", "}}",
+        "population", "river", "century", "album", "released", "football", "village", "province",
+        "<ref>", "</ref>", "==History==", "==References==", "'''", "''", "\n"
+    };
+
+    @Param({"heap", "offheap"})
+    String storage;
+
+    @Param({"10000"})
+    int pages;
+
+    @Param({"20000"})
+    int pageChars;
+
+    FSFTBuffer<WikiPage> buffer;
+    String[] titles;
+    Random random;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        OffHeapArena arena = new OffHeapArena();
+        buffer = new FSFTBuffer<>(pages, 3600);
+        buffer.setRemovalListener((page, cause) -> page.release());
+
+        random = new Random(221);
+        titles = new String[pages];
+        long before = usedHeap();
+        for (int i = 0; i < pages; i++) {
+            titles[i] = "Page " + i;
+            String text = syntheticText(random, pageChars, i);
+            buffer.put(storage.equals("offheap") ? new WikiPage(titles[i], text, arena)
+                    : new WikiPage(titles[i], text));
+        }
+        long retained = usedHeap() - before;
+
+        long start = System.nanoTime();
+        System.gc();
+        long fullGcMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%n%s: %.1f MiB retained on the heap, %.1f MiB reserved off-heap, %d ms full GC%n",
+                storage, retained / 1048576.0, arena.getReservedBytes() / 1048576.0, fullGcMillis);
+    }
+
+    private static String syntheticText(Random random, int chars, int seed) {
+        StringBuilder text = new StringBuilder(chars + 32);
+        text.append("'''Page ").append(seed).append("''' ");
+        while (text.length() < chars) {
+            if (random.nextInt(8) == 0) {
+                text.append(random.nextInt(100_000));
+            } else {
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            text.append(' ');
+        }
+        return text.toString();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public int read() {
+        return buffer.get(titles[random.nextInt(pages)]).getText().length();
+    }
+}
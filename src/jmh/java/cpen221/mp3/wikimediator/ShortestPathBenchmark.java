@@ -0,0 +1,123 @@
+package cpen221.mp3.wikimediator;
+
+import com.sun.net.httpserver.HttpServer;
+import org.fastily.jwiki.core.Wiki;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Measures the wall-clock time of shortestPath() over 4000 pages of 10 random links each, between
+ * two pages 4 links apart, as more link fetches are let run at once. Links come from a stand-in
+ * that waits LATENCY_MILLIS on every fetch, like a round trip to Wikipedia, so the search is bound
+ * by how many fetches overlap rather than by the processor.
+ * Run with: gradle jmh -Pjmh.includes=ShortestPathBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShortestPathBenchmark {
+
+    private static final int PAGES = 4000;
+    private static final int LINKS = 10;
+    private static final int DISTANCE = 4;
+    private static final long LATENCY_MILLIS = 5;
+
+    @Param({"1", "4", "16", "64"})
+    int maxInFlight;
+
+    HttpServer server;
+    WikiMediator mediator;
+    String start;
+    String target;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        Map<String, List<String>> from = new HashMap<>();
+        Map<String, List<String>> to = new HashMap<>();
+        Random random = new Random(221);
+        for (int i = 0; i < PAGES; i++) {
+            for (int j = 0; j < LINKS; j++) {
+                String linked = "Page" + random.nextInt(PAGES);
+                from.computeIfAbsent("Page" + i, p -> new ArrayList<>()).add(linked);
+                to.computeIfAbsent(linked, p -> new ArrayList<>()).add("Page" + i);
+            }
+        }
+        start = "Page0";
+        target = farPage(from);
+
+        // only the namespace query at startup reaches Wikipedia's stand-in
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/w/api.php", exchange -> {
+            byte[] bytes = ("{\"query\":{\"namespaces\":{\"0\":{\"id\":0,\"case\":\"first-letter\",\"*\":\"\"}},"
+                    + "\"namespacealiases\":[]}}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+        Wiki wiki = new Wiki.Builder().withApiEndpoint(okhttp3.HttpUrl.parse(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/w/api.php")).build();
+        mediator = new WikiMediator(wiki, 10, 3600);
+        mediator.setLinkProvider(new LinkProvider() {
+            @Override
+            public List<String> linksFrom(String title) {
+                return afterLatency(from.getOrDefault(title, List.of()));
+            }
+
+            @Override
+            public List<String> linksTo(String title) {
+                return afterLatency(to.getOrDefault(title, List.of()));
+            }
+        });
+        mediator.setPathConcurrency(maxInFlight);
+    }
+
+    /* the first page, in page order, that is DISTANCE links from start */
+    private String farPage(Map<String, List<String>> from) {
+        Map<String, Integer> distances = new HashMap<>(Map.of(start, 0));
+        Deque<String> queue = new ArrayDeque<>(List.of(start));
+        while (!queue.isEmpty()) {
+            String page = queue.poll();
+            for (String linked : from.getOrDefault(page, List.of())) {
+                if (distances.putIfAbsent(linked, distances.get(page) + 1) == null) {
+                    queue.add(linked);
+                }
+            }
+        }
+        for (int i = 0; i < PAGES; i++) {
+            if (distances.getOrDefault("Page" + i, -1) == DISTANCE) {
+                return "Page" + i;
+            }
+        }
+        throw new IllegalStateException("no page is " + DISTANCE + " links away");
+    }
+
+    private static List<String> afterLatency(List<String> links) {
+        try {
+            Thread.sleep(LATENCY_MILLIS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return links;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        mediator.setPathConcurrency(1);
+        server.stop(0);
+    }
+
+    @Benchmark
+    public List<String> shortestPath() throws TimeoutException {
+        return mediator.shortestPath(start, target, 60);
+    }
+}
@@ -0,0 +1,101 @@
+package cpen221.mp3.wikimediator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares keeping request times as boxed Longs, one per request in an ArrayList for each
+ * String and one in a synchronized list of every request, against the per-second primitive
+ * buckets of RequestTracker and LoadTracker. Each trial records 10M requests for 100k Strings
+ * over a day and prints the heap retained; the benchmarks measure recording one more request
+ * and reading the times of the most popular String through getCountList(). Run with -prof gc
+ * to also see the garbage each operation leaves behind.
+ * Run with: gradle jmh -Pjmh.includes=TimestampLogBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+@State(Scope.Benchmark)
+public class TimestampLogBenchmark {
+
+    private static final int REQUESTS = 10_000_000;
+    private static final int TITLES = 100_000;
+    private static final int HISTORY = 86400;
+
+    @Param({"boxed", "buckets"})
+    String storage;
+
+    Map<String, ArrayList<Long>> boxedTimes;
+    List<Long> boxedAll;
+    RequestTracker tracker;
+    LoadTracker load;
+    Request popular;
+    String[] titles;
+    long now;
+    int next;
+
+    @Setup(Level.Trial)
+    public void record() {
+        titles = new String[TITLES];
+        for (int i = 0; i < TITLES; i++) {
+            titles[i] = "Title " + i;
+        }
+        Random random = new Random(221);
+        now = 1_000_000;
+
+        long before = usedHeap();
+        if (storage.equals("boxed")) {
+            boxedTimes = new HashMap<>();
+            boxedAll = Collections.synchronizedList(new ArrayList<>());
+        } else {
+            tracker = new RequestTracker();
+            load = new LoadTracker();
+        }
+        for (int i = 0; i < REQUESTS; i++) {
+            // cubing a uniform number makes low-numbered titles far more popular
+            double u = random.nextDouble();
+            recordAt(titles[(int) (u * u * u * TITLES)], now - HISTORY + (long) i * HISTORY / REQUESTS);
+        }
+        long retained = usedHeap() - before;
+        System.out.printf("%n%s: %d MiB retained for %d requests%n", storage, retained >> 20, REQUESTS);
+
+        if (tracker != null) {
+            popular = tracker.requests().get(0);
+        }
+    }
+
+    private void recordAt(String title, long time) {
+        if (tracker != null) {
+            tracker.record(title, time);
+            load.record(time);
+        } else {
+            boxedTimes.computeIfAbsent(title, t -> new ArrayList<>()).add(time);
+            boxedAll.add(time);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public void recordOne() {
+        recordAt(titles[next++ % TITLES], now);
+    }
+
+    @Benchmark
+    public long countList() {
+        // the old getCountList() cloned the list
+        List<Long> times = tracker != null ? popular.getCountList()
+                : new ArrayList<>(boxedTimes.get(titles[0]));
+        return times.size() + times.get(times.size() / 2);
+    }
+}
@@ -0,0 +1,122 @@
+package cpen221.mp3.fsftbuffer;
+
+import cpen221.mp3.server.WikiMediatorState;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * A finite-space, finite-time buffer of objects keyed by id. FSFTBuffer keeps its objects
+ * under one lock; ConcurrentFSFTBuffer spreads them over independently locked FSFTBuffers.
+ *
+ * @param <T> the type of the objects in the buffer
+ */
+public interface Buffer<T extends Bufferable> {
+
+    /**
+     * Add an object to the buffer, evicting objects chosen by the buffer's
+     * eviction policy if it is full. If the objects the policy may evict
+     * do not free enough room, nothing is evicted and the object is not added.
+     *
+     * @param t object to be added to the buffer
+     * @return true if successful and false if it is already in the buffer
+     * or if the buffer is full
+     */
+    boolean put(T t);
+
+    /**
+     * @param id the identifier of the object to be retrieved
+     * @return the object that matches the identifier from the buffer
+     * @throws NoSuchElementException if object is not in the buffer
+     */
+    T get(String id) throws NoSuchElementException;
+
+    /**
+     * Retrieve an object, loading it if it is not in the buffer.
+     * At most one load per id is in progress at a time: callers that miss
+     * while the id is being loaded wait for that load and get its result.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @param loader computes the object with the identifier, or returns null
+     *               if there is none; it is called without the buffer locked
+     * @return the object that matches the identifier, or null if it is not
+     * in the buffer and the loader returned null
+     */
+    T get(String id, Function<? super String, ? extends T> loader);
+
+    /**
+     * @param ids the identifiers of the objects to be retrieved
+     * @return the objects in the buffer that match the identifiers, keyed
+     * by id, in the order of {@code ids}; ids with no object are left out
+     */
+    Map<String, T> getAll(Collection<String> ids);
+
+    /**
+     * @param objects the objects to be added to the buffer
+     * @return the objects that were not added, in the order of {@code objects}
+     */
+    List<T> putAll(Collection<? extends T> objects);
+
+    /**
+     * @param id the identifier of the object to "touch"
+     * @return true if successful and false otherwise
+     */
+    boolean touch(String id);
+
+    /**
+     * @param t the object to update
+     * @return true if successful and false otherwise
+     */
+    boolean update(T t);
+
+    /**
+     * @param listener the listener to notify whenever an object leaves the buffer,
+     *                 or null to stop notifying
+     */
+    void setRemovalListener(RemovalListener<? super T> listener);
+
+    /**
+     * @param loader computes the current version of the object with an id, or null
+     *               to turn refresh-ahead off
+     * @param fraction the fraction of the timeout after which an object is reloaded
+     */
+    void setRefreshAhead(Function<? super String, ? extends T> loader, double fraction);
+
+    /**
+     * @param expireAfterWrite true if objects should time out a fixed time after they were put
+     *                         or last updated, however often they are read, and false if get()
+     *                         should refresh them as well
+     */
+    void setExpireAfterWrite(boolean expireAfterWrite);
+
+    /**
+     * @return what the buffer has done since it was created
+     */
+    CacheStats stats();
+
+    /**
+     * Below is a collection of observer methods that allow the creation of a WikiMediatorState object,
+     * and a mutator method that loads the state of a past Buffer for use in servers.
+     */
+    int getCapacity();
+    int getTimeout();
+    long getMaxWeight();
+    boolean isWeighted();
+    EvictionPolicy getEvictionPolicy();
+    long getCurrentWeight();
+    int getCurrentCapacity();
+    Map<String, T> getBuffer();
+    List<String> getBufferIds();
+
+    /**
+     * Replace the contents of this buffer with the objects saved in {@code state}, and take
+     * its capacity, unless the buffer has a weigher, and its timeout.
+     * Loaded objects count as freshly refreshed and not yet accessed.
+     *
+     * @param state a saved state whose buffer holds objects of type T
+     */
+    void loadState(WikiMediatorState state);
+}
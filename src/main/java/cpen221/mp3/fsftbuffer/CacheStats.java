@@ -0,0 +1,149 @@
+package cpen221.mp3.fsftbuffer;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of what a buffer has done since it was created: how
+ * often lookups found an object, how many objects were added, refused, evicted
+ * and expired, and how long get(id, loader) and refresh-ahead loads took.
+ */
+public final class CacheStats {
+
+    /*
+        AF:
+        - loadLatency[i] is the number of loads that took between 2^(i-1) and
+          2^i - 1 ns, and loadLatency[0] the number that took no measurable time.
+
+        RI:
+        - every count is >= 0
+        - loadLatency.length == LATENCY_BUCKETS, and its sum is loads + loadFailures
+     */
+
+    /* one bucket per power of two of nanoseconds, which covers every long */
+    static final int LATENCY_BUCKETS = 64;
+
+    private final long hits;
+    private final long misses;
+    private final long puts;
+    private final long rejections;
+    private final long evictions;
+    private final long expiries;
+    private final long loads;
+    private final long loadFailures;
+    private final long totalLoadTime;
+    private final long[] loadLatency;
+
+    CacheStats(long hits, long misses, long puts, long rejections, long evictions, long expiries,
+               long loads, long loadFailures, long totalLoadTime, long[] loadLatency) {
+        this.hits = hits;
+        this.misses = misses;
+        this.puts = puts;
+        this.rejections = rejections;
+        this.evictions = evictions;
+        this.expiries = expiries;
+        this.loads = loads;
+        this.loadFailures = loadFailures;
+        this.totalLoadTime = totalLoadTime;
+        this.loadLatency = loadLatency;
+    }
+
+    /**
+     * @param nanos a duration in nanoseconds
+     * @return the index of the histogram bucket the duration falls in
+     */
+    static int bucket(long nanos) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+    }
+
+    /**
+     * @return the number of lookups by get(), getAll() and get(id, loader) that found a live object
+     */
+    public long getHitCount() { return hits; }
+
+    /**
+     * @return the number of lookups that found no live object
+     */
+    public long getMissCount() { return misses; }
+
+    /**
+     * @return the fraction of lookups that found a live object, or 1 if there were none
+     */
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * @return the number of objects added to the buffer, by put() or by a load
+     */
+    public long getPutCount() { return puts; }
+
+    /**
+     * @return the number of objects refused because the buffer was full and
+     * not enough objects could be evicted
+     */
+    public long getRejectionCount() { return rejections; }
+
+    /**
+     * @return the number of objects evicted to make room for others
+     */
+    public long getEvictionCount() { return evictions; }
+
+    /**
+     * @return the number of objects removed because they were not refreshed within the timeout
+     */
+    public long getExpiryCount() { return expiries; }
+
+    /**
+     * @return the number of loads that returned, including those that returned null
+     */
+    public long getLoadCount() { return loads; }
+
+    /**
+     * @return the number of loads that threw
+     */
+    public long getLoadFailureCount() { return loadFailures; }
+
+    /**
+     * @return the mean time a load took in nanoseconds, or 0 if there were none
+     */
+    public double getAverageLoadNanos() {
+        long total = loads + loadFailures;
+        return total == 0 ? 0 : (double) totalLoadTime / total;
+    }
+
+    /**
+     * @return the load-latency histogram: element i is the number of loads that took
+     * between 2^(i-1) and 2^i - 1 nanoseconds, and element 0 the number that took no
+     * measurable time
+     */
+    public long[] getLoadLatencyHistogram() { return loadLatency.clone(); }
+
+    /**
+     * Estimate a percentile of load latency from the histogram.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return an upper bound, within a factor of two, on the time in nanoseconds that
+     * the given percentage of loads took at most, or 0 if there were no loads
+     */
+    public long getLoadLatencyPercentile(double percentile) {
+        long total = loads + loadFailures;
+        long rank = (long) Math.ceil(percentile / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < loadLatency.length; i++) {
+            seen += loadLatency[i];
+            if (seen >= rank && seen > 0) {
+                return (1L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hits + ", misses=" + misses + ", puts=" + puts + ", rejections=" + rejections
+                + ", evictions=" + evictions + ", expiries=" + expiries + ", loads=" + loads + ", loadFailures="
+                + loadFailures + ", averageLoadNanos=" + getAverageLoadNanos() + ", loadLatency="
+                + Arrays.toString(loadLatency) + "}";
+    }
+}
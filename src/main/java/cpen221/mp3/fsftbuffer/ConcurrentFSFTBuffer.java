@@ -0,0 +1,518 @@
+package cpen221.mp3.fsftbuffer;
+
+import cpen221.mp3.server.WikiMediatorState;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+public class ConcurrentFSFTBuffer<T extends Bufferable> implements Buffer<T> {
+
+    /*
+        AF:
+        - The buffer holds the union of the objects in all segments. An object with
+          a given id can only ever live in segments[segmentIndex(id)].
+        - Each segment is an FSFTBuffer with its own lock, so operations on ids in
+          different segments never wait for each other.
+
+        RI:
+        - segments.size() is a power of two, and every segment has this buffer's
+          maxWeight, timeout, weigher and policy.
+        - weight >= the total weight of the objects in all segments, and exceeds it only by
+          the puts currently in progress.
+        - weight <= maxWeight, except after an update() made an object heavier; the next
+          put() then evicts until the limit holds again.
+        - removalListener, reloader, refreshFraction and expireAfterWrite are what every
+          segment was last given.
+     */
+
+    private volatile long maxWeight;
+    private volatile int timeout;
+    private final ToLongFunction<? super T> weigher;
+    private final EvictionPolicy policy;
+
+    private volatile List<FSFTBuffer<T>> segments;
+    private final AtomicLong weight = new AtomicLong();
+    private final StatsCounter stats = new StatsCounter();
+
+    private RemovalListener<? super T> removalListener;
+    private Function<? super String, ? extends T> reloader;
+    private double refreshFraction;
+    private boolean expireAfterWrite;
+
+    /**
+     * Create a concurrent buffer with a fixed capacity, a timeout value and
+     * a number of independently locked segments.
+     *
+     * @param capacity the number of objects the buffer can hold,
+     *                 is greater than 0
+     * @param timeout  the duration, in seconds, an object should
+     *                 be in the buffer before it times out,
+     *                 is greater than 0
+     * @param concurrencyLevel the expected number of threads using the buffer at once,
+     *                         is greater than 0
+     */
+    public ConcurrentFSFTBuffer(int capacity, int timeout, int concurrencyLevel) {
+        this(capacity, timeout, FSFTBuffer.UNIT, EvictionPolicy.LRU, concurrencyLevel);
+    }
+
+    /**
+     * Create a concurrent buffer bounded by the total weight of its objects rather
+     * than their number, with a number of independently locked segments.
+     *
+     * @param maxWeight the maximum total weight of the objects in the buffer,
+     *                  is greater than 0
+     * @param timeout   the duration, in seconds, an object should
+     *                  be in the buffer before it times out,
+     *                  is greater than 0
+     * @param weigher   computes the weight of an object, which must be >= 0
+     *                  and must not change while the object is in the buffer
+     * @param concurrencyLevel the expected number of threads using the buffer at once,
+     *                         is greater than 0
+     */
+    public ConcurrentFSFTBuffer(long maxWeight, int timeout, ToLongFunction<? super T> weigher,
+                                int concurrencyLevel) {
+        this(maxWeight, timeout, weigher, EvictionPolicy.LRU, concurrencyLevel);
+    }
+
+    /**
+     * Create a concurrent buffer bounded by the total weight of its objects, with the
+     * policy it evicts objects by when it is full and a number of independently locked
+     * segments. Each segment applies the policy to its own objects; the segment to evict
+     * from is the one whose next victim was accessed longest ago.
+     *
+     * @param maxWeight the maximum total weight of the objects in the buffer,
+     *                  is greater than 0
+     * @param timeout   the duration, in seconds, an object should
+     *                  be in the buffer before it times out,
+     *                  is greater than 0
+     * @param weigher   computes the weight of an object, which must be >= 0
+     *                  and must not change while the object is in the buffer
+     * @param policy    the eviction policy
+     * @param concurrencyLevel the expected number of threads using the buffer at once,
+     *                         is greater than 0
+     */
+    public ConcurrentFSFTBuffer(long maxWeight, int timeout, ToLongFunction<? super T> weigher,
+                                EvictionPolicy policy, int concurrencyLevel) {
+        this.maxWeight = maxWeight;
+        this.timeout = timeout;
+        this.weigher = weigher;
+        this.policy = policy;
+
+        int n = 1;
+        while (n < concurrencyLevel) {
+            n <<= 1;
+        }
+        segments = createSegments(n);
+    }
+
+    /**
+     * @param n the number of segments, a power of two
+     * @return n empty segments with this buffer's limits and settings
+     */
+    private List<FSFTBuffer<T>> createSegments(int n) {
+        List<FSFTBuffer<T>> created = new ArrayList<>(n);
+        long segmentShare = Math.max(1, maxWeight / n);
+        for (int i = 0; i < n; i++) {
+            // every segment may hold the whole weight; the global limit is enforced through weight
+            // segments count into this buffer's stats, so stats() covers all of them
+            FSFTBuffer<T> segment = new FSFTBuffer<>(maxWeight, timeout, weigher, policy, segmentShare, stats) {
+                @Override
+                void removed(T t, long w, RemovalCause cause) {
+                    weight.addAndGet(-w);
+                    super.removed(t, w, cause);
+                }
+
+                @Override
+                void reweighed(long delta) {
+                    weight.addAndGet(delta);
+                }
+            };
+            segment.setRemovalListener(removalListener);
+            segment.setRefreshAhead(reloader, refreshFraction);
+            segment.setExpireAfterWrite(expireAfterWrite);
+            created.add(segment);
+        }
+        return created;
+    }
+
+    /**
+     * Create a concurrent buffer with one segment per available processor.
+     *
+     * @param capacity the number of objects the buffer can hold,
+     *                 is greater than 0
+     * @param timeout  the duration, in seconds, an object should
+     *                 be in the buffer before it times out,
+     *                 is greater than 0
+     */
+    public ConcurrentFSFTBuffer(int capacity, int timeout) {
+        this(capacity, timeout, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a concurrent buffer bounded by the total weight of its objects,
+     * with one segment per available processor.
+     *
+     * @param maxWeight the maximum total weight of the objects in the buffer,
+     *                  is greater than 0
+     * @param timeout   the duration, in seconds, an object should
+     *                  be in the buffer before it times out,
+     *                  is greater than 0
+     * @param weigher   computes the weight of an object, which must be >= 0
+     *                  and must not change while the object is in the buffer
+     */
+    public ConcurrentFSFTBuffer(long maxWeight, int timeout, ToLongFunction<? super T> weigher) {
+        this(maxWeight, timeout, weigher, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a concurrent buffer bounded by the total weight of its objects, with the
+     * policy it evicts objects by when it is full and one segment per available processor.
+     *
+     * @param maxWeight the maximum total weight of the objects in the buffer,
+     *                  is greater than 0
+     * @param timeout   the duration, in seconds, an object should
+     *                  be in the buffer before it times out,
+     *                  is greater than 0
+     * @param weigher   computes the weight of an object, which must be >= 0
+     *                  and must not change while the object is in the buffer
+     * @param policy    the eviction policy
+     */
+    public ConcurrentFSFTBuffer(long maxWeight, int timeout, ToLongFunction<? super T> weigher,
+                                EvictionPolicy policy) {
+        this(maxWeight, timeout, weigher, policy, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a concurrent buffer with a fixed capacity, a timeout value, the policy it
+     * evicts objects by when it is full and one segment per available processor.
+     *
+     * @param capacity the number of objects the buffer can hold,
+     *                 is greater than 0
+     * @param timeout  the duration, in seconds, an object should
+     *                 be in the buffer before it times out,
+     *                 is greater than 0
+     * @param policy   the eviction policy
+     */
+    public ConcurrentFSFTBuffer(int capacity, int timeout, EvictionPolicy policy) {
+        this(capacity, timeout, FSFTBuffer.UNIT, policy, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a concurrent buffer with default capacity (32) and timeout (3600 s) values.
+     */
+    public ConcurrentFSFTBuffer() {
+        this(FSFTBuffer.DSIZE, FSFTBuffer.DTIMEOUT);
+    }
+
+    private FSFTBuffer<T> segmentFor(String id) {
+        List<FSFTBuffer<T>> current = segments;
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return current.get(h & (current.size() - 1));
+    }
+
+    /**
+     * Add an object to the buffer.
+     * If the buffer is full then evict objects, chosen by the eviction
+     * policy across all segments, until the new object fits.
+     * If the buffer is full and the objects the policy may evict
+     * do not free enough room, nothing is evicted and the new object is not added.
+     * Objects are only evicted once the new object is known to fit, though another
+     * thread may still add an object with the same id first.
+     *
+     * @param t object to be added to the buffer
+     * @return true if successful and false if it is
+     *          already in the buffer or if the buffer is full
+     *          (in the case where not enough objects have been accessed)
+     */
+    @Override
+    public boolean put(T t) {
+        FSFTBuffer<T> segment = segmentFor(t.id());
+        long w = weigher.applyAsLong(t);
+
+        if (segment.contains(t.id())) {
+            return false;
+        }
+        if (w > maxWeight || !reserve(w)) {
+            stats.recordRejection();
+            return false;
+        }
+
+        if (!segment.put(t)) {
+            // another thread added the same id after the check above
+            weight.addAndGet(-w);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Claim room for an object of weight w, evicting from the segment whose next
+     * victim was accessed longest ago while the buffer is full. Nothing is evicted
+     * unless the objects the policy may evict free enough room.
+     *
+     * @param w the weight to claim, is at most maxWeight
+     * @return true if room was claimed, false if the buffer is full and not enough can be evicted
+     */
+    private boolean reserve(long w) {
+        while (true) {
+            long current = weight.get();
+            if (current + w <= maxWeight) {
+                if (weight.compareAndSet(current, current + w)) {
+                    return true;
+                }
+                continue;
+            }
+
+            // stale objects are removed while counting what may be evicted
+            long evictable = 0;
+            for (FSFTBuffer<T> segment : segments) {
+                evictable += segment.evictableWeight();
+            }
+            if (weight.get() + w <= maxWeight) {
+                continue;
+            }
+
+            // not enough that may be evicted = no more space, so evicting anything would be for nothing
+            if (weight.get() - evictable + w > maxWeight) {
+                return false;
+            }
+
+            FSFTBuffer<T> victim = null;
+            long leastRecent = Long.MAX_VALUE;
+            for (FSFTBuffer<T> segment : segments) {
+                long lastAccessed = segment.leastRecentAccess();
+                if (lastAccessed < leastRecent) {
+                    leastRecent = lastAccessed;
+                    victim = segment;
+                }
+            }
+
+            // another thread evicted or accessed what was evictable since it was counted
+            if (victim == null) {
+                return false;
+            }
+
+            // a concurrent get may have moved the victim; any evictable object is acceptable then
+            victim.evictLeastRecent();
+        }
+    }
+
+    /**
+     * @param id the identifier of the object to be retrieved
+     * @return the object that matches the identifier from the
+     * buffer
+     * @throws NoSuchElementException if object is not in the buffer
+     */
+    @Override
+    public T get(String id) throws NoSuchElementException {
+        return segmentFor(id).get(id);
+    }
+
+    /**
+     * Retrieve an object, loading it if it is not in the buffer.
+     * At most one load per id is in progress at a time: callers that miss
+     * while the id is being loaded wait for that load and get its result.
+     * A loaded object is added to the buffer as if by put(), so it does not
+     * count as accessed; if the buffer refuses it, it is still returned.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @param loader computes the object with the identifier, or returns null
+     *               if there is none; it is called without the buffer locked
+     * @return the object that matches the identifier, or null if it is not
+     * in the buffer and the loader returned null
+     */
+    @Override
+    public T get(String id, Function<? super String, ? extends T> loader) {
+        // loads are coalesced by the owning segment, but stored through put() to respect the global limit
+        return segmentFor(id).get(id, loader, this::put);
+    }
+
+    /**
+     * Retrieve several objects at once, locking each segment involved only once.
+     * Each object found counts as accessed, as with get().
+     *
+     * @param ids the identifiers of the objects to be retrieved
+     * @return the objects in the buffer that match the identifiers, keyed
+     * by id, in the order of {@code ids}; ids with no object are left out
+     */
+    @Override
+    public Map<String, T> getAll(Collection<String> ids) {
+        Map<FSFTBuffer<T>, List<String>> bySegment = new HashMap<>();
+        for (String id : ids) {
+            bySegment.computeIfAbsent(segmentFor(id), segment -> new ArrayList<>()).add(id);
+        }
+
+        Map<String, T> found = new HashMap<>();
+        bySegment.forEach((segment, segmentIds) -> found.putAll(segment.getAll(segmentIds)));
+
+        Map<String, T> ordered = new LinkedHashMap<>();
+        for (String id : ids) {
+            T t = found.get(id);
+            if (t != null) {
+                ordered.put(id, t);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Add several objects at once, as put() would one after the other.
+     * Room is claimed for each object separately, since making room may
+     * evict from any segment.
+     *
+     * @param objects the objects to be added to the buffer
+     * @return the objects that were not added, because they were already
+     * in the buffer or the buffer was full, in the order of {@code objects}
+     */
+    @Override
+    public List<T> putAll(Collection<? extends T> objects) {
+        List<T> refused = new ArrayList<>();
+        for (T t : objects) {
+            if (!put(t)) {
+                refused.add(t);
+            }
+        }
+        return refused;
+    }
+
+    /**
+     * Update the last refresh time for the object with the provided id.
+     * This method is used to mark an object as "not stale" so that its
+     * timeout is delayed.
+     *
+     * @param id the identifier of the object to "touch"
+     * @return true if successful and false otherwise
+     */
+    @Override
+    public boolean touch(String id) {
+        return segmentFor(id).touch(id);
+    }
+
+    /**
+     * Update an object in the buffer.
+     * This method updates an object and acts like a "touch" to
+     * renew the object in the cache.
+     *
+     * @param t the object to update
+     * @return true if successful and false otherwise
+     */
+    @Override
+    public boolean update(T t) {
+        return segmentFor(t.id()).update(t);
+    }
+
+    @Override
+    public synchronized void setRemovalListener(RemovalListener<? super T> listener) {
+        removalListener = listener;
+        for (FSFTBuffer<T> segment : segments) {
+            segment.setRemovalListener(listener);
+        }
+    }
+
+    @Override
+    public synchronized void setRefreshAhead(Function<? super String, ? extends T> loader, double fraction) {
+        reloader = loader;
+        refreshFraction = fraction;
+        for (FSFTBuffer<T> segment : segments) {
+            segment.setRefreshAhead(loader, fraction);
+        }
+    }
+
+    @Override
+    public synchronized void setExpireAfterWrite(boolean expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+        for (FSFTBuffer<T> segment : segments) {
+            segment.setExpireAfterWrite(expireAfterWrite);
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return stats.snapshot();
+    }
+
+    @Override
+    public int getCapacity() { return (int) Math.min(maxWeight, Integer.MAX_VALUE); }
+
+    @Override
+    public int getTimeout() { return timeout; }
+
+    @Override
+    public long getMaxWeight() { return maxWeight; }
+
+    @Override
+    public boolean isWeighted() { return weigher != FSFTBuffer.UNIT; }
+
+    @Override
+    public EvictionPolicy getEvictionPolicy() { return policy; }
+
+    @Override
+    public long getCurrentWeight() {
+        long total = 0;
+        for (FSFTBuffer<T> segment : segments) {
+            total += segment.getCurrentWeight();
+        }
+        return total;
+    }
+
+    @Override
+    public int getCurrentCapacity() {
+        int total = 0;
+        for (FSFTBuffer<T> segment : segments) {
+            total += segment.getCurrentCapacity();
+        }
+        return total;
+    }
+
+    /**
+     * @return the objects currently in the buffer, keyed by id, grouped by segment
+     */
+    @Override
+    public Map<String, T> getBuffer() {
+        Map<String, T> buffer = new LinkedHashMap<>();
+        for (FSFTBuffer<T> segment : segments) {
+            buffer.putAll(segment.getBuffer());
+        }
+        return buffer;
+    }
+
+    @Override
+    public List<String> getBufferIds() { return new ArrayList<>(getBuffer().keySet()); }
+
+    /**
+     * Replace the contents of this buffer with the objects saved in {@code state}.
+     * Loaded objects count as freshly refreshed and not yet accessed.
+     * A buffer with a weigher keeps its own weight limit.
+     *
+     * @param state a saved state whose buffer holds objects of type T
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void loadState(WikiMediatorState state) {
+        if (weigher == FSFTBuffer.UNIT) {
+            maxWeight = state.capacity;
+        }
+        timeout = state.timeout;
+
+        // the segments are rebuilt, since each one holds the limits it was created with
+        clear();
+        segments = createSegments(segments.size());
+
+        for (Object t : state.buffer.values()) {
+            put((T) t);
+        }
+    }
+
+    /**
+     * Drop every object without reporting it as removed.
+     */
+    synchronized void clear() {
+        for (FSFTBuffer<T> segment : segments) {
+            segment.clear();
+        }
+        weight.set(0);
+    }
+}
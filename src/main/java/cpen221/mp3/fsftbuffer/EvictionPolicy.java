@@ -0,0 +1,40 @@
+package cpen221.mp3.fsftbuffer;
+
+/**
+ * The rule a full buffer follows to choose which objects to evict.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Evict the least recently accessed object. Objects that have never been
+     * accessed are never evicted, so once the buffer is full of them put()
+     * refuses new objects until some time out.
+     */
+    LRU {
+        @Override
+        Policy create(long maxWeight) {
+            return new LruPolicy();
+        }
+    },
+
+    /**
+     * Window TinyLFU. New objects enter a small LRU admission window; when the
+     * window is full its oldest object only displaces an object of the main
+     * region if it has been requested more often recently, as estimated by an
+     * aged count-min sketch. Any object may be evicted, so put() only refuses
+     * objects heavier than the whole buffer, and a scan of one-off objects
+     * cannot flush out the objects that are requested constantly.
+     */
+    TINY_LFU {
+        @Override
+        Policy create(long maxWeight) {
+            return new TinyLfuPolicy(maxWeight);
+        }
+    };
+
+    /**
+     * @param maxWeight the total weight of the objects the policy will be managing
+     * @return a new, empty instance of this policy
+     */
+    abstract Policy create(long maxWeight);
+}
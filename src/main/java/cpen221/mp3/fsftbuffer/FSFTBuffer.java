@@ -4,21 +4,51 @@ import cpen221.mp3.server.WikiMediatorState;
 
 import java.lang.System;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 
-public class FSFTBuffer<T extends Bufferable> {
+public class FSFTBuffer<T extends Bufferable> implements Buffer<T> {
 
     /*
         AF:
-        - Last access time of an object is greater than the time it was added.
+        - Each node in {@code index} represents one object in the buffer, together with
+          the last time it was refreshed and the last time it was accessed.
+        - A node whose last refresh is at least timeout seconds old is stale: it is never
+          returned, and is removed by the reaper, by the next operation on its id, or
+          when put needs room.
         - touch() and update() do not change last access time.
+        - get() counts as both an access and a refresh, unless expireAfterWrite is set,
+          in which case it counts only as an access.
+        - In refresh-ahead mode, a get() that finds an object that was put or last
+          updated at least refreshFraction of the timeout ago starts reloading it in the
+          background; the reloaded object replaces it as if by update().
         - An object cannot be added to the buffer if it is already in the buffer.
+        - Every object has a weight given by {@code weigher}; the buffer is full when
+          adding an object would push the total weight over maxWeight. Without a
+          weigher every object weighs 1 and maxWeight is the capacity.
+        - Which objects a full buffer evicts is decided by {@code policy}.
 
         RI:
-        - {@code bufferIds} contains ids of all objects currently in buffer.
-        - Each object corresponds to 1 map entry.
-        - lastAccessed is initially -1 if the object has not been accessed.
+        - {@code index} contains exactly the nodes of the refresh list.
+        - The refresh list is ordered by non-decreasing lastRefreshed.
+        - {@code policy} tracks exactly the nodes in {@code index}.
+        - lastAccessed is a System.nanoTime() stamp, so access order is comparable
+          across buffers.
+        - Every node in {@code index} is scheduled on {@code wheel}, no later than
+          the deadline it had when it was last scheduled.
+        - totalWeight is the sum of the weights of the nodes in {@code index}.
+        - totalWeight <= maxWeight
+        - {@code loading} maps each id that get(id, loader) is currently loading to
+          the future its other callers wait on.
+        - node.reloading is true exactly while a refresh-ahead reload of the node
+          has been handed to {@code refreshPool} and has not finished.
+        - {@code stats} counts what this buffer has done, together with any other
+          buffers it is shared with.
      */
 
 
@@ -28,12 +58,37 @@ public class FSFTBuffer<T extends Bufferable> {
     /* the default timeout value is 3600s */
     public static final int DTIMEOUT = 3600;
 
-    private int capacity;
+    /* every object weighs 1 unless a weigher is given */
+    static final ToLongFunction<Object> UNIT = t -> 1;
+
+    private long maxWeight;
     private int timeout;
-    private int currentCapacity;
+    private final ToLongFunction<? super T> weigher;
+
+    private final EvictionPolicy evictionPolicy;
+    private final Policy policy;
+
+    private long totalWeight;
+
+    private final Map<String, Node> index = new HashMap<>();
+    private final Map<String, CompletableFuture<T>> loading = new HashMap<>();
+
+    /* sentinel of the circular intrusive refresh list; oldest entry at head.next */
+    private final Node refreshHead = new Node(null, 0, 0);
+
+    private final TimingWheel wheel;
+
+    private volatile RemovalListener<? super T> removalListener;
+
+    /* refresh-ahead is off while reloader is null */
+    private Function<? super String, ? extends T> reloader;
+    private double refreshFraction;
+    private final Executor refreshPool = RefreshPool.shared();
 
-    private Map<Long, LinkedHashMap<Long, T>> buffer = new LinkedHashMap<>();
-    private List<String> bufferIds = new ArrayList<>();
+    /* get() does not refresh objects while expireAfterWrite is set */
+    private boolean expireAfterWrite;
+
+    final StatsCounter stats;
 
     /**
      * Create a buffer with a fixed capacity and a timeout value.
@@ -47,9 +102,73 @@ public class FSFTBuffer<T extends Bufferable> {
      *                 is greater than 0
      */
     public FSFTBuffer(int capacity, int timeout) {
-        this.capacity = capacity;
+        this(capacity, timeout, UNIT);
+    }
+
+    /**
+     * Create a buffer bounded by the total weight of its objects rather than their number.
+     * Objects in the buffer that have not been refreshed within the
+     * timeout period are removed from the cache.
+     *
+     * @param maxWeight the maximum total weight of the objects in the buffer,
+     *                  is greater than 0
+     * @param timeout   the duration, in seconds, an object should
+     *                  be in the buffer before it times out,
+     *                  is greater than 0
+     * @param weigher   computes the weight of an object, which must be >= 0
+     *                  and must not change while the object is in the buffer
+     */
+    public FSFTBuffer(long maxWeight, int timeout, ToLongFunction<? super T> weigher) {
+        this(maxWeight, timeout, weigher, EvictionPolicy.LRU);
+    }
+
+    /**
+     * Create a buffer with a fixed capacity, a timeout value and
+     * the policy it evicts objects by when it is full.
+     *
+     * @param capacity the number of objects the buffer can hold,
+     *                 is greater than 0
+     * @param timeout  the duration, in seconds, an object should
+     *                 be in the buffer before it times out,
+     *                 is greater than 0
+     * @param policy   the eviction policy
+     */
+    public FSFTBuffer(int capacity, int timeout, EvictionPolicy policy) {
+        this(capacity, timeout, UNIT, policy);
+    }
+
+    /**
+     * Create a buffer bounded by the total weight of its objects, with
+     * the policy it evicts objects by when it is full.
+     *
+     * @param maxWeight the maximum total weight of the objects in the buffer,
+     *                  is greater than 0
+     * @param timeout   the duration, in seconds, an object should
+     *                  be in the buffer before it times out,
+     *                  is greater than 0
+     * @param weigher   computes the weight of an object, which must be >= 0
+     *                  and must not change while the object is in the buffer
+     * @param policy    the eviction policy
+     */
+    public FSFTBuffer(long maxWeight, int timeout, ToLongFunction<? super T> weigher, EvictionPolicy policy) {
+        this(maxWeight, timeout, weigher, policy, maxWeight, new StatsCounter());
+    }
+
+    /**
+     * @param policyWeight the weight the policy should expect to manage, which is less
+     *                     than maxWeight when the buffer is one of several sharing a limit
+     * @param stats        the counters to record this buffer's activity in, which may be
+     *                     shared with other buffers
+     */
+    FSFTBuffer(long maxWeight, int timeout, ToLongFunction<? super T> weigher, EvictionPolicy policy,
+               long policyWeight, StatsCounter stats) {
+        this.maxWeight = maxWeight;
         this.timeout = timeout;
-        this.currentCapacity = 0;
+        this.weigher = weigher;
+        this.evictionPolicy = policy;
+        this.policy = policy.create(policyWeight);
+        this.wheel = TimingWheel.shared();
+        this.stats = stats;
     }
 
     /**
@@ -61,91 +180,301 @@ public class FSFTBuffer<T extends Bufferable> {
 
     /**
      * Add an object to the buffer.
-     * If the buffer is full then remove the least recently accessed
-     * object to make room for the new object.
-     * If the buffer is full and no objects in the buffer have been accessed,
-     * the new object is not added.
+     * If the buffer is full then evict objects, chosen by the buffer's
+     * eviction policy, until the new object fits.
+     * If the buffer is full and the objects the policy may evict
+     * do not free enough room, the new object is not added.
      *
      * @param t object to be added to the buffer
      * @return true if successful and false if it is
      *          already in the buffer or if the buffer is full
-     *          (in the case where no objects have been accessed)
+     *          (in the case where not enough objects have been accessed)
      */
     public synchronized boolean put(T t) {
-        if (bufferIds.contains(t.id()))
+        long currentTime = System.currentTimeMillis();
+
+        if (find(t.id(), currentTime) != null) {
+            return false;
+        }
+        policy.record(t.id());
+
+        long weight = weigher.applyAsLong(t);
+        if (!makeRoom(weight, null, currentTime)) {
+            stats.recordRejection();
             return false;
+        }
 
-        // signal to get() that t exists and get() should wait until it's been added
-        bufferIds.add(t.id());
+        Node node = new Node(t, currentTime, weight);
+        index.put(t.id(), node);
+        totalWeight += weight;
+        node.linkRefresh(refreshHead);
+        policy.added(node);
+        wheel.schedule(node, currentTime + timeout * 1000L);
+        stats.recordPut();
+        return true;
+    }
 
-        long currentTime = System.currentTimeMillis();
+    /**
+     * Evict objects chosen by the policy until {@code weight} more fits in the buffer.
+     * Nothing is evicted if the objects the policy may evict could not free enough room.
+     *
+     * @param weight the weight that has to fit
+     * @param keep a node that must not be evicted, or null
+     * @param currentTime the current system time in milliseconds
+     * @return true if the weight now fits
+     */
+    private boolean makeRoom(long weight, Node keep, long currentTime) {
+        if (totalWeight + weight <= maxWeight) {
+            return true;
+        }
 
+        // objects that have timed out are removed first
         removeStale(currentTime);
 
-        // remove least recently accessed
-        if (currentCapacity >= capacity) {
-            List<Long> accessTimes = buffer.keySet().stream().map(x -> buffer.get(x).keySet())
-                    .flatMap(Collection::stream).filter(x -> x != -1).collect(Collectors.toList());
+        // not enough that may be evicted = no more space
+        if (totalWeight - policy.evictableWeight(keep) + weight > maxWeight) {
+            return false;
+        }
 
-            // no object has been accessed = none to evict = no more space
-            if (accessTimes.isEmpty())
-                return false;
+        while (totalWeight + weight > maxWeight) {
+            remove(victim(keep), RemovalCause.EVICTED);
+        }
+        return true;
+    }
 
-            long leastRecent = Collections.min(accessTimes);
+    /**
+     * @param keep a node that must not be evicted, or null
+     * @return the node the policy chooses to evict, or null if it may not evict any
+     */
+    @SuppressWarnings("unchecked")
+    private Node victim(Node keep) {
+        // the policy only ever tracks this buffer's nodes, so the cast cannot fail; it is
+        // unchecked only because Node is an inner class of a generic class
+        return (Node) policy.victim(keep);
+    }
 
-            outer:
-            for (long time : buffer.keySet()) {
-                LinkedHashMap<Long, T> time_object_map = buffer.get(time);
+    /**
+     * Look up a live object, removing it instead if it has gone stale.
+     *
+     * @param id the identifier of the object
+     * @param currentTime the current system time in milliseconds
+     * @return the node holding the object, or null if there is no live object with this id
+     */
+    private Node find(String id, long currentTime) {
+        Node node = index.get(id);
+        if (node != null && isStale(node, currentTime)) {
+            remove(node, RemovalCause.EXPIRED);
+            return null;
+        }
+        return node;
+    }
 
-                for (long lastAccessed : time_object_map.keySet()) {
-                    if (lastAccessed == leastRecent) {
-                        bufferIds.remove(time_object_map.get(lastAccessed).id());
-                        time_object_map.remove(lastAccessed);
-                        currentCapacity--;
+    private boolean isStale(Node node, long currentTime) {
+        return currentTime >= node.lastRefreshed + timeout * 1000L;
+    }
 
-                        if (time_object_map.size() == 0) {
-                            buffer.remove(time);
-                        }
+    /**
+     * Remove every object that has not been refreshed within the timeout period.
+     * Stale objects are always at the front of the refresh list, so this only
+     * visits the objects it removes.
+     *
+     * @param currentTime the current system time in milliseconds
+     */
+    private void removeStale(long currentTime) {
+        Node oldest = refreshHead.refreshNext;
 
-                        break outer;
-                    }
-                }
-            }
+        while (oldest != refreshHead && isStale(oldest, currentTime)) {
+            remove(oldest, RemovalCause.EXPIRED);
+            oldest = refreshHead.refreshNext;
         }
+    }
 
-        // no need to check if another object is added at the same millisecond (which would overwrite existing entry)
-        // because this method is synchronized and its runtime is definitely over 1 ms.
-        try {
-            TimeUnit.MILLISECONDS.sleep(1);
-        } catch (InterruptedException e) {
-            return false;
+    private void remove(Node node, RemovalCause cause) {
+        index.remove(node.value.id());
+        totalWeight -= node.weight;
+        node.unlinkRefresh();
+        policy.removed(node);
+        wheel.cancel(node);
+        stats.recordRemoval(cause);
+        removed(node.value, node.weight, cause);
+    }
+
+    /**
+     * Called by the reaper once a node's scheduled deadline has passed.
+     * Refreshes are not pushed to the wheel, so a node that was refreshed
+     * since it was scheduled is simply scheduled again for its new deadline.
+     *
+     * @param node the node whose deadline passed
+     */
+    private synchronized void expire(Node node) {
+        if (index.get(node.value.id()) != node) {
+            return;
         }
 
-        // add object to new time
-        newTime(currentTime, t, -1);
-        currentCapacity++;
-        return true;
+        long currentTime = System.currentTimeMillis();
+        if (isStale(node, currentTime)) {
+            remove(node, RemovalCause.EXPIRED);
+        } else {
+            wheel.schedule(node, node.lastRefreshed + timeout * 1000L);
+        }
     }
 
-    private synchronized void newTime(long currentTime, T t, long lastAccessed) {
-        // if t isn't in buffer
-        if (!buffer.keySet().stream().map(x -> buffer.get(x).entrySet()).flatMap(Collection::stream)
-                .map(Map.Entry::getValue).collect(Collectors.toList()).contains(t)) {
-            LinkedHashMap<Long, T> m = new LinkedHashMap<>();
-            m.put(lastAccessed, t);
-            buffer.put(currentTime, m);
+    /**
+     * Called with the buffer's lock held whenever an object leaves the buffer
+     * because it went stale or was evicted. Notifies the removal listener by default.
+     *
+     * @param t the object that was removed
+     * @param weight the weight the object had in the buffer
+     * @param cause why the object was removed
+     */
+    void removed(T t, long weight, RemovalCause cause) {
+        notifyRemoval(t, cause);
+    }
+
+    private void notifyRemoval(T t, RemovalCause cause) {
+        RemovalListener<? super T> listener = removalListener;
+        if (listener != null) {
+            listener.onRemoval(t, cause);
         }
     }
 
-    private void removeStale(long currentTime) {
-        buffer.keySet().parallelStream().forEach(time -> {
-            if (currentTime >= time + timeout * 1000L) {
-                LinkedHashMap<Long, T> time_object_map = buffer.get(time);
-                buffer.remove(time);
-                bufferIds.remove(time_object_map.entrySet().iterator().next().getValue().id());
-                currentCapacity--;
+    /**
+     * Set the listener to notify whenever an object is evicted, expires or is
+     * replaced by update(). Objects that put() or update() refuse never entered
+     * the buffer and are not reported; objects loaded by get(id, loader) or by
+     * refresh-ahead that the buffer refuses are reported as REJECTED.
+     *
+     * @param listener the listener, or null to stop notifying
+     */
+    public synchronized void setRemovalListener(RemovalListener<? super T> listener) {
+        this.removalListener = listener;
+    }
+
+    /**
+     * Turn on refresh-ahead: once an object was put or last updated {@code fraction}
+     * of the timeout ago, the next get() of it still returns it, but also reloads it
+     * on a background thread and swaps the result in with update(). Objects that are
+     * read at least once per timeout stay in the buffer indefinitely, so this bounds
+     * how old they can get without readers ever waiting for a load.
+     * Reloads are dropped, and retried by a later get(), while the background pool is busy.
+     *
+     * @param loader computes the current version of the object with an id, or returns null
+     *               to keep the version in the buffer; it is called without the buffer locked.
+     *               If null, refresh-ahead is turned off.
+     * @param fraction the fraction of the timeout after which an object is reloaded,
+     *                 is greater than 0
+     */
+    public synchronized void setRefreshAhead(Function<? super String, ? extends T> loader, double fraction) {
+        this.reloader = loader;
+        this.refreshFraction = fraction;
+    }
+
+    /**
+     * Choose whether reading an object keeps it in the buffer. By default get()
+     * refreshes the object it returns, so an object read at least once per timeout
+     * never times out. With expire-after-write, only put(), touch() and update()
+     * refresh objects, so an object is never returned more than the timeout after
+     * it was put or last updated.
+     *
+     * @param expireAfterWrite true if get() should not refresh objects
+     */
+    public synchronized void setExpireAfterWrite(boolean expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+    }
+
+    /**
+     * Start reloading a node in the background if it is due for refresh-ahead.
+     *
+     * @param node a node that was just read
+     * @param currentTime the current system time in milliseconds
+     */
+    private void maybeReload(Node node, long currentTime) {
+        if (reloader == null || node.reloading || currentTime - node.loadedAt < refreshFraction * timeout * 1000) {
+            return;
+        }
+
+        Function<? super String, ? extends T> loader = reloader;
+        String id = node.value.id();
+        node.reloading = true;
+        try {
+            refreshPool.execute(() -> reload(node, id, loader));
+        } catch (RejectedExecutionException e) {
+            node.reloading = false;
+        }
+    }
+
+    private void reload(Node node, String id, Function<? super String, ? extends T> loader) {
+        T t = null;
+        long start = System.nanoTime();
+        try {
+            t = loader.apply(id);
+            stats.recordLoad(System.nanoTime() - start, false);
+        } catch (RuntimeException e) {
+            // keep serving the current version; the next get() tries again
+            stats.recordLoad(System.nanoTime() - start, true);
+        }
+
+        synchronized (this) {
+            node.reloading = false;
+            // the node may have been removed, or its id put again, while loading
+            if (t != null && !(index.get(id) == node && update(t))) {
+                notifyRemoval(t, RemovalCause.REJECTED);
             }
-        });
+        }
+    }
+
+    /**
+     * Called with the buffer's lock held when update() changes the total weight
+     * of the buffer without removing anything. Does nothing by default.
+     *
+     * @param delta the change in total weight
+     */
+    void reweighed(long delta) {
+    }
+
+    /**
+     * @param id the identifier of an object
+     * @return true if an object with this id is in the buffer and has not gone stale
+     */
+    synchronized boolean contains(String id) {
+        return find(id, System.currentTimeMillis()) != null;
+    }
+
+    /**
+     * Remove every stale object without otherwise touching the buffer.
+     */
+    synchronized void purgeStale() {
+        removeStale(System.currentTimeMillis());
+    }
+
+    /**
+     * @return the System.nanoTime() of the last access to the oldest object the policy may evict,
+     * or Long.MAX_VALUE if the policy may not evict any object
+     */
+    synchronized long leastRecentAccess() {
+        return policy.victimAge();
+    }
+
+    /**
+     * @return the total weight of the objects the policy may evict, not counting stale objects
+     */
+    synchronized long evictableWeight() {
+        removeStale(System.currentTimeMillis());
+        return policy.evictableWeight(null);
+    }
+
+    /**
+     * Evict the object the policy chooses, if it may evict any object.
+     *
+     * @return true if an object was evicted
+     */
+    synchronized boolean evictLeastRecent() {
+        Node victim = victim(null);
+        if (victim == null) {
+            return false;
+        }
+        remove(victim, RemovalCause.EVICTED);
+        return true;
     }
 
     /**
@@ -155,36 +484,170 @@ public class FSFTBuffer<T extends Bufferable> {
      * @throws NoSuchElementException if object is not in the buffer
      */
     public synchronized T get(String id) throws NoSuchElementException {
+        Node node = access(id);
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.value;
+    }
+
+    /**
+     * Look up a live object and count the lookup as an access, and as a refresh
+     * unless the buffer expires objects after write.
+     *
+     * @param id the identifier of the object
+     * @return the node holding the object, or null if there is no live object with this id
+     */
+    private Node access(String id) {
         long currentTime = System.currentTimeMillis();
+        policy.record(id);
+
+        Node node = find(id, currentTime);
+        if (node != null) {
+            stats.recordHit();
+            policy.accessed(node);
+            if (!expireAfterWrite) {
+                refresh(node, currentTime);
+            }
+            maybeReload(node, currentTime);
+        } else {
+            stats.recordMiss();
+        }
+        return node;
+    }
 
-        removeStale(currentTime);
+    /**
+     * Retrieve an object, loading it if it is not in the buffer.
+     * At most one load per id is in progress at a time: callers that miss
+     * while the id is being loaded wait for that load and get its result.
+     * A loaded object is added to the buffer as if by put(), so it does not
+     * count as accessed; if the buffer refuses it, it is still returned.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @param loader computes the object with the identifier, or returns null
+     *               if there is none; it is called without the buffer locked
+     * @return the object that matches the identifier, or null if it is not
+     * in the buffer and the loader returned null
+     */
+    public T get(String id, Function<? super String, ? extends T> loader) {
+        return get(id, loader, this::put);
+    }
 
-        // if object is in the cache, wait until it's been properly added
-        if (bufferIds.contains(id)) {
-            while (buffer.keySet().stream().anyMatch(x -> buffer.get(x) == null) ||
-                    !buffer.keySet().stream().map(x -> buffer.get(x).entrySet()).flatMap(Collection::stream)
-                    .map(e -> e.getValue().id()).collect(Collectors.toList()).contains(id));
+    /**
+     * Retrieve an object, loading and storing it with {@code store} if it is not in the buffer.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @param loader computes the object with the identifier, or returns null if there is none
+     * @param store adds a loaded object to the buffer, returning false if it was refused;
+     *              it is called without the buffer locked
+     * @return the object that matches the identifier, or null if the loader returned null
+     */
+    T get(String id, Function<? super String, ? extends T> loader, Predicate<T> store) {
+        CompletableFuture<T> load;
+        boolean waiting;
+        synchronized (this) {
+            Node node = access(id);
+            if (node != null) {
+                return node.value;
+            }
 
-            for (long time : buffer.keySet()) {
-                LinkedHashMap<Long, T> time_object_map = buffer.get(time);
+            load = loading.get(id);
+            waiting = load != null;
+            if (!waiting) {
+                load = new CompletableFuture<>();
+                loading.put(id, load);
+            }
+        }
 
-                for (long lastAccessed : time_object_map.keySet()) {
-                    T t = time_object_map.get(lastAccessed);
-                    if (Objects.equals(t.id(), id)) {
-                        time_object_map.remove(lastAccessed);
+        if (waiting) {
+            try {
+                return load.join();
+            } catch (CompletionException e) {
+                // rethrow what the loader threw, as the loading caller sees it
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
 
-                        if (time_object_map.size() == 0) {
-                            buffer.remove(time);
-                        }
+        T t;
+        long start = System.nanoTime();
+        try {
+            t = loader.apply(id);
+            stats.recordLoad(System.nanoTime() - start, false);
+        } catch (RuntimeException | Error e) {
+            stats.recordLoad(System.nanoTime() - start, true);
+            synchronized (this) {
+                loading.remove(id);
+            }
+            load.completeExceptionally(e);
+            throw e;
+        }
 
-                        newTime(currentTime, t, currentTime);
-                        return t;
-                    }
-                }
+        // the id stays marked as loading until the object is stored, so no second load can start
+        boolean stored;
+        try {
+            stored = t != null && store.test(t);
+        } catch (RuntimeException | Error e) {
+            // storing can fail too, in a weigher or removal listener; waiting callers must not wait forever
+            synchronized (this) {
+                loading.remove(id);
             }
+            load.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            loading.remove(id);
         }
+        load.complete(t);
 
-        throw new NoSuchElementException();
+        if (t != null && !stored) {
+            synchronized (this) {
+                notifyRemoval(t, RemovalCause.REJECTED);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Retrieve several objects at once, locking the buffer only once.
+     * Each object found counts as accessed, as with get().
+     *
+     * @param ids the identifiers of the objects to be retrieved
+     * @return the objects in the buffer that match the identifiers, keyed
+     * by id, in the order of {@code ids}; ids with no object are left out
+     */
+    public synchronized Map<String, T> getAll(Collection<String> ids) {
+        Map<String, T> found = new LinkedHashMap<>();
+        for (String id : ids) {
+            Node node = access(id);
+            if (node != null) {
+                found.put(id, node.value);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Add several objects at once, as put() would one after the other,
+     * locking the buffer only once.
+     *
+     * @param objects the objects to be added to the buffer
+     * @return the objects that were not added, because they were already
+     * in the buffer or the buffer was full, in the order of {@code objects}
+     */
+    public synchronized List<T> putAll(Collection<? extends T> objects) {
+        List<T> refused = new ArrayList<>();
+        for (T t : objects) {
+            if (!put(t)) {
+                refused.add(t);
+            }
+        }
+        return refused;
     }
 
     /**
@@ -195,61 +658,184 @@ public class FSFTBuffer<T extends Bufferable> {
      * @param id the identifier of the object to "touch"
      * @return true if successful and false otherwise
      */
-    public boolean touch(String id) {
+    public synchronized boolean touch(String id) {
         long currentTime = System.currentTimeMillis();
 
-        removeStale(currentTime);
-
-        if (!bufferIds.contains(id)) {
+        Node node = find(id, currentTime);
+        if (node == null) {
             return false;
         }
 
-        for (long time : buffer.keySet()) {
-            LinkedHashMap<Long, T> time_object_map = buffer.get(time);
-            for (long lastAccessed : time_object_map.keySet()) {
-                T t = time_object_map.get(lastAccessed);
-                if (Objects.equals(id, t.id())) {
-                    time_object_map.remove(lastAccessed);
-
-                    if (time_object_map.size() == 0) {
-                        buffer.remove(time);
-                    }
+        refresh(node, currentTime);
+        return true;
+    }
 
-                    newTime(currentTime, t, lastAccessed);
-                    return true;
-                }
-            }
-        }
-        return false;
+    private void refresh(Node node, long currentTime) {
+        node.lastRefreshed = currentTime;
+        node.unlinkRefresh();
+        node.linkRefresh(refreshHead);
     }
 
     /**
      * Update an object in the buffer.
      * This method updates an object and acts like a "touch" to
      * renew the object in the cache.
+     * If the new version of the object is heavier and no longer fits,
+     * objects chosen by the eviction policy are evicted to make room; if that
+     * is not enough, the old version is evicted and the new one is not added.
      *
      * @param t the object to update
      * @return true if successful and false otherwise
      */
-    public boolean update(T t) {
-        return touch(t.id());
+    public synchronized boolean update(T t) {
+        long currentTime = System.currentTimeMillis();
+
+        Node node = find(t.id(), currentTime);
+        if (node == null) {
+            return false;
+        }
+
+        long delta = weigher.applyAsLong(t) - node.weight;
+        if (delta > 0 && !makeRoom(delta, node, currentTime)) {
+            remove(node, RemovalCause.EVICTED);
+            return false;
+        }
+
+        T old = node.value;
+        node.value = t;
+        node.loadedAt = currentTime;
+        node.weight += delta;
+        totalWeight += delta;
+        policy.reweighed(node, delta);
+        reweighed(delta);
+        refresh(node, currentTime);
+        if (old != t) {
+            notifyRemoval(old, RemovalCause.REPLACED);
+        }
+        return true;
+    }
+
+    /**
+     * Take a snapshot of the buffer's statistics. Counting is always on and
+     * costs a few uncontended additions per operation.
+     *
+     * @return what the buffer has done since it was created
+     */
+    public CacheStats stats() {
+        return stats.snapshot();
     }
 
     /**
      * Below is a collection of observer methods that allow the creation of a WikiMediatorState object,
      * and a mutator method that loads the state of a past Buffer for use in servers.
      */
-    public int getCapacity() { return capacity; }
+    public int getCapacity() { return (int) Math.min(maxWeight, Integer.MAX_VALUE); }
     public int getTimeout() { return timeout; }
-    public int getCurrentCapacity() { return currentCapacity; }
-    public Map<Long, LinkedHashMap<Long, T>> getBuffer() { return new HashMap<>(buffer); }
-    public List<String> getBufferIds() { return new ArrayList<>(bufferIds); }
+    public long getMaxWeight() { return maxWeight; }
+    public boolean isWeighted() { return weigher != UNIT; }
+    public EvictionPolicy getEvictionPolicy() { return evictionPolicy; }
+
+    public synchronized long getCurrentWeight() {
+        removeStale(System.currentTimeMillis());
+        return totalWeight;
+    }
+
+    public synchronized int getCurrentCapacity() {
+        removeStale(System.currentTimeMillis());
+        return index.size();
+    }
+
+    /**
+     * @return the objects currently in the buffer, keyed by id, from least to most recently refreshed
+     */
+    public synchronized Map<String, T> getBuffer() {
+        removeStale(System.currentTimeMillis());
+
+        Map<String, T> buffer = new LinkedHashMap<>();
+        for (Node n = refreshHead.refreshNext; n != refreshHead; n = n.refreshNext) {
+            buffer.put(n.value.id(), n.value);
+        }
+        return buffer;
+    }
+
+    public synchronized List<String> getBufferIds() { return new ArrayList<>(getBuffer().keySet()); }
 
-    public void loadState(WikiMediatorState state) {
-        this.capacity = state.capacity;
+    /**
+     * Replace the contents of this buffer with the objects saved in {@code state}.
+     * Loaded objects count as freshly refreshed and not yet accessed.
+     * A buffer with a weigher keeps its own weight limit.
+     *
+     * @param state a saved state whose buffer holds objects of type T
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void loadState(WikiMediatorState state) {
+        if (weigher == UNIT) {
+            this.maxWeight = state.capacity;
+        }
         this.timeout = state.timeout;
-        this.currentCapacity = state.currentCapacity;
-        this.buffer = state.buffer;
-        this.bufferIds = state.bufferIds;
+
+        clear();
+
+        for (Object t : state.buffer.values()) {
+            put((T) t);
+        }
+    }
+
+    /**
+     * Drop every object without reporting it as removed.
+     */
+    synchronized void clear() {
+        for (Node node : index.values()) {
+            wheel.cancel(node);
+        }
+        index.clear();
+        totalWeight = 0;
+        refreshHead.refreshPrev = refreshHead.refreshNext = refreshHead;
+        policy.clear();
+    }
+
+    /**
+     * A buffered object, linked into the refresh list, the lists of the
+     * eviction policy, and the timing wheel.
+     */
+    private class Node extends Policy.Entry {
+        T value;
+        long lastRefreshed;
+        long loadedAt;
+        boolean reloading;
+
+        Node refreshPrev = this;
+        Node refreshNext = this;
+
+        Node(T value, long lastRefreshed, long weight) {
+            this.value = value;
+            this.lastRefreshed = lastRefreshed;
+            this.loadedAt = lastRefreshed;
+            this.weight = weight;
+        }
+
+        @Override
+        String id() {
+            return value.id();
+        }
+
+        @Override
+        void expire() {
+            FSFTBuffer.this.expire(this);
+        }
+
+        /* append this node at the tail (most recent end) of the refresh list */
+        void linkRefresh(Node head) {
+            refreshPrev = head.refreshPrev;
+            refreshNext = head;
+            head.refreshPrev.refreshNext = this;
+            head.refreshPrev = this;
+        }
+
+        void unlinkRefresh() {
+            refreshPrev.refreshNext = refreshNext;
+            refreshNext.refreshPrev = refreshPrev;
+            refreshPrev = refreshNext = this;
+        }
     }
 }
@@ -0,0 +1,111 @@
+package cpen221.mp3.fsftbuffer;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often each id has been
+ * requested recently. Once as many increments as ten times the number of
+ * counter words have been recorded, every counter is halved, so that old
+ * popularity fades.
+ */
+final class FrequencySketch {
+
+    /*
+        AF:
+        - The estimated frequency of a hash is the minimum of its four counters,
+          one per row. All rows share {@code table}: a hash picks one word per row
+          and, within the word, one of the 16 nibbles.
+
+        RI:
+        - table.length is a power of two.
+        - 0 <= size < sampleSize
+     */
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private static final int MIN_WORDS = 16;
+    private static final int MAX_WORDS = 1 << 24;
+
+    private long[] table = new long[MIN_WORDS];
+    private int sampleSize = 10 * MIN_WORDS;
+    private int size;
+
+    /**
+     * Grow the sketch so that it can tell apart about the given number of ids.
+     * Growing forgets every recorded frequency.
+     *
+     * @param expectedIds the number of distinct ids the sketch should track
+     */
+    void ensureCapacity(long expectedIds) {
+        int words = MIN_WORDS;
+        while (words < expectedIds && words < MAX_WORDS) {
+            words <<= 1;
+        }
+        if (words > table.length) {
+            table = new long[words];
+            sampleSize = 10 * words;
+            size = 0;
+        }
+    }
+
+    /**
+     * @param id an id
+     * @return the estimated number of recent requests for the id, at most 15
+     */
+    int frequency(String id) {
+        int hash = spread(id.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            long word = table[indexOf(hash, i)];
+            frequency = Math.min(frequency, (int) (word >>> ((start + i) << 2)) & 0xf);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record a request for an id.
+     *
+     * @param id the requested id
+     */
+    void increment(String id) {
+        int hash = spread(id.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+            if (((table[index] >>> offset) & 0xf) != 0xf) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /* halve every counter; a counter's lost low bit is discounted from size approximately */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & (table.length - 1);
+    }
+
+    private static int spread(int h) {
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+}
@@ -0,0 +1,74 @@
+package cpen221.mp3.fsftbuffer;
+
+/**
+ * Least recently accessed objects are evicted first; objects that have not
+ * been accessed cannot be evicted.
+ */
+final class LruPolicy extends Policy {
+
+    /*
+        RI:
+        - The access list contains exactly the entries that have been accessed,
+          ordered by non-decreasing lastAccessed.
+        - accessedWeight is the sum of the weights of the entries in the access list.
+     */
+
+    private final Entry accessHead = sentinel();
+    private long accessedWeight;
+
+    @Override
+    void record(String id) {
+    }
+
+    @Override
+    void added(Entry entry) {
+    }
+
+    @Override
+    void accessed(Entry entry) {
+        removed(entry);
+        entry.lastAccessed = System.nanoTime();
+        entry.link(accessHead);
+        accessedWeight += entry.weight;
+    }
+
+    @Override
+    void removed(Entry entry) {
+        if (entry.isLinked()) {
+            accessedWeight -= entry.weight;
+            entry.unlink();
+        }
+    }
+
+    @Override
+    void reweighed(Entry entry, long delta) {
+        if (entry.isLinked()) {
+            accessedWeight += delta;
+        }
+    }
+
+    @Override
+    long evictableWeight(Entry keep) {
+        if (keep != null && keep.isLinked()) {
+            return accessedWeight - keep.weight;
+        }
+        return accessedWeight;
+    }
+
+    @Override
+    Entry victim(Entry keep) {
+        return first(accessHead, keep);
+    }
+
+    @Override
+    long victimAge() {
+        Entry leastRecent = first(accessHead, null);
+        return leastRecent == null ? Long.MAX_VALUE : leastRecent.lastAccessed;
+    }
+
+    @Override
+    void clear() {
+        accessHead.policyPrev = accessHead.policyNext = accessHead;
+        accessedWeight = 0;
+    }
+}
@@ -0,0 +1,127 @@
+package cpen221.mp3.fsftbuffer;
+
+/**
+ * The state an eviction policy keeps for one buffer. A policy is only used with
+ * its buffer's lock held.
+ */
+abstract class Policy {
+
+    /**
+     * An object as seen by a policy. Entries link themselves into the policy's
+     * lists, so tracking an entry never allocates.
+     */
+    abstract static class Entry extends TimingWheel.Entry {
+        Entry policyPrev = this;
+        Entry policyNext = this;
+        long weight;
+        long lastAccessed;
+        byte queue;
+
+        /**
+         * @return the id of the object this entry holds
+         */
+        abstract String id();
+
+        boolean isLinked() {
+            return policyNext != this;
+        }
+
+        /* append this entry at the tail (most recent end) of the list with the given sentinel */
+        void link(Entry head) {
+            policyPrev = head.policyPrev;
+            policyNext = head;
+            head.policyPrev.policyNext = this;
+            head.policyPrev = this;
+        }
+
+        void unlink() {
+            policyPrev.policyNext = policyNext;
+            policyNext.policyPrev = policyPrev;
+            policyPrev = policyNext = this;
+        }
+    }
+
+    /**
+     * @return a list sentinel, which is never handed out as an entry
+     */
+    static Entry sentinel() {
+        return new Entry() {
+            @Override
+            String id() {
+                return null;
+            }
+
+            @Override
+            void expire() {
+            }
+        };
+    }
+
+    /**
+     * @param head the sentinel of a list
+     * @param keep an entry to skip, or null
+     * @return the least recent entry of the list other than keep, or null if there is none
+     */
+    static Entry first(Entry head, Entry keep) {
+        Entry entry = head.policyNext;
+        if (entry == keep) {
+            entry = entry.policyNext;
+        }
+        return entry == head ? null : entry;
+    }
+
+    /**
+     * Record a request for an id, whether or not its object is in the buffer.
+     *
+     * @param id the id that was requested
+     */
+    abstract void record(String id);
+
+    /**
+     * @param entry an entry that was just added to the buffer
+     */
+    abstract void added(Entry entry);
+
+    /**
+     * @param entry an entry in the buffer whose object was just accessed
+     */
+    abstract void accessed(Entry entry);
+
+    /**
+     * @param entry an entry that was just removed from the buffer
+     */
+    abstract void removed(Entry entry);
+
+    /**
+     * @param entry an entry in the buffer whose weight was just changed
+     * @param delta the change in its weight
+     */
+    abstract void reweighed(Entry entry, long delta);
+
+    /**
+     * @param keep an entry that must not be evicted, or null
+     * @return the total weight of the entries that may be evicted
+     */
+    abstract long evictableWeight(Entry keep);
+
+    /**
+     * Choose the next entry to evict. The policy may reorganise its entries while
+     * doing so, but the returned entry must be removed from the buffer before the
+     * policy is used again.
+     *
+     * @param keep an entry that must not be evicted, or null
+     * @return the entry to evict, or null if no entry may be evicted
+     */
+    abstract Entry victim(Entry keep);
+
+    /**
+     * @return the System.nanoTime() of the last access to the oldest evictable entry,
+     * or Long.MAX_VALUE if no entry may be evicted
+     */
+    abstract long victimAge();
+
+    /**
+     * Forget every entry.
+     */
+    abstract void clear();
+}
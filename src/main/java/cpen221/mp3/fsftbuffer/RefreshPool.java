@@ -0,0 +1,43 @@
+package cpen221.mp3.fsftbuffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bounded pool of daemon threads that reloads objects for every buffer
+ * in refresh-ahead mode. When all threads are busy and the queue is full,
+ * new reloads are rejected rather than queued without limit.
+ */
+final class RefreshPool {
+
+    /* at most this many reloads wait for a thread */
+    private static final int QUEUE = 1024;
+
+    private static Executor shared;
+
+    private RefreshPool() {
+    }
+
+    /**
+     * @return the pool shared by all buffers, created on first use with one
+     * thread per available processor, and at least two
+     */
+    static synchronized Executor shared() {
+        if (shared == null) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(QUEUE), r -> {
+                        Thread thread = new Thread(r, "fsftbuffer-refresh-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            shared = pool;
+        }
+        return shared;
+    }
+}
@@ -0,0 +1,19 @@
+package cpen221.mp3.fsftbuffer;
+
+/**
+ * The reason an object left an FSFTBuffer.
+ */
+public enum RemovalCause {
+
+    /* removed to make room for other objects */
+    EVICTED,
+
+    /* not refreshed within the buffer's timeout */
+    EXPIRED,
+
+    /* superseded by update() with a different object with the same id */
+    REPLACED,
+
+    /* loaded by get(id, loader) or refresh-ahead, but refused by the buffer, so it never entered it */
+    REJECTED
+}
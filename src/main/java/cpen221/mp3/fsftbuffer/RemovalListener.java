@@ -0,0 +1,15 @@
+package cpen221.mp3.fsftbuffer;
+
+public interface RemovalListener<T> {
+
+    /**
+     * Called whenever an object leaves a buffer for any reason other than the
+     * buffer being cleared. It is called while the buffer is locked, so it
+     * should return quickly and must not call back into the buffer.
+     *
+     * @param t the object that left the buffer
+     * @param cause why the object left the buffer
+     */
+    void onRemoval(T t, RemovalCause cause);
+
+}
@@ -0,0 +1,85 @@
+package cpen221.mp3.fsftbuffer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters a buffer records its activity in. Every counter is a LongAdder,
+ * so recording never takes a lock and, once a counter has spread over the
+ * threads contending for it, never allocates.
+ */
+final class StatsCounter {
+
+    /*
+        AF:
+        - latency[i] counts the loads that took between 2^(i-1) and 2^i - 1 ns,
+          and latency[0] those that took no measurable time.
+
+        RI:
+        - latency.length == CacheStats.LATENCY_BUCKETS
+     */
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expiries = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder[] latency = new LongAdder[CacheStats.LATENCY_BUCKETS];
+
+    StatsCounter() {
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordPut() {
+        puts.increment();
+    }
+
+    /* an object was refused because the buffer was full */
+    void recordRejection() {
+        rejections.increment();
+    }
+
+    void recordRemoval(RemovalCause cause) {
+        if (cause == RemovalCause.EVICTED) {
+            evictions.increment();
+        } else if (cause == RemovalCause.EXPIRED) {
+            expiries.increment();
+        }
+    }
+
+    /**
+     * @param nanos how long the load took
+     * @param failed true if the loader threw
+     */
+    void recordLoad(long nanos, boolean failed) {
+        (failed ? loadFailures : loads).increment();
+        totalLoadTime.add(nanos);
+        latency[CacheStats.bucket(nanos)].increment();
+    }
+
+    /**
+     * @return the counts recorded so far. Counts recorded while the snapshot
+     * is taken may or may not be included.
+     */
+    CacheStats snapshot() {
+        long[] histogram = new long[latency.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latency[i].sum();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), puts.sum(), rejections.sum(), evictions.sum(),
+                expiries.sum(), loads.sum(), loadFailures.sum(), totalLoadTime.sum(), histogram);
+    }
+}
@@ -0,0 +1,215 @@
+package cpen221.mp3.fsftbuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hierarchical timing wheel that runs expiry callbacks on a reaper thread.
+ * Scheduling and cancelling an entry are O(1); each entry is moved down at most
+ * once per level before it fires.
+ */
+final class TimingWheel {
+
+    /*
+        AF:
+        - The wheel has LEVELS levels of SLOTS buckets. A bucket at level L covers
+          SLOTS^L ticks; level 0 buckets hold entries that fire on a single tick.
+        - Entries in level L > 0 are moved to a lower level when the wheel reaches
+          the start of their bucket's span, so that no entry ever fires early.
+
+        RI:
+        - Every scheduled entry is in exactly one bucket, and entry.scheduled is true
+          exactly when it is.
+        - For an entry in level L, bucket (expiryTick >> (SHIFT * L)) & MASK, and
+          0 < (expiryTick >> (SHIFT * L)) - (currentTick >> (SHIFT * L)) < SLOTS.
+     */
+
+    private static final int SHIFT = 6;
+    private static final int SLOTS = 1 << SHIFT;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    /* the default resolution of the shared wheel is 100 ms */
+    static final long DTICK = 100;
+
+    private static final Logger LOG = Logger.getLogger(TimingWheel.class.getName());
+
+    private static TimingWheel shared;
+
+    private final long tickMillis;
+    private final Entry[][] buckets = new Entry[LEVELS][SLOTS];
+    private long currentTick;
+
+    /**
+     * An object that can be scheduled on a timing wheel. Entries link themselves into
+     * the wheel's buckets, so scheduling never allocates.
+     */
+    abstract static class Entry {
+        private Entry prev = this;
+        private Entry next = this;
+        private boolean scheduled;
+        private long expiryTick;
+
+        /**
+         * Called on the reaper thread, without the wheel's lock held, once the
+         * deadline this entry was scheduled with has passed.
+         */
+        abstract void expire();
+    }
+
+    /**
+     * Create a wheel that does not advance until {@link #advance(long)} is called.
+     *
+     * @param tickMillis the resolution of the wheel in milliseconds, is greater than 0
+     * @param now the current system time in milliseconds
+     */
+    TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+        for (Entry[] level : buckets) {
+            for (int i = 0; i < SLOTS; i++) {
+                Entry sentinel = new Entry() {
+                    @Override
+                    void expire() {
+                    }
+                };
+                level[i] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * @return the wheel shared by all buffers, whose reaper thread is started on first use
+     */
+    static synchronized TimingWheel shared() {
+        if (shared == null) {
+            shared = new TimingWheel(DTICK, System.currentTimeMillis());
+            Thread reaper = new Thread(shared::reap, "fsftbuffer-reaper");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+        return shared;
+    }
+
+    private void reap() {
+        while (true) {
+            try {
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            advance(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Schedule an entry to expire at a given time. An entry that is already
+     * scheduled is moved to the new deadline.
+     *
+     * @param entry the entry to schedule
+     * @param deadline the system time in milliseconds after which the entry expires
+     */
+    synchronized void schedule(Entry entry, long deadline) {
+        if (entry.scheduled) {
+            unlink(entry);
+        }
+        // round up so that an entry never fires before its deadline
+        entry.expiryTick = (deadline + tickMillis - 1) / tickMillis;
+        entry.scheduled = true;
+        insert(entry, currentTick + 1);
+    }
+
+    /**
+     * Remove an entry from the wheel if it is scheduled.
+     *
+     * @param entry the entry to cancel
+     */
+    synchronized void cancel(Entry entry) {
+        if (entry.scheduled) {
+            unlink(entry);
+            entry.scheduled = false;
+        }
+    }
+
+    /**
+     * Link an entry into the bucket that covers its expiry tick.
+     *
+     * @param entry the entry to insert
+     * @param earliestTick the first tick whose level 0 bucket has not been processed yet
+     */
+    private void insert(Entry entry, long earliestTick) {
+        long expiryTick = Math.max(entry.expiryTick, earliestTick);
+
+        int level = 0;
+        while (level < LEVELS - 1
+                && (expiryTick >> (SHIFT * level)) - (currentTick >> (SHIFT * level)) >= SLOTS) {
+            level++;
+        }
+        if (level == LEVELS - 1
+                && (expiryTick >> (SHIFT * level)) - (currentTick >> (SHIFT * level)) >= SLOTS) {
+            // beyond the wheel's horizon: park in the furthest bucket and re-insert when it cascades
+            expiryTick = ((currentTick >> (SHIFT * level)) + MASK) << (SHIFT * level);
+        }
+
+        Entry head = buckets[level][(int) (expiryTick >> (SHIFT * level)) & MASK];
+        entry.prev = head.prev;
+        entry.next = head;
+        head.prev.next = entry;
+        head.prev = entry;
+    }
+
+    private static void unlink(Entry entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = entry.next = entry;
+    }
+
+    /**
+     * Move the wheel forward to the given time and run the callbacks of every entry
+     * whose deadline has passed. A callback that throws is logged, and the rest still run,
+     * so that one buffer's removal listener cannot stop expiry for every buffer.
+     *
+     * @param now the current system time in milliseconds
+     */
+    void advance(long now) {
+        List<Entry> expired = new ArrayList<>();
+
+        synchronized (this) {
+            long nowTick = now / tickMillis;
+            while (currentTick < nowTick) {
+                currentTick++;
+
+                // cascade each level whose bucket span starts at this tick
+                for (int level = 1; level < LEVELS; level++) {
+                    if ((currentTick & ((1L << (SHIFT * level)) - 1)) != 0) {
+                        break;
+                    }
+                    Entry head = buckets[level][(int) (currentTick >> (SHIFT * level)) & MASK];
+                    while (head.next != head) {
+                        Entry entry = head.next;
+                        unlink(entry);
+                        insert(entry, currentTick);
+                    }
+                }
+
+                Entry head = buckets[0][(int) currentTick & MASK];
+                while (head.next != head) {
+                    Entry entry = head.next;
+                    unlink(entry);
+                    entry.scheduled = false;
+                    expired.add(entry);
+                }
+            }
+        }
+
+        for (Entry entry : expired) {
+            try {
+                entry.expire();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "expiry callback failed", e);
+            }
+        }
+    }
+}
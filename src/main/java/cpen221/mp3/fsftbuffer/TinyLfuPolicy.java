@@ -0,0 +1,182 @@
+package cpen221.mp3.fsftbuffer;
+
+/**
+ * Window TinyLFU: a small LRU admission window in front of a segmented LRU main
+ * region, with entries leaving the window admitted to the main region by
+ * comparing their estimated frequency with that of the main region's victim.
+ */
+final class TinyLfuPolicy extends Policy {
+
+    /*
+        AF:
+        - The window holds the most recently added entries. The main region is
+          split into probation, for entries that have not been accessed since they
+          were admitted, and protected, for entries that have.
+        - When room is needed and the window is full, the oldest window entry and
+          the oldest probation entry compete: the one the sketch estimates to be
+          less popular is evicted, and a winning window entry moves to probation.
+
+        RI:
+        - Every entry is in exactly one of the three lists, and entry.queue names it.
+        - Each list is ordered by non-decreasing lastAccessed.
+        - windowWeight, probationWeight and protectedWeight are the sums of the
+          weights of the entries in each list.
+     */
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    /* the sketch is sized up front for at most 4096 ids, since a weight may be a number of bytes */
+    private static final int PRESIZE = 1 << 12;
+
+    private final long windowMax;
+    private final long protectedMax;
+
+    private final Entry window = sentinel();
+    private final Entry probation = sentinel();
+    private final Entry protectedHead = sentinel();
+
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+    private int count;
+
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    /**
+     * @param maxWeight the total weight of the objects the policy will be managing,
+     *                  is greater than 0
+     */
+    TinyLfuPolicy(long maxWeight) {
+        // 1% of the weight goes to the window and 80% of the rest to protected entries
+        this.windowMax = Math.max(1, maxWeight / 100);
+        this.protectedMax = (maxWeight - windowMax) / 5 * 4;
+        sketch.ensureCapacity(Math.min(maxWeight, PRESIZE));
+    }
+
+    @Override
+    void record(String id) {
+        sketch.increment(id);
+    }
+
+    @Override
+    void added(Entry entry) {
+        entry.lastAccessed = System.nanoTime();
+        link(entry, WINDOW);
+        count++;
+        sketch.ensureCapacity(count);
+
+        // while the buffer fills up, entries pushed out of the window go straight to probation
+        while (windowWeight > windowMax) {
+            Entry oldest = first(window, entry);
+            if (oldest == null) {
+                break;
+            }
+            unlink(oldest);
+            link(oldest, PROBATION);
+        }
+    }
+
+    @Override
+    void accessed(Entry entry) {
+        entry.lastAccessed = System.nanoTime();
+        unlink(entry);
+        if (entry.queue == WINDOW) {
+            link(entry, WINDOW);
+            return;
+        }
+
+        link(entry, PROTECTED);
+        while (protectedWeight > protectedMax) {
+            // protected is over its share: its oldest entry goes back on probation
+            Entry demoted = first(protectedHead, entry);
+            if (demoted == null) {
+                break;
+            }
+            unlink(demoted);
+            link(demoted, PROBATION);
+        }
+    }
+
+    @Override
+    void removed(Entry entry) {
+        unlink(entry);
+        count--;
+    }
+
+    @Override
+    void reweighed(Entry entry, long delta) {
+        addWeight(entry.queue, delta);
+    }
+
+    @Override
+    long evictableWeight(Entry keep) {
+        long weight = windowWeight + probationWeight + protectedWeight;
+        return keep == null ? weight : weight - keep.weight;
+    }
+
+    @Override
+    Entry victim(Entry keep) {
+        Entry candidate = first(window, keep);
+        Entry victim = first(probation, keep);
+        if (victim == null) {
+            victim = first(protectedHead, keep);
+        }
+
+        if (candidate == null || (victim != null && windowWeight < windowMax)) {
+            return victim;
+        }
+        if (victim == null) {
+            return candidate;
+        }
+
+        // the window is full: its oldest entry only enters the main region by displacing a less popular one
+        if (sketch.frequency(candidate.id()) > sketch.frequency(victim.id())) {
+            unlink(candidate);
+            link(candidate, PROBATION);
+            return victim;
+        }
+        return candidate;
+    }
+
+    @Override
+    long victimAge() {
+        return Math.min(age(window), Math.min(age(probation), age(protectedHead)));
+    }
+
+    private static long age(Entry head) {
+        Entry oldest = first(head, null);
+        return oldest == null ? Long.MAX_VALUE : oldest.lastAccessed;
+    }
+
+    @Override
+    void clear() {
+        window.policyPrev = window.policyNext = window;
+        probation.policyPrev = probation.policyNext = probation;
+        protectedHead.policyPrev = protectedHead.policyNext = protectedHead;
+        windowWeight = probationWeight = protectedWeight = 0;
+        count = 0;
+    }
+
+    private void link(Entry entry, byte queue) {
+        entry.queue = queue;
+        entry.link(queue == WINDOW ? window : queue == PROBATION ? probation : protectedHead);
+        addWeight(queue, entry.weight);
+    }
+
+    private void unlink(Entry entry) {
+        entry.unlink();
+        addWeight(entry.queue, -entry.weight);
+    }
+
+    private void addWeight(byte queue, long delta) {
+        if (queue == WINDOW) {
+            windowWeight += delta;
+        } else if (queue == PROBATION) {
+            probationWeight += delta;
+        } else {
+            protectedWeight += delta;
+        }
+    }
+}
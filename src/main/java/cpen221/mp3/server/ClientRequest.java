@@ -1,5 +1,6 @@
 package cpen221.mp3.server;
 
+import java.util.List;
 import java.util.Objects;
 
 public class ClientRequest {
@@ -12,6 +13,7 @@ public class ClientRequest {
 
     public String pageTitle;
     public String pageTitle2;
+    public List<String> pageTitles;
 
     public int timeLimitInSeconds;
     public int maxItems;
@@ -42,6 +44,13 @@ public class ClientRequest {
         this.timeout = timeout;
     }
 
+    public ClientRequest(String id, List<String> pageTitles, int timeout) {
+        type = "getPages";
+        this.id = id;
+        this.pageTitles = pageTitles;
+        this.timeout = timeout;
+    }
+
     // Since there are two methods with one int parameter, we need to distinguish them
     public ClientRequest(String id, int num, boolean isZeitgeist, int timeout) {
         if (isZeitgeist) {
@@ -71,6 +80,14 @@ public class ClientRequest {
         this.timeout = timeout;
     }
 
+    // a factory rather than a constructor, as (id, int, int) would read too much like windowedPeakLoad's (id, int)
+    public static ClientRequest decayedTrending(String id, int maxItems, int timeout) {
+        ClientRequest request = new ClientRequest(id, timeout);
+        request.type = "decayedTrending";
+        request.maxItems = maxItems;
+        return request;
+    }
+
     public ClientRequest(String id, String pageTitle1, String pageTitle2, int timeout) {
         type = "shortestPath";
         this.id = id;
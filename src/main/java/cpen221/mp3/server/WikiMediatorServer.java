@@ -9,6 +9,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.List;
 
 public class WikiMediatorServer {
 
@@ -124,6 +125,10 @@ public class WikiMediatorServer {
                         m = WikiMediator.class.getDeclaredMethod(request.type, String.class);
                         response.response = m.invoke(wikiMediator, request.pageTitle);
                         break;
+                    case "getPages":
+                        m = WikiMediator.class.getDeclaredMethod(request.type, List.class);
+                        response.response = m.invoke(wikiMediator, request.pageTitles);
+                        break;
                     case "zeitgeist":
                         m = WikiMediator.class.getDeclaredMethod(request.type, int.class);
                         response.response = m.invoke(wikiMediator, request.limit);
@@ -132,6 +137,10 @@ public class WikiMediatorServer {
                         m = WikiMediator.class.getDeclaredMethod(request.type, int.class, int.class);
                         response.response = m.invoke(wikiMediator, request.timeLimitInSeconds, request.maxItems);
                         break;
+                    case "decayedTrending":
+                        m = WikiMediator.class.getDeclaredMethod(request.type, int.class);
+                        response.response = m.invoke(wikiMediator, request.maxItems);
+                        break;
                     case "windowedPeakLoad":
                         if (request.timeWindowInSeconds == -1) {
                             m = WikiMediator.class.getDeclaredMethod(request.type);
@@ -1,7 +1,13 @@
 package cpen221.mp3.server;
 
+import cpen221.mp3.fsftbuffer.EvictionPolicy;
+import cpen221.mp3.wikimediator.DecayedScore;
+import cpen221.mp3.wikimediator.HeavyHitters;
 import cpen221.mp3.wikimediator.Request;
+import cpen221.mp3.wikimediator.RetentionPolicy;
+import cpen221.mp3.wikimediator.TimeBuckets;
 import cpen221.mp3.wikimediator.WikiMediator;
+import cpen221.mp3.wikimediator.WikiPage;
 
 import java.util.*;
 
@@ -10,10 +16,32 @@ public class WikiMediatorState {
     public int capacity;
     public int timeout;
     public int currentCapacity;
-    public Map buffer;
-    public List bufferIds;
+    public boolean weighted;
+    public long maxWeight;
+    public boolean offHeap;
+    public EvictionPolicy policy;
+    public double refreshAhead;
+    public String diskTierDirectory;
+    public long diskTierMaxBytes;
+    public int diskTierMaxAge;
+    public Map<String, WikiPage> buffer;
+    public List<String> bufferIds;
 
     public List<Request> requestsTracker;
+    public HeavyHitters heavyHitters;
+    public TimeBuckets allRequests;
+    public RetentionPolicy retention;
+    public int analyticsRingSize;
+    public boolean analyticsFlushOnRead;
+    public double decayHalfLife;
+    public List<DecayedScore> decayedScores;
+    public int pathConcurrency;
+    public int linkCacheCapacity;
+    public int linkCacheTimeout;
+    public long linkCacheMaxBytes;
+    public String linkGraphFile;
+
+    /* only read from states saved before request times were bucketed */
     public List<Long> allRequestsTracker;
 
     /* Representation Invariant */
@@ -26,10 +54,38 @@ public class WikiMediatorState {
     public WikiMediatorState(WikiMediator wm) {
         capacity = wm.getFSFTBuffer().getCapacity();
         timeout = wm.getFSFTBuffer().getTimeout();
-        currentCapacity = wm.getFSFTBuffer().getCurrentCapacity();
-        buffer = new HashMap(wm.getFSFTBuffer().getBuffer());
-        bufferIds = new ArrayList(wm.getFSFTBuffer().getBufferIds());
+        weighted = wm.getFSFTBuffer().isWeighted();
+        maxWeight = wm.getFSFTBuffer().getMaxWeight();
+        offHeap = wm.getOffHeapArena() != null;
+        policy = wm.getFSFTBuffer().getEvictionPolicy();
+        refreshAhead = wm.getRefreshAhead();
+        if (wm.getDiskTier() != null) {
+            diskTierDirectory = wm.getDiskTier().getDirectory().toString();
+            diskTierMaxBytes = wm.getDiskTier().getMaxBytes();
+            diskTierMaxAge = wm.getDiskTier().getMaxAge();
+        }
+        buffer = new LinkedHashMap<>();
+        // off-heap pages are saved as plain copies; pages released since the snapshot are skipped
+        wm.getFSFTBuffer().getBuffer().forEach((title, page) -> {
+            String text = page.getText();
+            if (text != null) {
+                buffer.put(title, page.isOffHeap() ? new WikiPage(title, text, page.getFetchedAt()) : page);
+            }
+        });
+        currentCapacity = buffer.size();
+        bufferIds = new ArrayList<>(buffer.keySet());
         requestsTracker = wm.getRequestsTracker();
-        allRequestsTracker = wm.getAllRequestTracker();
+        heavyHitters = wm.getHeavyHitters();
+        allRequests = wm.getAllRequestTracker();
+        retention = wm.getRetention();
+        analyticsRingSize = wm.getAnalyticsRingSize();
+        analyticsFlushOnRead = wm.isFlushOnRead();
+        decayHalfLife = wm.getDecayHalfLife();
+        decayedScores = wm.getDecayedScores();
+        pathConcurrency = wm.getPathConcurrency();
+        linkCacheCapacity = wm.getLinkCacheCapacity();
+        linkCacheTimeout = wm.getLinkCacheTimeout();
+        linkCacheMaxBytes = wm.getLinkCacheMaxBytes();
+        linkGraphFile = wm.getLinkGraphFile();
     }
 }
@@ -0,0 +1,256 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Finds the lexicographically smallest shortest path between two pages with a bidirectional,
+ * level-synchronous breadth-first search. Each round expands every page of the smaller frontier,
+ * forward through the links on those pages or backward through the pages that link to them, until
+ * the two searches reach a common page. The links of a page are fetched at most once. Every page
+ * reached remembers all the pages one step closer to where its search began, so once the length of
+ * the shortest paths is known, the smallest of them is read off without fetching anything more.
+ * Given a pool of fetchers, the links of all the pages of a frontier are fetched at once, and
+ * taken in frontier order, so the search reaches the same pages as when fetching one at a time.
+ */
+class BFS implements Runnable {
+    private final LinkProvider links;
+    private final ExecutorService fetchers;
+    private final List<List<String>> path;
+    private final String start;
+    private final String target;
+    private final Map<String, Reached> forward = new HashMap<>();
+    private final Map<String, Reached> backward = new HashMap<>();
+
+    /* Representation Invariant */
+    // links, start and target are not null
+    // forward maps each page reached from start to its distance from start, and backward each page reached from
+    //   target to its distance to target
+    // for every page p in forward other than start, forward.get(p).via lists every page in forward at distance one
+    //   less that links to p, and likewise for backward with the pages that p links to
+
+    /* Abstraction Function */
+    // A BFS represents a search for the lexicographically smallest shortest path from start to target, which it
+    //   adds to path once found.
+
+    /* how far a page is from where its search began, and the pages it was reached from */
+    private static final class Reached {
+        final int distance;
+        final List<String> via = new ArrayList<>(1);
+
+        Reached(int distance) {
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Creates a search for a path between two pages.
+     *
+     * @param links the links between pages.
+     * @param fetchers the threads to fetch links on, or null to fetch them on the searching thread.
+     * @param path the List to add the path to once it is found.
+     * @param start the title of the page the path starts at.
+     * @param target the title of the page the path ends at.
+     */
+    BFS(LinkProvider links, ExecutorService fetchers, List<List<String>> path, String start, String target) {
+        this.links = links;
+        this.fetchers = fetchers;
+        this.path = path;
+        this.start = start;
+        this.target = target;
+    }
+
+    @Override
+    public void run() {
+        List<String> found = search();
+        if (found != null) {
+            path.add(found);
+        }
+    }
+
+    /**
+     * Find the shortest path from start to target. If several paths are equally short, the one whose titles come
+     * first in lexicographic order, compared title by title, is found. Stops early, finding nothing, if the
+     * thread is interrupted.
+     *
+     * @return the titles of the pages on the path, including start and target, or null if there is no path or
+     * the thread was interrupted.
+     */
+    List<String> search() {
+        if (start.equals(target)) {
+            return List.of(start);
+        }
+        forward.put(start, new Reached(0));
+        backward.put(target, new Reached(0));
+        List<String> forwardFrontier = List.of(start);
+        List<String> backwardFrontier = List.of(target);
+        int forwardDepth = 0;
+        int backwardDepth = 0;
+
+        while (!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+            List<String> next;
+            if (forwardFrontier.size() <= backwardFrontier.size()) {
+                next = expand(forwardFrontier, forward, true);
+                if (next == null) {
+                    return null;
+                }
+                forwardFrontier = next;
+                forwardDepth++;
+            } else {
+                next = expand(backwardFrontier, backward, false);
+                if (next == null) {
+                    return null;
+                }
+                backwardFrontier = next;
+                backwardDepth++;
+            }
+            // until the searches meet, every path is longer than both depths together, so the first pages they
+            // have in common are all on shortest paths of exactly that length
+            for (String page : next) {
+                if (forward.containsKey(page) && backward.containsKey(page)) {
+                    return smallestPath(forwardFrontier, forwardDepth + backwardDepth);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reach the pages one step beyond a frontier.
+     *
+     * @param frontier the pages reached last by one of the searches, all at the same distance.
+     * @param reached the pages reached by that search.
+     * @param outgoing true to follow the links on the frontier pages, false to follow links to them.
+     * @return the pages first reached in this step, or null if the thread was interrupted.
+     */
+    private List<String> expand(List<String> frontier, Map<String, Reached> reached, boolean outgoing) {
+        List<String> next = new ArrayList<>();
+        int distance = reached.get(frontier.get(0)).distance + 1;
+        List<Future<List<String>>> pending = fetchers != null && frontier.size() > 1 ? submit(frontier, outgoing)
+                : null;
+        try {
+            for (int i = 0; i < frontier.size(); i++) {
+                String page = frontier.get(i);
+                List<String> fetched;
+                if (pending != null) {
+                    fetched = pending.get(i).get();
+                } else if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                } else {
+                    fetched = fetch(page, outgoing);
+                }
+                for (String linked : fetched) {
+                    Reached seen = reached.get(linked);
+                    if (seen == null) {
+                        seen = new Reached(distance);
+                        reached.put(linked, seen);
+                        next.add(linked);
+                    }
+                    if (seen.distance == distance) {
+                        seen.via.add(page);
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ee) {
+            // a failed fetch fails the search as it would on the searching thread
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (pending != null) {
+                for (Future<List<String>> fetch : pending) {
+                    fetch.cancel(true);
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Start fetching the links of every page of a frontier on the fetchers.
+     *
+     * @param frontier the pages to fetch the links of.
+     * @param outgoing true to fetch the links on the pages, false to fetch links to them.
+     * @return the fetches, in frontier order, or null if the fetchers were shut down.
+     */
+    private List<Future<List<String>>> submit(List<String> frontier, boolean outgoing) {
+        List<Future<List<String>>> pending = new ArrayList<>(frontier.size());
+        try {
+            for (String page : frontier) {
+                pending.add(fetchers.submit(() -> fetch(page, outgoing)));
+            }
+            return pending;
+        } catch (RejectedExecutionException ree) {
+            for (Future<List<String>> fetch : pending) {
+                fetch.cancel(true);
+            }
+            return null;
+        }
+    }
+
+    private List<String> fetch(String page, boolean outgoing) {
+        return outgoing ? links.linksFrom(page) : links.linksTo(page);
+    }
+
+    /**
+     * Read the lexicographically smallest shortest path off the pages reached.
+     *
+     * @param forwardFrontier the pages farthest from start that the forward search reached.
+     * @param length the length of the shortest paths, in links.
+     * @return the titles of the pages on the path.
+     */
+    private List<String> smallestPath(List<String> forwardFrontier, int length) {
+        int forwardDepth = forward.get(forwardFrontier.get(0)).distance;
+
+        // every shortest path passes through a page on the forward frontier that both searches reached; walk back
+        // from those pages to find, for each page closer to start, the pages after it on some shortest path
+        Map<String, List<String>> onward = new HashMap<>();
+        List<String> level = new ArrayList<>();
+        for (String page : forwardFrontier) {
+            Reached toTarget = backward.get(page);
+            if (toTarget != null && toTarget.distance == length - forwardDepth) {
+                level.add(page);
+            }
+        }
+        for (int depth = forwardDepth; depth > 0; depth--) {
+            List<String> previous = new ArrayList<>();
+            for (String page : level) {
+                for (String before : forward.get(page).via) {
+                    List<String> after = onward.get(before);
+                    if (after == null) {
+                        after = new ArrayList<>();
+                        onward.put(before, after);
+                        previous.add(before);
+                    }
+                    after.add(page);
+                }
+            }
+            level = previous;
+        }
+
+        List<String> found = new ArrayList<>(length + 1);
+        String page = start;
+        found.add(page);
+        for (int depth = 0; depth < forwardDepth; depth++) {
+            page = Collections.min(onward.get(page));
+            found.add(page);
+        }
+        // past the forward frontier, every page the backward search reached a page from is one step closer
+        while (!page.equals(target)) {
+            page = Collections.min(backward.get(page).via);
+            found.add(page);
+        }
+        return found;
+    }
+}
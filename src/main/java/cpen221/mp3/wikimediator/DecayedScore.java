@@ -0,0 +1,52 @@
+package cpen221.mp3.wikimediator;
+
+/**
+ * The decayed popularity score of a String used in search() and getPage() requests, as of the
+ * last time it was updated.
+ */
+public final class DecayedScore {
+    private final String requestString;
+    private final double score;
+    private final long updated;
+
+    /* Representation Invariant */
+    // requestString is not null, and score > 0
+
+    /* Abstraction Function */
+    // A DecayedScore represents requestString having the popularity score score at time updated, in seconds,
+    // which halves every half-life after that.
+
+    /**
+     * Creates a score.
+     *
+     * @param requestString the String the score is for.
+     * @param score the score at the time it was last updated, must be > 0.
+     * @param updated the time the score was last updated, in seconds.
+     */
+    public DecayedScore(String requestString, double score, long updated) {
+        this.requestString = requestString;
+        this.score = score;
+        this.updated = updated;
+    }
+
+    /**
+     * @return the String the score is for.
+     */
+    public String getRequestString() {
+        return requestString;
+    }
+
+    /**
+     * @return the score at the time it was last updated.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return the time the score was last updated, in seconds.
+     */
+    public long getUpdated() {
+        return updated;
+    }
+}
@@ -0,0 +1,223 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.*;
+
+/**
+ * Keeps an exponentially decayed popularity score for each String used in search() and getPage()
+ * requests: every request adds 1, and a score halves every half-life. Each String holds only its
+ * score and the time it was last updated, and is decayed lazily when it is next requested or read.
+ * Since all scores decay at the same rate, one score is higher than another now exactly when its
+ * log2 plus its update time in half-lives is higher, which does not change as time passes. The
+ * Strings are kept in a max-heap on that rank, indexed by String, so a request updates its String
+ * in O(log n) and the top k are found in O(k log k).
+ */
+class DecayedTracker {
+
+    private final double halfLife;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private String[] requests = new String[16];
+    private double[] scores = new double[16];
+    private long[] updated = new long[16];
+    private double[] ranks = new double[16];
+    private int[] seqs = new int[16];
+    private int size;
+    private long origin;
+
+    /* Representation Invariant */
+    // halfLife > 0
+    // requests, scores, updated, ranks and seqs have the same length >= size
+    // requests[0..size) are distinct and not null, and positions maps each of them to its index
+    // scores[i] > 0 and ranks[i] == log2(scores[i]) + (updated[i] - origin) / halfLife, for i < size
+    // origin is the time of the first request recorded, if there is one
+    // seqs[0..size) are distinct, and [0..size) is a max-heap under compareRank
+    // all fields are only accessed while holding the lock of this
+
+    /* Abstraction Function */
+    // A DecayedTracker represents, for each requests[i], a popularity score of
+    //   scores[i] * 2^(-(now - updated[i]) / halfLife) at any time now >= updated[i], where the String was first
+    //   requested seqs[i]-th among those tracked.
+
+    /**
+     * Creates a tracker that has seen no requests.
+     *
+     * @param halfLifeSeconds how long, in seconds, a score takes to halve, must be > 0.
+     */
+    DecayedTracker(double halfLifeSeconds) {
+        halfLife = halfLifeSeconds;
+    }
+
+    /**
+     * Creates a tracker with the given scores, first requested in the order of the list.
+     *
+     * @param halfLifeSeconds how long, in seconds, a score takes to halve, must be > 0.
+     * @param scores the scores to start with, each for a different String.
+     */
+    DecayedTracker(double halfLifeSeconds, List<DecayedScore> scores) {
+        this(halfLifeSeconds);
+        for (DecayedScore score : scores) {
+            record(score.getRequestString(), score.getUpdated());
+            int i = positions.get(score.getRequestString());
+            this.scores[i] = score.getScore();
+            ranks[i] = rank(score.getScore(), score.getUpdated());
+            siftUp(i);
+            siftDown(i);
+        }
+    }
+
+    /**
+     * @return how long, in seconds, a score takes to halve.
+     */
+    double getHalfLife() {
+        return halfLife;
+    }
+
+    /**
+     * Record that a String was used in a search() or getPage() request.
+     *
+     * @param request the String for which getPage() or search() was called.
+     * @param time the system time at which getPage() or search() was called, in seconds.
+     */
+    synchronized void record(String request, long time) {
+        Integer position = positions.get(request);
+        if (position == null) {
+            if (size == requests.length) {
+                int length = size * 2;
+                requests = Arrays.copyOf(requests, length);
+                scores = Arrays.copyOf(scores, length);
+                updated = Arrays.copyOf(updated, length);
+                ranks = Arrays.copyOf(ranks, length);
+                seqs = Arrays.copyOf(seqs, length);
+            }
+            if (size == 0) {
+                // ranks count half-lives from here, so they stay small enough to compare precisely
+                origin = time;
+            }
+            int i = size++;
+            requests[i] = request;
+            scores[i] = 1;
+            updated[i] = time;
+            ranks[i] = rank(1, time);
+            seqs[i] = positions.size();
+            positions.put(request, i);
+            siftUp(i);
+            return;
+        }
+
+        int i = position;
+        // a request recorded after a later one is decayed to the later time instead
+        long now = Math.max(time, updated[i]);
+        scores[i] = scores[i] * Math.pow(2, -(now - updated[i]) / halfLife) + Math.pow(2, -(now - time) / halfLife);
+        updated[i] = now;
+        ranks[i] = rank(scores[i], now);
+        siftUp(i);
+        siftDown(i);
+    }
+
+    /**
+     * @param request a String.
+     * @param currentTime the current system time, in seconds.
+     * @return the score of request at currentTime, or 0 if it was never requested.
+     */
+    synchronized double score(String request, long currentTime) {
+        Integer position = positions.get(request);
+        return position == null ? 0 : decayed(position, currentTime);
+    }
+
+    private double decayed(int i, long currentTime) {
+        return scores[i] * Math.pow(2, -(currentTime - updated[i]) / halfLife);
+    }
+
+    /**
+     * @param maxItems the maximum number of Strings to return, must be >= 0.
+     * @return the maxItems Strings with the highest scores, highest first, with Strings that have equal scores in
+     * the order they were first requested.
+     */
+    synchronized List<String> mostPopular(int maxItems) {
+        List<String> top = new ArrayList<>(Math.min(maxItems, size));
+        // the heap's children of the Strings listed so far are the only candidates for the next one
+        PriorityQueue<Integer> frontier = new PriorityQueue<>((i, j) -> compareRank(j, i));
+        if (size > 0) {
+            frontier.add(0);
+        }
+        while (top.size() < maxItems && !frontier.isEmpty()) {
+            int i = frontier.poll();
+            top.add(requests[i]);
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                frontier.add(child);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * @return a copy of the score and last update time of each String, in the order they were first requested.
+     */
+    synchronized List<DecayedScore> scores() {
+        DecayedScore[] ordered = new DecayedScore[size];
+        for (int i = 0; i < size; i++) {
+            ordered[seqs[i]] = new DecayedScore(requests[i], scores[i], updated[i]);
+        }
+        return new ArrayList<>(Arrays.asList(ordered));
+    }
+
+    /* the rank of a String with the given score at the given time */
+    private double rank(double score, long time) {
+        return Math.log(score) / Math.log(2) + (time - origin) / halfLife;
+    }
+
+    /* positive if the String at i ranks above the one at j */
+    private int compareRank(int i, int j) {
+        if (ranks[i] != ranks[j]) {
+            return Double.compare(ranks[i], ranks[j]);
+        }
+        return Integer.compare(seqs[j], seqs[i]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compareRank(parent, i) >= 0) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && compareRank(child + 1, child) > 0) {
+                child++;
+            }
+            if (compareRank(i, child) >= 0) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String request = requests[i];
+        requests[i] = requests[j];
+        requests[j] = request;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+        long time = updated[i];
+        updated[i] = updated[j];
+        updated[j] = time;
+        double rank = ranks[i];
+        ranks[i] = ranks[j];
+        ranks[j] = rank;
+        int seq = seqs[i];
+        seqs[i] = seqs[j];
+        seqs[j] = seq;
+        positions.put(requests[i], i);
+        positions.put(requests[j], j);
+    }
+}
@@ -0,0 +1,501 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DiskPageStore implements Closeable {
+
+    /* the default segment size is 16 MiB */
+    public static final int DSEGMENT = 16 << 20;
+
+    /* segments are compacted every 30 s */
+    private static final long COMPACT_PERIOD = 30;
+
+    /* a sealed segment is compacted once less than half of it is live */
+    private static final double COMPACT_BELOW = 0.5;
+
+    /* record length, title length and fetch time */
+    private static final int HEADER = 4 + 4 + 8;
+
+    /* the most pages waiting for the background thread to write them; more are not kept */
+    private static final int MAX_PENDING = 1024;
+
+    /* how long close() waits for the pages still waiting to be written */
+    private static final long CLOSE_WAIT = 10;
+
+    private static final Logger LOG = Logger.getLogger(DiskPageStore.class.getName());
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    private final Map<String, Location> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+
+    /* the segment compact() is copying the live records out of, or null */
+    private Segment compacting;
+
+    /* set by close(), after which the segment files are never touched */
+    private boolean closed;
+
+    /* pages handed to putLater() and not yet written, by title */
+    private final Map<String, Page> pending = new ConcurrentHashMap<>();
+
+    /* writes pages handed to putLater() and compacts segments, one task at a time */
+    private final ScheduledExecutorService background;
+
+    /* Representation Invariant */
+    // active is the segment with the largest id in segments
+    // compacting is null, or a segment in segments, and only while compact() holds the lock
+    // once closed, no segment's channel or map is used again
+    // every location in index points at a whole record in a segment in segments, whose title is the location's key
+    // each segment's liveBytes is the total length of the records in it that index points at
+    // every segment is segmentSize bytes long on disk; its records fill [0, size) and the rest is zero
+    // every page in pending has a write of it queued on background, and is newer than the record index points at
+
+    /* Abstraction Function */
+    // A DiskPageStore represents a map from page titles to page texts, each remembered with the time it was fetched,
+    // kept in a log of segment files in directory. A title maps to the text of the latest record for it, unless that
+    // record was fetched maxAgeMillis or more ago; a page in pending takes the place of the record for its title.
+    // The oldest segments are dropped once the log grows past maxBytes.
+
+    /**
+     * Opens the store in a directory, recovering the pages stored there by a previous store.
+     * Segments are compacted, and pages handed to putLater() written, on a background thread until the store
+     * is closed.
+     *
+     * @param directory the directory holding the segment files, created if it does not exist.
+     * @param maxBytes the maximum total size of the segment files, must be >= segmentSize. The oldest segment is
+     *                 dropped when a new one would exceed this, except while it is being compacted, when the log
+     *                 may exceed this by one segment.
+     * @param maxAgeSeconds how long, in seconds, a page stays readable after it was fetched, must be > 0.
+     * @param segmentSize the size of each segment file in bytes, must be > 16. Larger pages are not stored.
+     * @throws IOException if the directory or its segment files cannot be read or created.
+     */
+    public DiskPageStore(Path directory, long maxBytes, int maxAgeSeconds, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeSeconds * 1000L;
+
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int id = Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length()));
+            recover(openSegment(id));
+        }
+        if (segments.isEmpty()) {
+            roll();
+        }
+        active = segments.lastEntry().getValue();
+
+        background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "disk-page-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(() -> {
+            // a failure must not cancel the compactions after it
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "could not compact the pages in " + directory, e);
+            }
+        }, COMPACT_PERIOD, COMPACT_PERIOD, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Opens a store with the default segment size of 16 MiB.
+     *
+     * @param directory the directory holding the segment files, created if it does not exist.
+     * @param maxBytes the maximum total size of the segment files, must be >= 16 MiB.
+     * @param maxAgeSeconds how long, in seconds, a page stays readable after it was fetched, must be > 0.
+     * @throws IOException if the directory or its segment files cannot be read or created.
+     */
+    public DiskPageStore(Path directory, long maxBytes, int maxAgeSeconds) throws IOException {
+        this(directory, maxBytes, maxAgeSeconds, DSEGMENT);
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Path path = directory.resolve(String.format("segment-%08d.log", id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // mapping the whole segment extends the file to segmentSize, with the unwritten tail reading as zero
+        Segment segment = new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /* rebuild the index entries of a segment left by a previous store */
+    private void recover(Segment segment) {
+        ByteBuffer map = segment.map;
+        int offset = 0;
+        while (offset + HEADER <= segmentSize) {
+            int length = map.getInt(offset);
+            if (length < HEADER || offset + length > segmentSize) {
+                break;
+            }
+            String title = readTitle(segment, offset);
+            link(title, new Location(segment, offset, length, map.getLong(offset + 8)));
+            offset += length;
+        }
+        segment.size = offset;
+    }
+
+    /*
+     * start a new active segment, dropping the oldest segments while the log would be too large; the segment being
+     * compacted and those after it are kept, so the log may exceed maxBytes by one segment until it is dropped
+     */
+    private void roll() throws IOException {
+        while (!segments.isEmpty() && segments.firstEntry().getValue() != compacting
+                && (long) (segments.size() + 1) * segmentSize > maxBytes) {
+            drop(segments.firstEntry().getValue());
+        }
+        int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        active = openSegment(id);
+    }
+
+    private void drop(Segment segment) throws IOException {
+        index.values().removeIf(location -> location.segment == segment);
+        segments.remove(segment.id);
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+    }
+
+    private void link(String title, Location location) {
+        Location old = index.put(title, location);
+        if (old != null) {
+            old.segment.liveBytes -= old.length;
+        }
+        location.segment.liveBytes += location.length;
+    }
+
+    private void unlink(String title) {
+        Location old = index.remove(title);
+        if (old != null) {
+            old.segment.liveBytes -= old.length;
+        }
+    }
+
+    /**
+     * Stores the text of a page, fetched now, replacing any text stored for it before.
+     *
+     * @param title the title of the page.
+     * @param text the text of the page.
+     * @return true if the page was stored, false if it is too large for a segment.
+     */
+    public boolean put(String title, String text) {
+        return put(title, text, System.currentTimeMillis());
+    }
+
+    /**
+     * Stores the text of a page, replacing any text stored for it before. The page stays readable until it is
+     * maxAgeSeconds older than when it was fetched, however often it is stored again.
+     *
+     * @param title the title of the page.
+     * @param text the text of the page.
+     * @param fetchedAt when the text was fetched, in milliseconds since the epoch.
+     * @return true if the page was stored, false if it is too large for a segment, already too old to be read,
+     * or the store is closed.
+     */
+    public synchronized boolean put(String title, String text, long fetchedAt) {
+        if (closed || System.currentTimeMillis() - fetchedAt >= maxAgeMillis) {
+            return false;
+        }
+        return append(title, text.getBytes(StandardCharsets.UTF_8), fetchedAt);
+    }
+
+    /**
+     * Stores the text of a page later, on the background thread, so the caller never waits for the disk; the
+     * page reads as stored at once. A page that cannot be written is logged and left out. Pages are left out
+     * as well while too many are waiting to be written.
+     *
+     * @param title the title of the page.
+     * @param text the text of the page.
+     * @param fetchedAt when the text was fetched, in milliseconds since the epoch.
+     */
+    public void putLater(String title, String text, long fetchedAt) {
+        if (pending.size() >= MAX_PENDING) {
+            return;
+        }
+        Page page = new Page(text, fetchedAt);
+        pending.put(title, page);
+        try {
+            background.execute(() -> write(title, page));
+        } catch (RejectedExecutionException e) {
+            // the store is closing
+            pending.remove(title, page);
+        }
+    }
+
+    private void write(String title, Page page) {
+        try {
+            put(title, page.text, page.fetchedAt);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "could not write page " + title + " to " + directory, e);
+        } finally {
+            // a newer page for the title may be waiting already, and stays
+            pending.remove(title, page);
+        }
+    }
+
+    private boolean append(String title, byte[] text, long fetchedAt) {
+        byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+        long length = (long) HEADER + titleBytes.length + text.length;
+        if (length > segmentSize) {
+            return false;
+        }
+
+        try {
+            if (active.size + length > segmentSize) {
+                roll();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int offset = active.size;
+        ByteBuffer map = active.map.duplicate();
+        map.position(offset);
+        map.putInt((int) length).putInt(titleBytes.length).putLong(fetchedAt).put(titleBytes).put(text);
+        active.size += (int) length;
+        link(title, new Location(active, offset, (int) length, fetchedAt));
+        return true;
+    }
+
+    /**
+     * @param title the title of a page.
+     * @return the text most recently stored for the page, or null if none was stored or it has grown too old.
+     */
+    public String get(String title) {
+        Page page = read(title);
+        return page == null ? null : page.text;
+    }
+
+    /**
+     * @param title the title of a page.
+     * @return the text most recently stored for the page and when it was fetched, or null if none was stored or
+     * it has grown too old.
+     */
+    Page read(String title) {
+        Page waiting = pending.get(title);
+        if (waiting != null) {
+            return System.currentTimeMillis() - waiting.fetchedAt < maxAgeMillis ? waiting : null;
+        }
+        return readStored(title);
+    }
+
+    private synchronized Page readStored(String title) {
+        Location location = index.get(title);
+        if (location == null || closed) {
+            return null;
+        }
+        if (System.currentTimeMillis() - location.fetchedAt >= maxAgeMillis) {
+            unlink(title);
+            return null;
+        }
+        return new Page(new String(readText(location), StandardCharsets.UTF_8), location.fetchedAt);
+    }
+
+    private String readTitle(Segment segment, int offset) {
+        byte[] title = new byte[segment.map.getInt(offset + 4)];
+        ByteBuffer map = segment.map.duplicate();
+        map.position(offset + HEADER);
+        map.get(title);
+        return new String(title, StandardCharsets.UTF_8);
+    }
+
+    private byte[] readText(Location location) {
+        int titleLength = location.segment.map.getInt(location.offset + 4);
+        byte[] text = new byte[location.length - HEADER - titleLength];
+        ByteBuffer map = location.segment.map.duplicate();
+        map.position(location.offset + HEADER + titleLength);
+        map.get(text);
+        return text;
+    }
+
+    /**
+     * Rewrites the live records of every sealed segment that is mostly garbage into the active segment and deletes
+     * it. Pages that have grown too old are dropped on the way. Runs periodically in the background, and may also
+     * be called directly.
+     */
+    public void compact() {
+        List<Segment> candidates;
+        synchronized (this) {
+            candidates = new ArrayList<>(segments.headMap(active.id).values());
+        }
+
+        // one segment at a time, so that readers only wait for one segment's copy
+        for (Segment segment : candidates) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (segments.get(segment.id) != segment || segment.liveBytes >= COMPACT_BELOW * segment.size) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                // copying a record may roll the log, which must not drop the records not copied yet
+                compacting = segment;
+                try {
+                    for (int offset = 0; offset < segment.size; ) {
+                        int length = segment.map.getInt(offset);
+                        String title = readTitle(segment, offset);
+                        Location location = index.get(title);
+                        if (location != null && location.segment == segment && location.offset == offset) {
+                            if (now - location.fetchedAt < maxAgeMillis) {
+                                append(title, readText(location), location.fetchedAt);
+                            } else {
+                                unlink(title);
+                            }
+                        }
+                        offset += length;
+                    }
+                } finally {
+                    compacting = null;
+                }
+                try {
+                    drop(segment);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of pages currently stored, including pages that have grown too old but not been dropped.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the number of segment files currently in the log.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return the directory holding the segment files.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the maximum total size of the segment files.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return how long, in seconds, a page stays readable after it was fetched.
+     */
+    public int getMaxAge() {
+        return (int) (maxAgeMillis / 1000);
+    }
+
+    /**
+     * Writes the pages still waiting to be written, stops background compaction and closes the segment files,
+     * which are kept for the next store in the same directory. Afterwards the store reads as empty, and refuses
+     * pages, so callers that still hold it never touch the closed files.
+     *
+     * @throws IOException if a segment file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        // queued writes still run, but the next compaction does not; they take the lock, so it is not held here
+        background.shutdown();
+        try {
+            background.awaitTermination(CLOSE_WAIT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments.values()) {
+                segment.map.force();
+                segment.channel.close();
+            }
+        }
+    }
+
+    /**
+     * A segment file, mapped into memory in full.
+     */
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        int size;
+        long liveBytes;
+
+        Segment(int id, Path path, FileChannel channel, MappedByteBuffer map) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.map = map;
+        }
+    }
+
+    /**
+     * Where the latest record for a title is.
+     */
+    private static final class Location {
+        final Segment segment;
+        final int offset;
+        final int length;
+        final long fetchedAt;
+
+        Location(Segment segment, int offset, int length, long fetchedAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * The text stored for a page, and when it was fetched.
+     */
+    static final class Page {
+        final String text;
+        final long fetchedAt;
+
+        Page(String text, long fetchedAt) {
+            this.text = text;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
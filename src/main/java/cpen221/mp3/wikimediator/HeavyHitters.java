@@ -0,0 +1,228 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.*;
+
+/**
+ * Approximately counts how often each String was used in search() and getPage() requests, in
+ * memory that does not grow with the number of distinct Strings. All uses are summarised by one
+ * Space-Saving summary, and the uses in each slot of a sliding horizon by another, so that
+ * trending() adds up the summaries of the slots in its time frame. With maxError e, every count
+ * is at most e times the number of requests counted too high, and a String used more often than
+ * that is never missed.
+ */
+public final class HeavyHitters {
+
+    private final double maxError;
+    private final int horizon;
+    private final int slotSeconds;
+    private final SpaceSaving allTime;
+    private final SpaceSaving[] slots;
+    private final long[] slotStarts;
+    private long nextSeq;
+
+    /* Representation Invariant */
+    // 0 < maxError < 1, and 0 < slotSeconds <= horizon
+    // slots.length == slotStarts.length == horizon / slotSeconds rounded up, plus one
+    // slots[i] is null if and only if slotStarts[i] == Long.MIN_VALUE; otherwise slotStarts[i] is a multiple of
+    //   slotSeconds, and slotStarts[i] / slotSeconds is congruent to i modulo slots.length
+    // allTime and every slot have capacity maxError rounded up to a whole reciprocal
+    // every sequence number in allTime and the slots is < nextSeq
+    // all fields are only accessed while holding the lock of this
+
+    /* Abstraction Function */
+    // A HeavyHitters represents nextSeq uses of Strings, estimated by allTime, of which those made in
+    //   [slotStarts[i], slotStarts[i] + slotSeconds) are estimated by slots[i]. Uses older than every slot are only
+    //   counted by allTime.
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param maxError the largest error of a count, as a fraction of the requests counted, must be in (0, 1).
+     * @param horizonSeconds the longest time frame, in seconds, that trending() can count, must be > 0.
+     * @param slotSeconds the resolution, in seconds, of trending() time frames, must be in (0, horizonSeconds].
+     */
+    public HeavyHitters(double maxError, int horizonSeconds, int slotSeconds) {
+        this.maxError = maxError;
+        this.horizon = horizonSeconds;
+        this.slotSeconds = slotSeconds;
+        allTime = new SpaceSaving(capacity());
+        int slotCount = (horizonSeconds + slotSeconds - 1) / slotSeconds + 1;
+        slots = new SpaceSaving[slotCount];
+        slotStarts = new long[slotCount];
+        Arrays.fill(slotStarts, Long.MIN_VALUE);
+    }
+
+    private HeavyHitters(HeavyHitters other) {
+        maxError = other.maxError;
+        horizon = other.horizon;
+        slotSeconds = other.slotSeconds;
+        allTime = other.allTime.copy();
+        slots = new SpaceSaving[other.slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = other.slots[i] == null ? null : other.slots[i].copy();
+        }
+        slotStarts = other.slotStarts.clone();
+        nextSeq = other.nextSeq;
+    }
+
+    /**
+     * @return a copy of this that does not change when this does.
+     */
+    synchronized HeavyHitters copy() {
+        return new HeavyHitters(this);
+    }
+
+    /* the number of counters in each summary */
+    private int capacity() {
+        return (int) Math.ceil(1 / maxError);
+    }
+
+    /**
+     * Record that a String was used in a search() or getPage() request.
+     *
+     * @param request the String for which getPage() or search() was called.
+     * @param time the system time at which getPage() or search() was called, in seconds.
+     */
+    synchronized void record(String request, long time) {
+        add(request, time, 1);
+    }
+
+    /**
+     * Record that a String was used a number of times in the same second.
+     *
+     * @param request the String used.
+     * @param time the time of the uses, in seconds.
+     * @param uses the number of uses, must be > 0.
+     */
+    synchronized void add(String request, long time, long uses) {
+        long seq = nextSeq;
+        nextSeq += uses;
+        allTime.add(request, uses, seq);
+
+        long slot = Math.floorDiv(time, slotSeconds);
+        int i = (int) Math.floorMod(slot, (long) slots.length);
+        long start = slot * slotSeconds;
+        if (slotStarts[i] != start) {
+            if (slotStarts[i] > start) {
+                // the slot has been reused for later requests, so this one is older than the horizon
+                return;
+            }
+            if (slots[i] == null) {
+                slots[i] = new SpaceSaving(capacity());
+            } else {
+                slots[i].clear();
+            }
+            slotStarts[i] = start;
+        }
+        slots[i].add(request, uses, seq);
+    }
+
+    /**
+     * @param limit the maximum number of Strings to return, must be >= 0.
+     * @return the limit Strings estimated to be most common, in non-increasing estimated count order, with
+     * Strings estimated to be equally common in the order they were first counted.
+     */
+    synchronized List<String> mostCommon(int limit) {
+        return limit == 0 ? new ArrayList<>() : allTime.top(limit);
+    }
+
+    /**
+     * The time frame is widened to whole slots, so requests up to one slot older than it may be counted, and
+     * narrowed to the horizon.
+     *
+     * @param currentTime the current system time, in seconds.
+     * @param timeLimitInSeconds only requests made in [currentTime - timeLimitInSeconds, currentTime] are counted.
+     * @param maxItems the maximum number of Strings to return, must be >= 0.
+     * @return the maxItems Strings estimated to be most commonly used in that time frame, in non-increasing
+     * estimated count order, with Strings estimated to be equally common in the order they were first counted.
+     */
+    synchronized List<String> mostCommonSince(long currentTime, int timeLimitInSeconds, int maxItems) {
+        Map<String, long[]> sums = new HashMap<>();
+        for (int i = 0; i < slots.length; i++) {
+            if (inFrame(i, currentTime, timeLimitInSeconds)) {
+                slots[i].addTo(sums);
+            }
+        }
+        return top(sums, maxItems);
+    }
+
+    /* whether slot i holds requests counted in the time frame, widened and narrowed as mostCommonSince() says */
+    private boolean inFrame(int i, long currentTime, int timeLimitInSeconds) {
+        long since = currentTime - Math.min(timeLimitInSeconds, horizon);
+        return slots[i] != null && slotStarts[i] + slotSeconds > since && slotStarts[i] <= currentTime;
+    }
+
+    /* the limit Strings with the largest sums, ties broken by the smallest sequence number */
+    private static List<String> top(Map<String, long[]> sums, int limit) {
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        Comparator<Map.Entry<String, long[]>> rank = Comparator.comparingLong(e -> e.getValue()[0]);
+        rank = rank.thenComparing(Comparator.comparingLong((Map.Entry<String, long[]> e) -> e.getValue()[1])
+                .reversed());
+
+        // the lowest ranked of the top limit so far is at the head
+        PriorityQueue<Map.Entry<String, long[]>> top = new PriorityQueue<>(limit + 1, rank);
+        for (Map.Entry<String, long[]> entry : sums.entrySet()) {
+            top.add(entry);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        String[] ranked = new String[top.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = top.poll().getKey();
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    /**
+     * @param request a String.
+     * @return the estimated number of times it was used, at most maxError times the number of requests counted
+     * too high, or 0 if it is not among the Strings estimated to be most common.
+     */
+    synchronized long count(String request) {
+        return allTime.count(request);
+    }
+
+    /**
+     * @param request a String.
+     * @param currentTime the current system time, in seconds.
+     * @param timeLimitInSeconds only requests made in [currentTime - timeLimitInSeconds, currentTime] are
+     *                           counted, with the time frame widened and narrowed as for mostCommonSince().
+     * @return the estimated number of times it was used in that time frame, at most maxError times the number
+     * of requests counted in the time frame too high.
+     */
+    synchronized long countSince(String request, long currentTime, int timeLimitInSeconds) {
+        long count = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (inFrame(i, currentTime, timeLimitInSeconds)) {
+                count += slots[i].count(request);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of counters the summaries use at most, which bounds their memory.
+     */
+    public int getCounters() {
+        return capacity() * (slots.length + 1);
+    }
+
+    /**
+     * @return the largest error of a count, as a fraction of the requests counted.
+     */
+    public double getMaxError() { return maxError; }
+
+    /**
+     * @return the longest time frame, in seconds, that trending() can count.
+     */
+    public int getHorizon() { return horizon; }
+
+    /**
+     * @return the resolution, in seconds, of trending() time frames.
+     */
+    public int getSlotSeconds() { return slotSeconds; }
+}
@@ -0,0 +1,74 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only array of ints, held on the heap or mapped from a file. A mapping covers at most
+ * 2 GiB, so a mapped array is split into segments of SEGMENT ints, each mapped separately.
+ */
+abstract class IntArray {
+
+    /* the ints in each mapped segment, which take 1 GiB */
+    private static final int SEGMENT_BITS = 28;
+    private static final int SEGMENT = 1 << SEGMENT_BITS;
+
+    /**
+     * @param i an index, must be in [0, length()).
+     * @return the int at index i.
+     */
+    abstract int get(int i);
+
+    /**
+     * @return the number of ints in the array.
+     */
+    abstract int length();
+
+    /**
+     * @param ints the ints, which must not change afterwards.
+     * @return an array of the ints.
+     */
+    static IntArray of(int[] ints) {
+        return new IntArray() {
+            @Override
+            int get(int i) {
+                return ints[i];
+            }
+
+            @Override
+            int length() {
+                return ints.length;
+            }
+        };
+    }
+
+    /**
+     * Map ints stored in a file, big-endian, to an array. The file must not change while the array is used.
+     *
+     * @param channel the file, open for reading.
+     * @param position where in the file the ints start, in bytes.
+     * @param length the number of ints, must be >= 0.
+     * @return an array of the ints.
+     * @throws IOException if the file cannot be mapped.
+     */
+    static IntArray map(FileChannel channel, long position, int length) throws IOException {
+        IntBuffer[] segments = new IntBuffer[(int) (((long) length + SEGMENT - 1) >>> SEGMENT_BITS)];
+        for (int s = 0; s < segments.length; s++) {
+            int ints = (int) Math.min(SEGMENT, length - ((long) s << SEGMENT_BITS));
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, position + ((long) s << SEGMENT_BITS) * 4,
+                    (long) ints * 4).asIntBuffer();
+        }
+        return new IntArray() {
+            @Override
+            int get(int i) {
+                return segments[i >>> SEGMENT_BITS].get(i & (SEGMENT - 1));
+            }
+
+            @Override
+            int length() {
+                return length;
+            }
+        };
+    }
+}
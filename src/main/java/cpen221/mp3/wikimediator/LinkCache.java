@@ -0,0 +1,140 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.fsftbuffer.Buffer;
+import cpen221.mp3.fsftbuffer.Bufferable;
+import cpen221.mp3.fsftbuffer.ConcurrentFSFTBuffer;
+import cpen221.mp3.fsftbuffer.EvictionPolicy;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the links fetched from another LinkProvider, both the links on each page and the links
+ * to it, for all the searches of a WikiMediator. Both directions share one buffer, which is bounded
+ * by an estimate of the memory the cached lists take and by the number of lists; each list counts
+ * as at least maxBytes / capacity bytes, so neither bound is exceeded. The buffer evicts by
+ * TinyLFU, so the many pages a search reaches once do not push out the hubs that most searches
+ * pass through. Lookups of a list that another search is fetching wait for that fetch.
+ */
+class LinkCache implements LinkProvider {
+
+    /* estimated bytes of a cached list, and of each title in it besides its characters */
+    private static final long LIST_BYTES = 64;
+    private static final long TITLE_BYTES = 48;
+
+    private final LinkProvider source;
+    private final int capacity;
+    private final long maxBytes;
+    private final Buffer<Links> buffer;
+    private final LongAdder forwardHits = new LongAdder();
+    private final LongAdder forwardMisses = new LongAdder();
+    private final LongAdder backwardHits = new LongAdder();
+    private final LongAdder backwardMisses = new LongAdder();
+
+    /* Representation Invariant */
+    // source and buffer are not null, capacity > 0 and maxBytes > 0
+    // buffer holds Links whose id is ">" followed by the title of a page for the links on it, and "<" followed by
+    //   the title for the links to it
+
+    /* Abstraction Function */
+    // A LinkCache represents the links of source, some of which are remembered as they were when fetched: the
+    //   links on the pages and to the pages in buffer. forwardHits of the lookups of links on pages and
+    //   backwardHits of the lookups of links to them found the links remembered, or being fetched, and
+    //   forwardMisses and backwardMisses fetched them.
+
+    /* the links on or to a page */
+    private static final class Links implements Bufferable {
+        final String id;
+        final List<String> titles;
+
+        Links(String id, List<String> titles) {
+            this.id = id;
+            this.titles = titles;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        long estimatedBytes() {
+            long bytes = LIST_BYTES + 2L * id.length();
+            for (String title : titles) {
+                bytes += TITLE_BYTES + 2L * title.length();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param source where to fetch links that are not cached.
+     * @param capacity the most lists of links cached at once, must be > 0.
+     * @param timeout how long, in seconds, links stay cached after they are fetched, must be > 0.
+     * @param maxBytes the most memory, estimated in bytes, that the cached lists take, must be > 0.
+     */
+    LinkCache(LinkProvider source, int capacity, int timeout, long maxBytes) {
+        this.source = source;
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        long least = Math.max(1, maxBytes / capacity);
+        buffer = new ConcurrentFSFTBuffer<>(maxBytes, timeout, links -> Math.max(least, links.estimatedBytes()),
+                EvictionPolicy.TINY_LFU);
+        // reading links does not keep them, so hubs read by every search are still fetched again
+        buffer.setExpireAfterWrite(true);
+    }
+
+    @Override
+    public List<String> linksFrom(String title) {
+        return lookUp(">" + title, title, true);
+    }
+
+    @Override
+    public List<String> linksTo(String title) {
+        return lookUp("<" + title, title, false);
+    }
+
+    private List<String> lookUp(String id, String title, boolean outgoing) {
+        boolean[] fetched = new boolean[1];
+        Links links = buffer.get(id, key -> {
+            fetched[0] = true;
+            return new Links(key, List.copyOf(outgoing ? source.linksFrom(title) : source.linksTo(title)));
+        });
+        if (outgoing) {
+            (fetched[0] ? forwardMisses : forwardHits).increment();
+        } else {
+            (fetched[0] ? backwardMisses : backwardHits).increment();
+        }
+        return links.titles;
+    }
+
+    /**
+     * @return where links that are not cached are fetched.
+     */
+    LinkProvider getSource() {
+        return source;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getTimeout() {
+        return buffer.getTimeout();
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param outgoing true for lookups of the links on pages, false for lookups of the links to pages.
+     * @return the fraction of the lookups in that direction that did not fetch the links, or 1 if there were none.
+     */
+    double hitRate(boolean outgoing) {
+        long hits = outgoing ? forwardHits.sum() : backwardHits.sum();
+        long misses = outgoing ? forwardMisses.sum() : backwardMisses.sum();
+        return hits + misses == 0 ? 1.0 : (double) hits / (hits + misses);
+    }
+}
@@ -0,0 +1,479 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A snapshot of the links between pages, held in compressed sparse rows so that shortestPath()
+ * can be answered without fetching anything. Pages are numbered in the order of their titles, so
+ * comparing numbers compares titles. The links on each page are one sorted run of an int array,
+ * found through an array of offsets, and the links to each page likewise. A search is a
+ * bidirectional breadth-first search over the numbers, marking the pages it reaches in bitsets.
+ * Titles are kept as one run of UTF-8 bytes, found through another array of offsets. A graph
+ * saved by LinkGraphIngest is mapped from its file rather than read, so opening it takes
+ * milliseconds and processes using the same file share its pages in the OS page cache.
+ *
+ * The file is big-endian: the int MAGIC, the int VERSION, the number of pages, the number of links
+ * and the number of bytes of titles, followed by the title offsets, the title bytes padded to a
+ * multiple of 4, the forward offsets, the forward links, the backward offsets and the backward links.
+ */
+final class LinkGraph implements LinkProvider {
+
+    /* "WMLG", which starts every graph file */
+    static final int MAGIC = 0x574D4C47;
+
+    /* the version of the file format, changed whenever the format is */
+    static final int VERSION = 1;
+
+    /* the bytes of the header of a graph file */
+    static final int HEADER = 20;
+
+    private final int pageCount;
+    private final IntArray titleOffsets;
+    private final ByteBuffer titleBytes;
+    private final IntArray forwardOffsets;
+    private final IntArray forwardLinks;
+    private final IntArray backwardOffsets;
+    private final IntArray backwardLinks;
+
+    /* Representation Invariant */
+    // titleOffsets has length pageCount + 1, never decreases, and ends at most at titleBytes.limit()
+    // titles, the UTF-8 strings titleBytes[titleOffsets[p]..titleOffsets[p + 1]), are sorted without duplicates
+    // forwardOffsets and backwardOffsets have length pageCount + 1, start at 0, never decrease, and end at
+    //   forwardLinks.length() and backwardLinks.length()
+    // forwardLinks[forwardOffsets[p]..forwardOffsets[p + 1]) is strictly increasing for every page p, and likewise
+    //   for backwardLinks
+    // q is in the forward run of p exactly when p is in the backward run of q
+
+    /* Abstraction Function */
+    // A LinkGraph represents the pages titles[0..pageCount), where the page titles[p] links to the pages
+    //   titles[q] for q in forwardLinks[forwardOffsets[p]..forwardOffsets[p + 1]).
+
+    private LinkGraph(int pageCount, IntArray titleOffsets, ByteBuffer titleBytes, IntArray forwardOffsets,
+                      IntArray forwardLinks, IntArray backwardOffsets, IntArray backwardLinks) {
+        this.pageCount = pageCount;
+        this.titleOffsets = titleOffsets;
+        this.titleBytes = titleBytes;
+        this.forwardOffsets = forwardOffsets;
+        this.forwardLinks = forwardLinks;
+        this.backwardOffsets = backwardOffsets;
+        this.backwardLinks = backwardLinks;
+    }
+
+    /**
+     * @param file a file.
+     * @return true if the file starts as a graph file does.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isGraphFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(4);
+            while (start.hasRemaining() && channel.read(start) >= 0) {
+                // read until the magic number is in or the file ends
+            }
+            return !start.hasRemaining() && start.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Map a graph file written by LinkGraphIngest. The file must not change while the graph is used.
+     *
+     * @param file the graph file.
+     * @return the graph in the file.
+     * @throws IOException if the file cannot be read or mapped, or is not a graph file of this version.
+     */
+    static LinkGraph open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a link graph file");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(file + " is a version " + header.getInt(4) + " link graph file, not version "
+                        + VERSION);
+            }
+            int pages = header.getInt(8);
+            int links = header.getInt(12);
+            int bytes = header.getInt(16);
+            long paddedBytes = (bytes + 3L) & ~3L;
+
+            // a mapping stays valid after its channel is closed
+            long position = HEADER;
+            IntArray titleOffsets = IntArray.map(channel, position, pages + 1);
+            position += 4L * (pages + 1);
+            ByteBuffer titleBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+            position += paddedBytes;
+            IntArray forwardOffsets = IntArray.map(channel, position, pages + 1);
+            position += 4L * (pages + 1);
+            IntArray forwardLinks = IntArray.map(channel, position, links);
+            position += 4L * links;
+            IntArray backwardOffsets = IntArray.map(channel, position, pages + 1);
+            position += 4L * (pages + 1);
+            IntArray backwardLinks = IntArray.map(channel, position, links);
+            position += 4L * links;
+            if (position != channel.size()) {
+                throw new IOException(file + " is " + channel.size() + " bytes, not " + position);
+            }
+            return new LinkGraph(pages, titleOffsets, titleBytes, forwardOffsets, forwardLinks, backwardOffsets,
+                    backwardLinks);
+        }
+    }
+
+    /**
+     * Read a graph from a file listing one link per line, as the title of the page the link is on, a tab, and
+     * the title of the page it links to. Blank lines and lines starting with # are skipped.
+     *
+     * @param edgeList the file to read, in UTF-8.
+     * @return the pages and links listed in the file.
+     * @throws IOException if the file cannot be read, or a line is not a link.
+     */
+    static LinkGraph load(Path edgeList) throws IOException {
+        Map<String, Integer> numbers = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] sources = new int[1024];
+        int[] targets = new int[1024];
+        int edges = 0;
+        try (BufferedReader reader = Files.newBufferedReader(edgeList, StandardCharsets.UTF_8)) {
+            String line;
+            for (int lineNumber = 1; (line = reader.readLine()) != null; lineNumber++) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    throw new IOException(edgeList + ":" + lineNumber + ": not a tab-separated link");
+                }
+                if (edges == sources.length) {
+                    sources = Arrays.copyOf(sources, edges * 2);
+                    targets = Arrays.copyOf(targets, edges * 2);
+                }
+                sources[edges] = number(line.substring(0, tab), numbers, names);
+                targets[edges] = number(line.substring(tab + 1), numbers, names);
+                edges++;
+            }
+        }
+
+        // number the pages again, in the order of their titles
+        String[] titles = names.toArray(new String[0]);
+        Arrays.sort(titles);
+        int[] renumbered = new int[titles.length];
+        for (int i = 0; i < renumbered.length; i++) {
+            renumbered[i] = Arrays.binarySearch(titles, names.get(i));
+        }
+        for (int e = 0; e < edges; e++) {
+            sources[e] = renumbered[sources[e]];
+            targets[e] = renumbered[targets[e]];
+        }
+        return of(titles, sources, targets, edges);
+    }
+
+    private static int number(String title, Map<String, Integer> numbers, List<String> names) {
+        Integer number = numbers.get(title);
+        if (number == null) {
+            number = names.size();
+            numbers.put(title, number);
+            names.add(title);
+        }
+        return number;
+    }
+
+    /**
+     * Creates a graph of the given pages and links.
+     *
+     * @param titles the titles of the pages, sorted and without duplicates.
+     * @param sources the numbers, as indices into titles, of the pages the links are on; only the first edges
+     *                are used, and they may be reordered.
+     * @param targets the numbers of the pages the links go to, matching sources.
+     * @param edges the number of links, which may include duplicates.
+     */
+    static LinkGraph of(String[] titles, int[] sources, int[] targets, int edges) {
+        int pages = titles.length;
+        int[] titleOffsets = new int[pages + 1];
+        byte[][] encoded = new byte[pages][];
+        for (int p = 0; p < pages; p++) {
+            encoded[p] = titles[p].getBytes(StandardCharsets.UTF_8);
+            titleOffsets[p + 1] = titleOffsets[p] + encoded[p].length;
+        }
+        byte[] titleBytes = new byte[titleOffsets[pages]];
+        for (int p = 0; p < pages; p++) {
+            System.arraycopy(encoded[p], 0, titleBytes, titleOffsets[p], encoded[p].length);
+        }
+
+        int[] forwardOffsets = new int[pages + 1];
+        for (int e = 0; e < edges; e++) {
+            forwardOffsets[sources[e] + 1]++;
+        }
+        for (int p = 0; p < pages; p++) {
+            forwardOffsets[p + 1] += forwardOffsets[p];
+        }
+        int[] links = new int[edges];
+        int[] next = Arrays.copyOf(forwardOffsets, pages);
+        for (int e = 0; e < edges; e++) {
+            links[next[sources[e]]++] = targets[e];
+        }
+        // sort each run and drop repeated links, moving the runs down over the room they free
+        int kept = 0;
+        for (int p = 0; p < pages; p++) {
+            int from = forwardOffsets[p];
+            int to = forwardOffsets[p + 1];
+            Arrays.sort(links, from, to);
+            forwardOffsets[p] = kept;
+            for (int i = from; i < to; i++) {
+                if (i == from || links[i] != links[i - 1]) {
+                    links[kept++] = links[i];
+                }
+            }
+        }
+        forwardOffsets[pages] = kept;
+        int[] forwardLinks = kept == edges ? links : Arrays.copyOf(links, kept);
+
+        // the links to each page, taken from the pages in order, so each run comes out sorted
+        int[] backwardOffsets = new int[pages + 1];
+        for (int link : forwardLinks) {
+            backwardOffsets[link + 1]++;
+        }
+        for (int p = 0; p < pages; p++) {
+            backwardOffsets[p + 1] += backwardOffsets[p];
+        }
+        int[] backwardLinks = new int[kept];
+        next = Arrays.copyOf(backwardOffsets, pages);
+        for (int p = 0; p < pages; p++) {
+            for (int i = forwardOffsets[p]; i < forwardOffsets[p + 1]; i++) {
+                backwardLinks[next[forwardLinks[i]]++] = p;
+            }
+        }
+        return new LinkGraph(pages, IntArray.of(titleOffsets), ByteBuffer.wrap(titleBytes),
+                IntArray.of(forwardOffsets), IntArray.of(forwardLinks), IntArray.of(backwardOffsets),
+                IntArray.of(backwardLinks));
+    }
+
+    /**
+     * @return the number of pages in the graph.
+     */
+    int pageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return the number of distinct links in the graph.
+     */
+    int linkCount() {
+        return forwardLinks.length();
+    }
+
+    /**
+     * @param page the number of a page, must be in [0, pageCount()).
+     * @return the title of the page.
+     */
+    String title(int page) {
+        int from = titleOffsets.get(page);
+        byte[] bytes = new byte[titleOffsets.get(page + 1) - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = titleBytes.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param title a title.
+     * @return the number of the page with the title, or a negative number if there is none.
+     */
+    int pageOf(String title) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = title(middle).compareTo(title);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public List<String> linksFrom(String title) {
+        return titlesOf(pageOf(title), forwardOffsets, forwardLinks);
+    }
+
+    @Override
+    public List<String> linksTo(String title) {
+        return titlesOf(pageOf(title), backwardOffsets, backwardLinks);
+    }
+
+    private List<String> titlesOf(int page, IntArray offsets, IntArray links) {
+        if (page < 0) {
+            return List.of();
+        }
+        List<String> linked = new ArrayList<>(offsets.get(page + 1) - offsets.get(page));
+        for (int i = offsets.get(page); i < offsets.get(page + 1); i++) {
+            linked.add(title(links.get(i)));
+        }
+        return linked;
+    }
+
+    /**
+     * Find the shortest path between two pages. If several paths are equally short, the one whose titles come
+     * first in lexicographic order, compared title by title, is found.
+     *
+     * @param from the title of the page the path starts at.
+     * @param to the title of the page the path ends at.
+     * @param deadline the System.nanoTime() after which to give up.
+     * @return the titles of the pages on the path, including from and to, or null if either page is not in the
+     * graph, there is no path, or the deadline passed.
+     */
+    List<String> shortestPath(String from, String to, long deadline) {
+        int start = pageOf(from);
+        int target = pageOf(to);
+        if (start < 0 || target < 0) {
+            return null;
+        }
+        if (start == target) {
+            return List.of(title(start));
+        }
+
+        long[] forwardSeen = new long[(pageCount + 63) >>> 6];
+        long[] backwardSeen = new long[forwardSeen.length];
+        mark(forwardSeen, start);
+        mark(backwardSeen, target);
+        List<int[]> forwardLevels = new ArrayList<>(List.of(new int[] {start}));
+        List<int[]> backwardLevels = new ArrayList<>(List.of(new int[] {target}));
+
+        while (true) {
+            int[] forwardFrontier = forwardLevels.get(forwardLevels.size() - 1);
+            int[] backwardFrontier = backwardLevels.get(backwardLevels.size() - 1);
+            if (forwardFrontier.length == 0 || backwardFrontier.length == 0 || System.nanoTime() - deadline > 0) {
+                return null;
+            }
+            int[] next;
+            long[] other;
+            if (forwardFrontier.length <= backwardFrontier.length) {
+                next = expand(forwardFrontier, forwardOffsets, forwardLinks, forwardSeen);
+                forwardLevels.add(next);
+                other = backwardSeen;
+            } else {
+                next = expand(backwardFrontier, backwardOffsets, backwardLinks, backwardSeen);
+                backwardLevels.add(next);
+                other = forwardSeen;
+            }
+            // as in BFS, the first pages both searches reach are all on the shortest paths
+            for (int page : next) {
+                if (marked(other, page)) {
+                    return smallestPath(forwardLevels, backwardLevels);
+                }
+            }
+        }
+    }
+
+    /* the pages one link beyond a frontier that were not reached before, marking them reached */
+    private static int[] expand(int[] frontier, IntArray offsets, IntArray links, long[] seen) {
+        int[] next = new int[Math.max(16, frontier.length)];
+        int size = 0;
+        for (int page : frontier) {
+            int end = offsets.get(page + 1);
+            for (int i = offsets.get(page); i < end; i++) {
+                int linked = links.get(i);
+                if (!marked(seen, linked)) {
+                    mark(seen, linked);
+                    if (size == next.length) {
+                        next = Arrays.copyOf(next, size * 2);
+                    }
+                    next[size++] = linked;
+                }
+            }
+        }
+        return Arrays.copyOf(next, size);
+    }
+
+    /**
+     * Read the lexicographically smallest shortest path off the levels of a search whose last levels meet.
+     *
+     * @param forwardLevels the pages at each distance from the start, the last of which meets the backward search.
+     * @param backwardLevels the pages at each distance to the target.
+     * @return the titles of the pages on the path.
+     */
+    private List<String> smallestPath(List<int[]> forwardLevels, List<int[]> backwardLevels) {
+        // sorted copies, to look pages up by binary search
+        List<int[]> backward = new ArrayList<>(backwardLevels.size());
+        for (int[] level : backwardLevels) {
+            int[] sorted = level.clone();
+            Arrays.sort(sorted);
+            backward.add(sorted);
+        }
+        int forwardDepth = forwardLevels.size() - 1;
+        int backwardDepth = backward.size() - 1;
+
+        // the pages at each distance from the start that are on some shortest path, from the meeting pages back
+        int[][] onPath = new int[forwardDepth + 1][];
+        onPath[forwardDepth] = keep(forwardLevels.get(forwardDepth), backward.get(backwardDepth), false);
+        for (int depth = forwardDepth - 1; depth >= 0; depth--) {
+            onPath[depth] = keep(forwardLevels.get(depth), onPath[depth + 1], true);
+        }
+
+        List<String> path = new ArrayList<>(forwardDepth + backwardDepth + 1);
+        int page = forwardLevels.get(0)[0];
+        path.add(title(page));
+        for (int depth = 1; depth <= forwardDepth; depth++) {
+            page = firstLinkIn(page, onPath[depth]);
+            path.add(title(page));
+        }
+        for (int depth = backwardDepth - 1; depth >= 0; depth--) {
+            page = firstLinkIn(page, backward.get(depth));
+            path.add(title(page));
+        }
+        return path;
+    }
+
+    /**
+     * @param pages some pages.
+     * @param sorted a sorted array of pages.
+     * @param linking true to keep the pages that link to one in sorted, false to keep those in sorted.
+     * @return the pages kept, sorted.
+     */
+    private int[] keep(int[] pages, int[] sorted, boolean linking) {
+        int[] kept = new int[pages.length];
+        int size = 0;
+        for (int page : pages) {
+            if (linking ? firstLinkIn(page, sorted) >= 0 : Arrays.binarySearch(sorted, page) >= 0) {
+                kept[size++] = page;
+            }
+        }
+        kept = Arrays.copyOf(kept, size);
+        Arrays.sort(kept);
+        return kept;
+    }
+
+    /* the smallest page that page links to among the sorted pages, or -1 if there is none */
+    private int firstLinkIn(int page, int[] sorted) {
+        int end = forwardOffsets.get(page + 1);
+        for (int i = forwardOffsets.get(page); i < end; i++) {
+            int linked = forwardLinks.get(i);
+            if (Arrays.binarySearch(sorted, linked) >= 0) {
+                return linked;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean marked(long[] bits, int page) {
+        return (bits[page >>> 6] & (1L << page)) != 0;
+    }
+
+    private static void mark(long[] bits, int page) {
+        bits[page >>> 6] |= 1L << page;
+    }
+}
@@ -0,0 +1,487 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Builds a graph file, which WikiMediator.setLinkGraph() maps, from the page and pagelinks dumps of a
+ * wiki. The dumps are streamed, and the links are sorted in chunks of a bounded size on a pool of
+ * threads while the dumps are read, then merged from disk; so a dump of any number of links fits in
+ * a fixed amount of memory, apart from the titles of the pages, which are kept. Only articles, the
+ * pages in namespace 0, and the links between them are kept.
+ *
+ * Run with: gradle ingestLinks --args='page.sql.gz pagelinks.sql.gz out.graph [linktarget.sql.gz]
+ * [--chunk links] [--threads n] [--temp directory]'. The linktarget dump is needed for pagelinks dumps
+ * that name the pages linked to by link target rather than by title, as Wikimedia's have since 2024.
+ */
+public final class LinkGraphIngest {
+
+    /* the links in each sorted chunk; 16 Mi links take 128 MiB */
+    static final int DEFAULT_CHUNK = 16 << 20;
+
+    private static final int BUFFER = 1 << 20;
+
+    private static final String USAGE = "usage: LinkGraphIngest page.sql.gz pagelinks.sql.gz out.graph "
+            + "[linktarget.sql.gz] [--chunk links] [--threads n] [--temp directory]";
+
+    private final Path temp;
+    private final int chunkSize;
+    private final ExecutorService workers;
+    private final Semaphore sorting;
+    private final List<Future<?>> sorted = new ArrayList<>();
+    private final List<Path> forwardRuns = new ArrayList<>();
+    private final List<Path> backwardRuns = new ArrayList<>();
+
+    private String[] titles;
+    private long[] pages;
+    private long[] targets;
+    private long[] chunk;
+    private int size;
+
+    /* Representation Invariant */
+    // titles is sorted and has no duplicates
+    // pages is sorted, and holds (page id << 32 | p) for each article, titled titles[p]
+    // targets is null, or sorted and holds (link target id << 32 | p) for each link target titled titles[p]
+    // chunk.length == chunkSize, and size is in [0, chunkSize)
+    // forwardRuns and backwardRuns each hold a file for each chunk in sorted, written once it is done
+
+    /* Abstraction Function */
+    // An ingest that has read the links (p, q), each as p << 32 | q, in chunk[0..size) and in the chunks
+    //   written to forwardRuns; backwardRuns holds the same links as q << 32 | p.
+
+    private LinkGraphIngest(Path temp, int chunkSize, int threads) {
+        this.temp = temp;
+        this.chunkSize = chunkSize;
+        workers = Executors.newFixedThreadPool(threads);
+        sorting = new Semaphore(threads);
+        chunk = new long[chunkSize];
+    }
+
+    /**
+     * Build a graph file from the dumps of a wiki.
+     *
+     * @param args the page dump, the pagelinks dump, the graph file to write, and optionally the linktarget
+     *             dump, then any of --chunk with the links to sort at a time, --threads with the chunks to
+     *             sort at once, and --temp with the directory for sorted chunks.
+     * @throws IOException if a dump cannot be read or is malformed, or the graph file cannot be written.
+     * @throws InterruptedException if interrupted.
+     * @throws IllegalArgumentException if the arguments are not as above.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        int chunk = DEFAULT_CHUNK;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path temp = null;
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                files.add(Paths.get(args[i]));
+            } else if (i + 1 == args.length) {
+                throw new IllegalArgumentException(USAGE);
+            } else if (args[i].equals("--chunk")) {
+                chunk = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--temp")) {
+                temp = Paths.get(args[++i]);
+            } else {
+                throw new IllegalArgumentException(USAGE);
+            }
+        }
+        if (files.size() < 3 || files.size() > 4) {
+            throw new IllegalArgumentException(USAGE);
+        }
+
+        long start = System.nanoTime();
+        ingest(files.get(0), files.get(1), files.size() == 4 ? files.get(3) : null, files.get(2), chunk,
+                threads, temp);
+        LinkGraph graph = LinkGraph.open(files.get(2));
+        System.out.printf("%d pages and %d links written to %s in %d s%n", graph.pageCount(), graph.linkCount(),
+                files.get(2), TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+    }
+
+    /**
+     * Build a graph file from the dumps of a wiki.
+     *
+     * @param pageDump the page dump.
+     * @param pagelinksDump the pagelinks dump.
+     * @param linktargetDump the linktarget dump, or null if the pagelinks dump names pages by title.
+     * @param out the graph file to write, which is replaced.
+     * @param chunkSize the links to sort at a time, must be > 0.
+     * @param threads the chunks to sort at once, must be > 0.
+     * @param temp the directory for sorted chunks, or null for a new directory beside out.
+     * @throws IOException if a dump cannot be read or is malformed, or the graph file cannot be written.
+     * @throws InterruptedException if interrupted.
+     */
+    static void ingest(Path pageDump, Path pagelinksDump, Path linktargetDump, Path out, int chunkSize,
+                       int threads, Path temp) throws IOException, InterruptedException {
+        if (chunkSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("chunk size and threads must be positive");
+        }
+        Path parent = out.toAbsolutePath().getParent();
+        Path directory = temp != null ? temp : Files.createTempDirectory(parent, "ingest");
+        LinkGraphIngest ingest = new LinkGraphIngest(directory, chunkSize, threads);
+        try {
+            ingest.readPages(pageDump);
+            if (linktargetDump != null) {
+                ingest.readTargets(linktargetDump);
+            }
+            ingest.readLinks(pagelinksDump);
+            ingest.write(out);
+        } finally {
+            ingest.workers.shutdownNow();
+            ingest.workers.awaitTermination(1, TimeUnit.MINUTES);
+            for (Path run : ingest.forwardRuns) {
+                Files.deleteIfExists(run);
+            }
+            for (Path run : ingest.backwardRuns) {
+                Files.deleteIfExists(run);
+            }
+            if (temp == null) {
+                Files.deleteIfExists(directory);
+            }
+        }
+    }
+
+    /**
+     * Number the articles in title order.
+     */
+    private void readPages(Path pageDump) throws IOException {
+        // pages first holds (page id << 32 | i) for the article titled names[i]
+        List<String> names = new ArrayList<>();
+        pages = new long[1024];
+        SqlDumpReader.read(pageDump, "page", row -> {
+            if (row.length < 3) {
+                throw new IOException("a page row has " + row.length + " columns, not at least 3");
+            }
+            if (number(row[1]) == 0) {
+                if (names.size() == pages.length) {
+                    pages = Arrays.copyOf(pages, pages.length * 2);
+                }
+                pages[names.size()] = number(row[0]) << 32 | names.size();
+                names.add(title(row[2]));
+            }
+        });
+
+        titles = names.toArray(new String[0]);
+        Arrays.parallelSort(titles);
+        int distinct = 0;
+        for (int p = 0; p < titles.length; p++) {
+            if (distinct == 0 || !titles[p].equals(titles[distinct - 1])) {
+                titles[distinct++] = titles[p];
+            }
+        }
+        titles = Arrays.copyOf(titles, distinct);
+        pages = Arrays.copyOf(pages, names.size());
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = pages[i] & 0xFFFFFFFF_00000000L | Arrays.binarySearch(titles, names.get(i));
+        }
+        Arrays.parallelSort(pages);
+    }
+
+    /**
+     * Number the link targets that are articles.
+     */
+    private void readTargets(Path linktargetDump) throws IOException {
+        // the number of targets found so far, in an array so that the handler can count them
+        int[] count = new int[1];
+        targets = new long[1024];
+        SqlDumpReader.read(linktargetDump, "linktarget", row -> {
+            if (row.length < 3) {
+                throw new IOException("a linktarget row has " + row.length + " columns, not at least 3");
+            }
+            int page = number(row[1]) == 0 ? Arrays.binarySearch(titles, title(row[2])) : -1;
+            if (page >= 0) {
+                if (count[0] == targets.length) {
+                    targets = Arrays.copyOf(targets, targets.length * 2);
+                }
+                targets[count[0]++] = number(row[0]) << 32 | page;
+            }
+        });
+        targets = Arrays.copyOf(targets, count[0]);
+        Arrays.parallelSort(targets);
+    }
+
+    /**
+     * Read the links between articles, sorting each chunk of them on the pool as it fills.
+     */
+    private void readLinks(Path pagelinksDump) throws IOException, InterruptedException {
+        SqlDumpReader.read(pagelinksDump, "pagelinks", row -> {
+            int page;
+            int linked;
+            if (row.length == 3) {
+                // (pl_from, pl_from_namespace, pl_target_id)
+                if (targets == null) {
+                    throw new IOException("the pagelinks dump names link targets, so the linktarget dump is needed");
+                }
+                page = find(pages, number(row[0]));
+                linked = find(targets, number(row[2]));
+            } else if (row.length >= 4) {
+                // (pl_from, pl_namespace, pl_title, pl_from_namespace)
+                page = find(pages, number(row[0]));
+                linked = number(row[1]) == 0 ? Arrays.binarySearch(titles, title(row[2])) : -1;
+            } else {
+                throw new IOException("a pagelinks row has " + row.length + " columns, not 3 or 4");
+            }
+            if (page >= 0 && linked >= 0) {
+                chunk[size++] = (long) page << 32 | linked;
+                if (size == chunkSize) {
+                    sortChunk();
+                }
+            }
+        });
+        if (size > 0) {
+            sortChunk();
+        }
+        for (Future<?> sort : sorted) {
+            finish(sort);
+        }
+    }
+
+    /**
+     * Sort the links in chunk[0..size) on the pool, once fewer than threads chunks are being sorted,
+     * and start a new chunk.
+     */
+    private void sortChunk() throws IOException {
+        long[] links = chunk;
+        int count = size;
+        Path forward = temp.resolve("forward-" + forwardRuns.size() + ".run");
+        Path backward = temp.resolve("backward-" + backwardRuns.size() + ".run");
+        forwardRuns.add(forward);
+        backwardRuns.add(backward);
+        try {
+            sorting.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        sorted.add(workers.submit(() -> {
+            try {
+                Arrays.sort(links, 0, count);
+                writeRun(links, count, forward);
+                for (int i = 0; i < count; i++) {
+                    links[i] = links[i] << 32 | links[i] >>> 32;
+                }
+                Arrays.sort(links, 0, count);
+                writeRun(links, count, backward);
+                return null;
+            } finally {
+                sorting.release();
+            }
+        }));
+        // the pool holds at most threads chunks, so with this one memory holds threads + 1
+        chunk = new long[chunkSize];
+        size = 0;
+    }
+
+    private static void writeRun(long[] links, int count, Path run) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run),
+                BUFFER))) {
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || links[i] != links[i - 1]) {
+                    out.writeLong(links[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the sorted chunks of each direction, both at once, and write the graph file.
+     */
+    private void write(Path out) throws IOException, InterruptedException {
+        Path forwardLinks = temp.resolve("forward.links");
+        Path backwardLinks = temp.resolve("backward.links");
+        forwardRuns.add(forwardLinks);
+        backwardRuns.add(backwardLinks);
+        Future<int[]> forward = workers.submit(() -> merge(forwardRuns.subList(0, forwardRuns.size() - 1),
+                forwardLinks));
+        Future<int[]> backward = workers.submit(() -> merge(backwardRuns.subList(0, backwardRuns.size() - 1),
+                backwardLinks));
+        int[] forwardOffsets = finish(forward);
+        int[] backwardOffsets = finish(backward);
+
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+                    BUFFER));
+            int[] titleOffsets = new int[titles.length + 1];
+            for (int p = 0; p < titles.length; p++) {
+                long end = (long) titleOffsets[p] + titles[p].getBytes(StandardCharsets.UTF_8).length;
+                if (end > Integer.MAX_VALUE - 3) {
+                    throw new IOException("the titles take more than 2 GiB");
+                }
+                titleOffsets[p + 1] = (int) end;
+            }
+            data.writeInt(LinkGraph.MAGIC);
+            data.writeInt(LinkGraph.VERSION);
+            data.writeInt(titles.length);
+            data.writeInt(forwardOffsets[titles.length]);
+            data.writeInt(titleOffsets[titles.length]);
+            writeInts(data, titleOffsets);
+            for (String title : titles) {
+                data.write(title.getBytes(StandardCharsets.UTF_8));
+            }
+            for (int pad = titleOffsets[titles.length]; pad % 4 != 0; pad++) {
+                data.write(0);
+            }
+            writeInts(data, forwardOffsets);
+            append(data, channel, forwardLinks);
+            writeInts(data, backwardOffsets);
+            append(data, channel, backwardLinks);
+            data.flush();
+        }
+    }
+
+    /**
+     * Merge sorted runs of links, dropping duplicates, into the targets of the links.
+     *
+     * @param runs files of links p << 32 | q, each sorted.
+     * @param links receives q of each distinct link, in order.
+     * @return offsets, where the links of each page p are in [offsets[p], offsets[p + 1]).
+     * @throws IOException if a run cannot be read, links cannot be written, or there are 2^31 links or more.
+     */
+    private int[] merge(List<Path> runs, Path links) throws IOException {
+        int[] offsets = new int[titles.length + 1];
+        PriorityQueue<Run> heads = new PriorityQueue<>(Math.max(1, runs.size()),
+                Comparator.comparingLong(run -> run.head));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(links),
+                BUFFER))) {
+            for (Path path : runs) {
+                Run run = new Run(path);
+                if (run.next()) {
+                    heads.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            long last = -1;
+            long count = 0;
+            while (!heads.isEmpty()) {
+                Run run = heads.poll();
+                if (run.head != last) {
+                    last = run.head;
+                    if (++count > Integer.MAX_VALUE) {
+                        throw new IOException("there are 2^31 links or more");
+                    }
+                    offsets[(int) (last >>> 32) + 1]++;
+                    out.writeInt((int) last);
+                }
+                if (run.next()) {
+                    heads.add(run);
+                } else {
+                    run.close();
+                }
+            }
+        } finally {
+            for (Run run : heads) {
+                run.close();
+            }
+        }
+        for (int p = 0; p < titles.length; p++) {
+            offsets[p + 1] += offsets[p];
+        }
+        return offsets;
+    }
+
+    /**
+     * A sorted run of links, read one at a time.
+     */
+    private static final class Run implements Closeable {
+        private final DataInputStream in;
+        private long remaining;
+        private long head;
+
+        Run(Path path) throws IOException {
+            remaining = Files.size(path) / Long.BYTES;
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER / 16));
+        }
+
+        /**
+         * @return true if head is now the next link, false if the run has ended.
+         */
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            head = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeInts(DataOutputStream data, int[] ints) throws IOException {
+        for (int i : ints) {
+            data.writeInt(i);
+        }
+    }
+
+    /**
+     * Copy a file to the end of the graph file, without passing it through the heap.
+     */
+    private static void append(DataOutputStream data, FileChannel channel, Path file) throws IOException {
+        data.flush();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < in.size()) {
+                position += in.transferTo(position, in.size() - position, channel);
+            }
+        }
+    }
+
+    /**
+     * @param sorted (id << 32 | p) for some ids, sorted.
+     * @param id an id.
+     * @return p for the id, or -1 if it has none.
+     */
+    private static int find(long[] sorted, long id) {
+        int at = Arrays.binarySearch(sorted, id << 32);
+        if (at < 0) {
+            at = -at - 1;
+        }
+        return at < sorted.length && sorted[at] >>> 32 == id ? (int) sorted[at] : -1;
+    }
+
+    private static long number(String value) throws IOException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("expected a number, not " + value);
+        }
+    }
+
+    /**
+     * @param title a title as the dumps write it.
+     * @return the title as the wiki's API returns it.
+     */
+    private static String title(String title) {
+        return title.replace('_', ' ');
+    }
+
+    private static <T> T finish(Future<T> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.List;
+
+/**
+ * A source of the links between pages that shortestPath() searches, such as Wikipedia.
+ * Implementations must be safe to call from several threads at once.
+ */
+public interface LinkProvider {
+
+    /**
+     * @param title the title of a page.
+     * @return the titles of the pages that the page links to, in any order, or an empty List if there are none or
+     * the page does not exist.
+     */
+    List<String> linksFrom(String title);
+
+    /**
+     * @param title the title of a page.
+     * @return the titles of the pages that link to the page, in any order, or an empty List if there are none or
+     * the page does not exist.
+     */
+    List<String> linksTo(String title);
+}
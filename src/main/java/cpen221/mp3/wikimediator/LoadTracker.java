@@ -0,0 +1,145 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.*;
+
+/**
+ * Records the time of every request made to a WikiMediator, counted per second, and finds the
+ * largest number of requests made in any time window of a given length. The peak for each recently
+ * asked window length is remembered, so asking again only looks at the windows that requests made
+ * since then could have changed. Times older than the retention policy keeps are dropped, but the
+ * rest stay counted to the second: there is only one tracker, so this keeps its size bounded by the
+ * maximum age, and peaks of short windows stay exact.
+ */
+class LoadTracker {
+
+    /* the number of window lengths whose peaks are remembered */
+    private static final int REMEMBERED = 16;
+
+    private final TimeBuckets perSecond;
+    private RetentionPolicy retention = RetentionPolicy.UNBOUNDED;
+    private final Map<Integer, Peak> peaks = new LinkedHashMap<>(REMEMBERED, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Peak> eldest) {
+            return size() > REMEMBERED;
+        }
+    };
+
+    /* Representation Invariant */
+    // for each window length w mapped to a Peak p in peaks, p.peak is the largest number of requests in any
+    //   window [s, s + w) with s the time of a request and s < p.settledBefore
+    // all fields are only accessed while holding the lock of this
+
+    /* Abstraction Function */
+    // A LoadTracker represents the times, in seconds, at which requests were made, as kept by perSecond.
+
+    /**
+     * Creates a tracker that starts out with the given request times.
+     *
+     * @param times the request times to start with, in seconds.
+     */
+    LoadTracker(List<Long> times) {
+        this();
+        for (long time : times) {
+            record(time);
+        }
+    }
+
+    /**
+     * Creates a tracker that starts out with a copy of the given request times.
+     *
+     * @param history the request times to start with.
+     */
+    LoadTracker(TimeBuckets history) {
+        perSecond = history.copy();
+    }
+
+    /**
+     * Creates a tracker that has seen no requests.
+     */
+    LoadTracker() {
+        perSecond = new TimeBuckets();
+    }
+
+    /**
+     * Record a request.
+     *
+     * @param time the time of the request, in seconds.
+     */
+    synchronized void record(long time) {
+        if (time < perSecond.latest()) {
+            // a request recorded after a later one may fall in a window whose peak was taken as final
+            peaks.values().removeIf(p -> time < p.settledBefore - 1 + p.window);
+        }
+        perSecond.add(time);
+        if (perSecond.retain(retention)) {
+            // peaks of windows over dropped buckets no longer count
+            peaks.clear();
+        }
+    }
+
+    /**
+     * Drop request times older than the given policy keeps from now on.
+     *
+     * @param retention the retention policy; only its maximum age applies.
+     */
+    synchronized void setRetention(RetentionPolicy retention) {
+        long maxAge = retention.getMaxAge();
+        this.retention = new RetentionPolicy(maxAge, maxAge, maxAge);
+    }
+
+    /**
+     * @param timeWindowInSeconds a length of time in seconds, must be >= 0.
+     * @return the largest number of requests made in any time window [s, s + timeWindowInSeconds) that starts
+     * at the time s of a request.
+     */
+    synchronized int peak(int timeWindowInSeconds) {
+        if (timeWindowInSeconds <= 0 || perSecond.size() == 0) {
+            return 0;
+        }
+
+        Peak p = peaks.computeIfAbsent(timeWindowInSeconds, w -> new Peak(w, Long.MIN_VALUE));
+        // windows that end by the latest request cannot gain requests recorded in order from now on
+        long settle = perSecond.latest() - timeWindowInSeconds + 1;
+
+        long peak = p.peak;
+        long settledPeak = p.peak;
+        int first = perSecond.indexOf(p.settledBefore);
+        int end = first;
+        // sweep the window start over the unsettled buckets, moving the window end along with it
+        for (int start = first; start < perSecond.size(); start++) {
+            long from = perSecond.time(start);
+            while (end < perSecond.size() && perSecond.time(end) < from + timeWindowInSeconds) {
+                end++;
+            }
+            long count = perSecond.totalBefore(end) - perSecond.totalBefore(start);
+            peak = Math.max(peak, count);
+            if (from < settle) {
+                settledPeak = Math.max(settledPeak, count);
+            }
+        }
+        p.peak = settledPeak;
+        p.settledBefore = Math.max(p.settledBefore, settle);
+        return (int) peak;
+    }
+
+    /**
+     * @return a copy of the request times kept.
+     */
+    synchronized TimeBuckets history() {
+        return perSecond.copy();
+    }
+
+    /**
+     * The peak of one window length over the windows that can no longer change.
+     */
+    private static final class Peak {
+        final int window;
+        long settledBefore;
+        long peak;
+
+        Peak(int window, long settledBefore) {
+            this.window = window;
+            this.settledBefore = settledBefore;
+        }
+    }
+}
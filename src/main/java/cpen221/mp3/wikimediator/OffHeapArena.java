@@ -0,0 +1,184 @@
+package cpen221.mp3.wikimediator;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class OffHeapArena {
+
+    /* the default slab size is 1 MiB */
+    public static final int DSLAB = 1 << 20;
+
+    /* the smallest block handed out is 64 bytes */
+    private static final int MIN_SHIFT = 6;
+
+    private final int slabShift;
+    private final int slabSize;
+
+    /* slots may be null once a dedicated slab for a large block has been freed */
+    private volatile ByteBuffer[] slabs = new ByteBuffer[4];
+    private int slabCount;
+    private int[] freeSlabSlots = new int[4];
+    private int freeSlabSlotCount;
+
+    /* free blocks per size class, as handles */
+    private final long[][] freeBlocks;
+    private final int[] freeBlockCounts;
+
+    /* the slab small blocks are currently carved from, and the first unused byte in it */
+    private int currentSlab = -1;
+    private int currentOffset;
+
+    private long allocatedBytes;
+    private long reservedBytes;
+
+    /* Representation Invariant */
+    // slabSize == 1 << slabShift
+    // every handle in freeBlocks[c] points into a slab of size slabSize at an offset that is a multiple of 1 << c + MIN_SHIFT
+    // a block larger than slabSize lives alone, at offset 0, in a slab of exactly its size class
+    // allocatedBytes is the total size, rounded to size classes, of the blocks handed out and not yet freed
+
+    /* Abstraction Function */
+    // An OffHeapArena represents a pool of direct (off-heap) memory from which variable-sized blocks can be
+    // allocated and freed. A block is identified by a handle, (slab index << 32) | offset. Memory is taken from the
+    // operating system one slab at a time and is only returned when a dedicated large-block slab is freed.
+
+    /**
+     * Creates an arena that reserves direct memory in slabs of the given size.
+     *
+     * @param slabSize the size of each slab in bytes, must be a power of two >= 64.
+     */
+    public OffHeapArena(int slabSize) {
+        this.slabShift = Integer.numberOfTrailingZeros(slabSize);
+        this.slabSize = slabSize;
+
+        int classes = slabShift - MIN_SHIFT + 1;
+        freeBlocks = new long[classes][];
+        freeBlockCounts = new int[classes];
+        for (int c = 0; c < classes; c++) {
+            freeBlocks[c] = new long[8];
+        }
+    }
+
+    /**
+     * Creates an arena with the default slab size of 1 MiB.
+     */
+    public OffHeapArena() {
+        this(DSLAB);
+    }
+
+    private static int sizeClass(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+
+    /**
+     * Copies the given bytes into a newly allocated block.
+     *
+     * @param data the bytes to store.
+     * @param length the number of bytes of data to store, must be > 0.
+     * @return the handle of the block holding the bytes.
+     */
+    public long store(byte[] data, int length) {
+        long handle = allocate(length);
+        ByteBuffer slab = slabs[(int) (handle >>> 32)].duplicate();
+        slab.position((int) handle);
+        slab.put(data, 0, length);
+        return handle;
+    }
+
+    /**
+     * Copies the contents of a block into a byte array.
+     *
+     * @param handle a handle returned by store() that has not been freed.
+     * @param dst the array to copy into.
+     * @param length the number of bytes to copy, at most the length the block was stored with.
+     */
+    public void load(long handle, byte[] dst, int length) {
+        ByteBuffer slab = slabs[(int) (handle >>> 32)].duplicate();
+        slab.position((int) handle);
+        slab.get(dst, 0, length);
+    }
+
+    private synchronized long allocate(int length) {
+        int c = sizeClass(length);
+        int blockSize = 1 << (c + MIN_SHIFT);
+        allocatedBytes += blockSize;
+
+        if (blockSize > slabSize) {
+            return (long) addSlab(blockSize) << 32;
+        }
+
+        if (freeBlockCounts[c] > 0) {
+            return freeBlocks[c][--freeBlockCounts[c]];
+        }
+
+        // blocks are powers of two no larger than the slab, so the tail left over is never split across slabs
+        if (currentSlab == -1 || currentOffset + blockSize > slabSize) {
+            currentSlab = addSlab(slabSize);
+            currentOffset = 0;
+        }
+        long handle = ((long) currentSlab << 32) | currentOffset;
+        currentOffset += blockSize;
+        return handle;
+    }
+
+    private int addSlab(int size) {
+        int slot;
+        if (freeSlabSlotCount > 0) {
+            slot = freeSlabSlots[--freeSlabSlotCount];
+        } else {
+            slot = slabCount++;
+            if (slot == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabs.length * 2);
+            }
+        }
+
+        ByteBuffer[] updated = slabs;
+        updated[slot] = ByteBuffer.allocateDirect(size);
+        slabs = updated;
+        reservedBytes += size;
+        return slot;
+    }
+
+    /**
+     * Returns a block to the arena. The handle must not be used afterwards.
+     *
+     * @param handle a handle returned by store() that has not been freed.
+     * @param length the length the block was stored with.
+     */
+    public synchronized void free(long handle, int length) {
+        int c = sizeClass(length);
+        int blockSize = 1 << (c + MIN_SHIFT);
+        allocatedBytes -= blockSize;
+
+        if (blockSize > slabSize) {
+            int slot = (int) (handle >>> 32);
+            slabs[slot] = null;
+            reservedBytes -= blockSize;
+            if (freeSlabSlotCount == freeSlabSlots.length) {
+                freeSlabSlots = Arrays.copyOf(freeSlabSlots, freeSlabSlotCount * 2);
+            }
+            freeSlabSlots[freeSlabSlotCount++] = slot;
+            return;
+        }
+
+        if (freeBlockCounts[c] == freeBlocks[c].length) {
+            freeBlocks[c] = Arrays.copyOf(freeBlocks[c], freeBlockCounts[c] * 2);
+        }
+        freeBlocks[c][freeBlockCounts[c]++] = handle;
+    }
+
+    /**
+     * @return the number of bytes in blocks that are currently allocated, rounded up to the allocator's size classes.
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the number of bytes of direct memory currently reserved by this arena.
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+}
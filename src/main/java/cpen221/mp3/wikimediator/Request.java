@@ -1,19 +1,23 @@
 package cpen221.mp3.wikimediator;
 
-import java.util.ArrayList;
+import java.util.List;
 
 public class Request {
     private final String requestString;
-    private final ArrayList<Long> countList;
+    private TimeBuckets history;
+
+    /* only set in states saved before request times were kept in buckets */
+    private List<Long> countList;
 
     /* Representation Invariant */
-    // requestString and countList are not null
-    // countList.size() >= 1
+    // requestString is not null
+    // exactly one of history and countList is not null; countList is only set for a Request read from an old state
+    // history.total() >= 1, or countList.size() >= 1
 
     /* Abstraction Function */
     // An instance of Request represents a unique String input to search() or getPage() and
     // the corresponding times search() or getPage() has been called on that particular String, represented
-    // by an ArrayList of system times in seconds.
+    // by the system times in seconds counted in history, at the resolution history keeps them.
 
     /**
      * Private method to check that the representation invariant holds, not present in any of the final
@@ -21,8 +25,8 @@ public class Request {
      */
     private void checkRep() {
         assert !requestString.equals(null);
-        assert !countList.equals(null);
-        assert countList.size() >= 1;
+        assert (history == null) != (countList == null);
+        assert count() >= 1;
     }
 
     /**
@@ -34,8 +38,32 @@ public class Request {
      */
     public Request(String request, long firstTime) {
         requestString = request;
-        countList = new ArrayList<>();
-        countList.add(firstTime);
+        history = new TimeBuckets();
+        history.add(firstTime);
+    }
+
+    private Request(String request, TimeBuckets history) {
+        requestString = request;
+        this.history = history;
+    }
+
+    /**
+     * @return a copy of this that does not change when this does, with no unused room.
+     */
+    Request copy() {
+        return new Request(requestString, history().copy());
+    }
+
+    /**
+     * @return the times of the requests, counted per second or coarser.
+     */
+    TimeBuckets history() {
+        if (history == null) {
+            history = new TimeBuckets();
+            countList.forEach(history::add);
+            countList = null;
+        }
+        return history;
     }
 
     /**
@@ -50,20 +78,11 @@ public class Request {
      * @throws NoRecentRequestsException if after applying the filter, no time instances remain.
      */
     public Request deepFilteredCopy(long currentTime, long timeWindow) throws NoRecentRequestsException {
-
-        long filteredFirstTime = -1;
-        for (int i=0;i<this.getCountList().size();i++) {
-            if (this.getCountList().get(i) >= currentTime - timeWindow) {
-                filteredFirstTime = this.getCountList().get(i);
-                break;
-            }
-        }
-        if (filteredFirstTime == -1) {
+        TimeBuckets recent = history().copySince(currentTime - timeWindow);
+        if (recent.size() == 0) {
             throw new NoRecentRequestsException();
         }
-        Request filteredRequest = new Request(this.getRequestString(),filteredFirstTime);
-        this.getCountList().forEach(time -> {if (time >= currentTime-timeWindow) filteredRequest.addInstance(time);});
-        return filteredRequest;
+        return new Request(requestString, recent);
     }
 
     /**
@@ -73,7 +92,7 @@ public class Request {
      *             getPage() or search().
      */
     public void addInstance(long time) {
-        countList.add(time);
+        history().add(time);
     }
 
     /**
@@ -84,16 +103,26 @@ public class Request {
     }
 
     /**
-     * @return an ArrayList containing all the times a request for
+     * @return the number of times getPage() or search() was called with the request String, including times
+     * that are no longer kept.
+     */
+    public long count() {
+        return history().total();
+    }
+
+    /**
+     * @return a read-only List of all the kept times a request for the request String was made, oldest first,
+     * which reads this Request's history rather than copying it and so changes as this does. A request kept only
+     * to the minute or hour is listed at the start of its minute or hour.
      */
-    public ArrayList<Long> getCountList() {
-        return (ArrayList<Long>) countList.clone();
+    public List<Long> getCountList() {
+        return history().asList();
     }
 
     //just for testing
     @Override
     public String toString() {
         return
-                requestString + countList.size();
+                requestString + count();
     }
 }
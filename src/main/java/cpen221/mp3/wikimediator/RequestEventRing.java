@@ -0,0 +1,202 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded ring of request events that any number of threads publish to without locking, and
+ * a single consumer thread applies to the analytics structures in batches. A producer claims a
+ * slot by advancing the tail, fills it, and then publishes it through the slot's sequence number;
+ * the consumer takes slots in order once they are published, and hands them back by advancing
+ * their sequence numbers a lap ahead. When the ring is full, producers wait for the consumer
+ * rather than drop events, so counts stay exact. Once the ring is closed, it refuses events, so a
+ * producer never waits on a consumer that has stopped.
+ */
+final class RequestEventRing {
+
+    /**
+     * Applies request events, always on the consumer thread.
+     */
+    interface Sink {
+        /**
+         * Apply one event. An event whose application throws is logged and skipped.
+         *
+         * @param request the String the request was for, or null if it is not counted by zeitgeist() and trending().
+         * @param time the time of the request, in seconds.
+         * @param load true if the request counts towards windowedPeakLoad().
+         */
+        void apply(String request, long time, boolean load);
+    }
+
+    /* how long the idle consumer sleeps before looking for events on its own */
+    private static final long IDLE_NANOS = 1_000_000;
+
+    /* how many times flush() checks for progress before yielding */
+    private static final int SPINS = 100;
+
+    /* the most events applied before the consumer makes its progress visible to flush() */
+    private static final int BATCH = 256;
+
+    /* set in tail once the ring is closed, so that no producer can claim a slot afterwards */
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private static final Logger LOG = Logger.getLogger(RequestEventRing.class.getName());
+
+    private final int mask;
+    private final String[] requests;
+    private final long[] times;
+    private final boolean[] loads;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long applied;
+    private volatile boolean idle;
+    private volatile boolean stopped;
+    private final Thread consumer;
+
+    /* Representation Invariant */
+    // mask + 1 is a power of two, and the length of requests, times, loads and sequences
+    // applied <= tail & ~CLOSED, and the consumer has applied every event claimed before applied
+    // once CLOSED is set in tail it stays set, and the rest of tail no longer changes
+    // stopped only if CLOSED is set in tail and applied == tail & ~CLOSED
+    // for the slot i of an event claimed at position p >= applied, sequences[i] == p + 1 once it is published and p
+    //   before; for every other slot i, sequences[i] is the next position at which it may be claimed
+    // requests, times and loads of a slot are written only by the producer that claimed it, before it is published,
+    //   and read only by the consumer after
+
+    /* Abstraction Function */
+    // A RequestEventRing represents the events claimed at positions [applied, tail & ~CLOSED), in order, which the
+    //   consumer applies to the sink, and whether it still accepts events: it does unless CLOSED is set in tail.
+
+    /**
+     * Creates a ring and starts its consumer.
+     *
+     * @param capacity the number of events the ring holds, rounded up to a power of two, must be > 0.
+     * @param sink applies the events.
+     */
+    RequestEventRing(int capacity, Sink sink) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        requests = new String[size];
+        times = new long[size];
+        loads = new boolean[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        consumer = new Thread(() -> consume(sink), "analytics-ingest");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Publish a request event, waiting while the ring is full, unless the ring has been closed.
+     *
+     * @param request the String the request was for, or null if it is not counted by zeitgeist() and trending().
+     * @param time the time of the request, in seconds.
+     * @param load true if the request counts towards windowedPeakLoad().
+     * @return true if the event was published, and false if the ring was closed first, in which case the event
+     * will never be applied.
+     */
+    boolean publish(String request, long time, boolean load) {
+        long position;
+        while (true) {
+            position = tail.get();
+            if (position < 0) {
+                // closed: once CLOSED is set, no compareAndSet below can succeed
+                return false;
+            }
+            long difference = sequences.get((int) position & mask) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // the ring is full, so the consumer is behind; it is awake, as it has events to apply
+                Thread.yield();
+            }
+        }
+        int slot = (int) position & mask;
+        requests[slot] = request;
+        times[slot] = time;
+        loads[slot] = load;
+        sequences.set(slot, position + 1);
+        if (idle) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Wait until every event published before this call has been applied.
+     */
+    void flush() {
+        long target = tail.get() & ~CLOSED;
+        for (int spins = 0; applied < target; spins++) {
+            if (idle) {
+                LockSupport.unpark(consumer);
+            }
+            // a short wait is spun out, but a longer one gives the consumer the processor
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return the number of events the ring holds.
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Refuse any further events, apply those published so far, and stop the consumer. A producer that is
+     * waiting for room when the ring is closed stops waiting, and its event is refused.
+     */
+    void close() {
+        long last;
+        do {
+            last = tail.get();
+        } while (last >= 0 && !tail.compareAndSet(last, last | CLOSED));
+        // every slot claimed before this point is published by its producer, and then applied
+        flush();
+        stopped = true;
+        LockSupport.unpark(consumer);
+    }
+
+    private void consume(Sink sink) {
+        long head = 0;
+        while (!stopped) {
+            int taken = 0;
+            for (int slot = (int) head & mask; taken < BATCH && sequences.get(slot) == head + 1;
+                    slot = (int) head & mask) {
+                String request = requests[slot];
+                requests[slot] = null;
+                try {
+                    sink.apply(request, times[slot], loads[slot]);
+                } catch (RuntimeException e) {
+                    // the slot is handed back all the same, or flush() and producers would wait forever
+                    LOG.log(Level.WARNING, "could not apply the request event for " + request, e);
+                }
+                sequences.set(slot, head + mask + 1);
+                head++;
+                taken++;
+            }
+            applied = head;
+
+            if (taken == 0) {
+                // sleep unless an event was published after the consumer said it was idle
+                idle = true;
+                if (sequences.get((int) head & mask) != head + 1) {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.*;
+
+/**
+ * Counts how often each String was used in search() and getPage() requests, keeping the
+ * Strings ranked by count so that the most common ones can be listed without sorting,
+ * and ordered by when they were last used so that trending() only visits recent ones.
+ * Every method holds the tracker's lock; recording a request takes O(log n) time in the
+ * number n of Strings tracked, to move the String to its new place in the ranking.
+ * Under a bounded retention policy, every String's history is trimmed once per n or more requests,
+ * and Strings none of whose requests are kept any more are forgotten, so that the number
+ * of Strings tracked stays bounded too.
+ */
+class RequestTracker {
+    private final Map<String, Entry> index = new HashMap<>();
+    private final List<Entry> order = new ArrayList<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>(RequestTracker::compareRank);
+    private RetentionPolicy retention = RetentionPolicy.UNBOUNDED;
+
+    /* every String's history is trimmed at most once per this many requests */
+    private static final int SWEEP_EVERY = 1024;
+
+    /* the seq of the next String first used */
+    private int nextSeq;
+
+    /* the latest time recorded, and the number of requests recorded since every history was last trimmed */
+    private long latest = Long.MIN_VALUE;
+    private int sinceSweep;
+
+    /* sentinel of the circular recency list; the most recently used String is at recent.older */
+    private final Entry recent = new Entry(null, -1);
+
+    /* Representation Invariant */
+    // index, order, ranking and the recency list hold exactly the same entries, and index maps each entry's
+    //   request String to it
+    // order is sorted by seq, and every entry's seq is less than nextSeq
+    // ranking is sorted by count, in non-increasing order, then by seq
+    // the recency list is sorted by the time of each entry's latest request, latest first
+    // index, order, ranking, the recency list, retention and the entries' requests are only accessed while holding
+    //   the lock of this
+
+    /* Abstraction Function */
+    // A RequestTracker represents every String used in search() and getPage() requests, in the order each was first
+    // used, with the times it was used, except the Strings all of whose times the retention policy has dropped.
+
+    /**
+     * Compare entries by how often they were requested, most often first, and then by when they were first requested.
+     */
+    private static int compareRank(Entry e1, Entry e2) {
+        if (e1.request.count() != e2.request.count()) {
+            return Long.compare(e2.request.count(), e1.request.count());
+        }
+        return Integer.compare(e1.seq, e2.seq);
+    }
+
+    /**
+     * Creates a tracker that starts out with the given requests, first used in the order of the list.
+     *
+     * @param requests the requests to start with, each with a different request String.
+     */
+    RequestTracker(List<Request> requests) {
+        for (Request request : requests) {
+            add(request);
+        }
+        List<Entry> byLatest = new ArrayList<>(order);
+        byLatest.sort(Comparator.comparingLong(entry -> entry.request.history().latest()));
+        for (Entry entry : byLatest) {
+            entry.linkRecent(recent);
+        }
+    }
+
+    /**
+     * Creates a tracker that has seen no requests.
+     */
+    RequestTracker() {
+    }
+
+    private Entry add(Request request) {
+        Entry entry = new Entry(request, nextSeq++);
+        order.add(entry);
+        ranking.add(entry);
+        index.put(request.getRequestString(), entry);
+        return entry;
+    }
+
+    /**
+     * Record that a String was used in a search() or getPage() request.
+     *
+     * @param request the String for which getPage() or search() was called.
+     * @param time the system time at which getPage() or search() was called, in seconds.
+     */
+    synchronized void record(String request, long time) {
+        Entry entry = index.get(request);
+        if (entry == null) {
+            entry = add(new Request(request, time));
+        } else {
+            // an entry's place in ranking depends on its count, so it has to be taken out while the count changes
+            ranking.remove(entry);
+            entry.request.addInstance(time);
+            ranking.add(entry);
+        }
+        entry.request.history().retain(retention);
+
+        // the entry usually becomes the most recent; a request recorded after a later one may place it further back
+        entry.unlinkRecent();
+        Entry newer = recent;
+        while (newer.older != recent && newer.older.latest() > entry.latest()) {
+            newer = newer.older;
+        }
+        entry.linkRecent(newer);
+
+        // a sweep visits every String, so one per as many requests costs each request O(1) on average
+        latest = Math.max(latest, time);
+        if (retention.getMaxAge() != Long.MAX_VALUE && ++sinceSweep >= Math.max(SWEEP_EVERY, order.size())) {
+            sweep();
+        }
+    }
+
+    /**
+     * Trim the history of every String as of the latest request, and forget the Strings whose histories are left
+     * empty, as the retention policy has dropped every request for them.
+     */
+    private void sweep() {
+        sinceSweep = 0;
+        List<Entry> kept = new ArrayList<>(order.size());
+        for (Entry entry : order) {
+            TimeBuckets history = entry.request.history();
+            history.retainAt(retention, latest);
+            if (history.size() > 0) {
+                kept.add(entry);
+            } else {
+                index.remove(entry.request.getRequestString());
+                ranking.remove(entry);
+                entry.unlinkRecent();
+            }
+        }
+        order.clear();
+        order.addAll(kept);
+    }
+
+    /**
+     * @param limit the maximum number of Strings to return, must be >= 0.
+     * @return the limit most common Strings, in non-increasing count order, with Strings that were used equally
+     * often in the order they were first used.
+     */
+    synchronized List<String> mostCommon(int limit) {
+        List<String> top = new ArrayList<>(Math.min(limit, ranking.size()));
+        for (Entry entry : ranking) {
+            if (top.size() == limit) {
+                break;
+            }
+            top.add(entry.request.getRequestString());
+        }
+        return top;
+    }
+
+    /**
+     * Only the Strings used in the time frame are visited, and each is counted without copying its times.
+     * Requests older than the retention policy keeps are not counted, and requests kept only to the minute or
+     * hour count if their minute or hour starts in the time frame.
+     *
+     * @param currentTime the current system time, in seconds.
+     * @param timeLimitInSeconds only requests made in [currentTime - timeLimitInSeconds, currentTime] are counted.
+     * @param maxItems the maximum number of Strings to return, must be >= 0.
+     * @return the maxItems Strings most commonly used in that time frame, in non-increasing count order, with
+     * Strings that were used equally often in the order they were first used.
+     */
+    synchronized List<String> mostCommonSince(long currentTime, int timeLimitInSeconds, int maxItems) {
+        long since = Math.max(currentTime - timeLimitInSeconds, currentTime - retention.getMaxAge());
+        if (maxItems == 0) {
+            return new ArrayList<>();
+        }
+
+        // the least common of the top maxItems so far is at the head
+        PriorityQueue<Candidate> top = new PriorityQueue<>(maxItems + 1);
+        for (Entry entry = recent.older; entry != recent && entry.latest() >= since; entry = entry.older) {
+            long count = entry.request.history().countSince(since);
+            if (top.size() < maxItems) {
+                top.add(new Candidate(entry, count));
+            } else if (top.peek().ranksBelow(count, entry.seq)) {
+                top.poll();
+                top.add(new Candidate(entry, count));
+            }
+        }
+
+        String[] ranked = new String[top.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = top.poll().entry.request.getRequestString();
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    /**
+     * Keep the times of requests as the given policy says from now on. Times kept more finely before are merged
+     * and dropped as the Strings they belong to are requested again, or by the next trim of every String.
+     *
+     * @param retention the retention policy.
+     */
+    synchronized void setRetention(RetentionPolicy retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * @return a copy of every Request tracked, in the order they were first made.
+     */
+    synchronized List<Request> requests() {
+        List<Request> requests = new ArrayList<>(order.size());
+        for (Entry entry : order) {
+            requests.add(entry.request.copy());
+        }
+        return requests;
+    }
+
+    /**
+     * A tracked String: its Request, when it was first used relative to the others, and its place in the
+     * recency list.
+     */
+    private static final class Entry {
+        final Request request;
+        final int seq;
+
+        Entry newer = this;
+        Entry older = this;
+
+        Entry(Request request, int seq) {
+            this.request = request;
+            this.seq = seq;
+        }
+
+        /* insert this entry just older than the given one */
+        void linkRecent(Entry next) {
+            newer = next;
+            older = next.older;
+            next.older.newer = this;
+            next.older = this;
+        }
+
+        /* the time of the latest request */
+        long latest() {
+            return request.history().latest();
+        }
+
+        void unlinkRecent() {
+            newer.older = older;
+            older.newer = newer;
+            newer = older = this;
+        }
+    }
+
+    /**
+     * An entry with the number of times it was used in the time frame of a trending() query.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final Entry entry;
+        final long count;
+
+        Candidate(Entry entry, long count) {
+            this.entry = entry;
+            this.count = count;
+        }
+
+        /**
+         * @return true if a String used count times and first used at seq ranks above this one.
+         */
+        boolean ranksBelow(long count, int seq) {
+            return count > this.count || (count == this.count && seq < entry.seq);
+        }
+
+        /* lower-ranked candidates first */
+        @Override
+        public int compareTo(Candidate other) {
+            if (count != other.count) {
+                return Long.compare(count, other.count);
+            }
+            return Integer.compare(other.entry.seq, entry.seq);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cpen221.mp3.wikimediator;
+
+/**
+ * How long, and at what resolution, a WikiMediator keeps the times of past requests.
+ * Recent requests are kept to the second, older ones are counted per minute and then
+ * per hour, and requests older than the maximum age are forgotten. Forgotten requests
+ * still count towards zeitgeist(), but not towards trending() or windowedPeakLoad(),
+ * until every request for their String is forgotten; then the String itself is forgotten.
+ * The times of all requests together, used by windowedPeakLoad(), stay counted to the
+ * second until they are forgotten.
+ */
+public final class RetentionPolicy {
+
+    /* keep every request to the second, forever */
+    public static final RetentionPolicy UNBOUNDED = new RetentionPolicy(Long.MAX_VALUE, Long.MAX_VALUE,
+            Long.MAX_VALUE);
+
+    private final long perSecond;
+    private final long perMinute;
+    private final long maxAge;
+
+    /* Representation Invariant */
+    // 0 < perSecond <= perMinute <= maxAge
+
+    /* Abstraction Function */
+    // A RetentionPolicy represents keeping requests younger than perSecond seconds to the second, requests younger
+    // than perMinute seconds to the minute, requests younger than maxAge seconds to the hour, and dropping the rest.
+
+    /**
+     * Creates a retention policy.
+     *
+     * @param perSecond how long, in seconds, requests are kept to the second, must be > 0.
+     * @param perMinute how long, in seconds, requests are kept to the minute, must be >= perSecond.
+     * @param maxAge how long, in seconds, requests are kept at all, must be >= perMinute. Older requests are
+     *               kept to the hour in between.
+     */
+    public RetentionPolicy(long perSecond, long perMinute, long maxAge) {
+        this.perSecond = perSecond;
+        this.perMinute = perMinute;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @param time the time of a request, in seconds.
+     * @param age how long ago, in seconds, the request was made.
+     * @return the start of the bucket the request is counted in, at the resolution kept for its age.
+     */
+    long bucketStart(long time, long age) {
+        if (age < perSecond) {
+            return time;
+        }
+        long width = age < perMinute ? 60 : 3600;
+        return Math.floorDiv(time, width) * width;
+    }
+
+    /**
+     * @return how long, in seconds, requests are kept at all.
+     */
+    public long getMaxAge() { return maxAge; }
+
+    /**
+     * @return how long, in seconds, requests are kept to the second.
+     */
+    public long getPerSecond() { return perSecond; }
+
+    /**
+     * @return how long, in seconds, requests are kept to the minute.
+     */
+    public long getPerMinute() { return perMinute; }
+}
@@ -0,0 +1,198 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.*;
+
+/**
+ * A Space-Saving summary of a stream of Strings: a fixed number of counters, each monitoring
+ * one String. A String that is not monitored takes over the counter with the smallest count,
+ * inheriting that count as its possible error, so every String used more than total / capacity
+ * times is monitored, and every count is at most total / capacity too high.
+ */
+final class SpaceSaving {
+
+    private String[] items;
+    private long[] counts;
+    private long[] seqs;
+    private int size;
+
+    /* where each monitored String is in the heap; rebuilt from items when a saved summary is read */
+    private transient Map<String, Integer> positions;
+
+    /* Representation Invariant */
+    // items, counts and seqs have the same length, the capacity, which is > 0
+    // items[0..size) are distinct and not null, and positions maps each of them to its index, if positions is set
+    // counts[0..size) is a min-heap: counts[(i - 1) / 2] <= counts[i]
+    // counts[i] > 0
+
+    /* Abstraction Function */
+    // A SpaceSaving represents uses of Strings, of which each items[i] was used at most counts[i] times, and
+    // at least counts[i] minus the smallest count when it took its counter; it was first counted as seqs[i] by the
+    // caller. Unmonitored Strings were used at most counts[0] times once the summary is full, and 0 times before.
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param capacity the number of counters, must be > 0.
+     */
+    SpaceSaving(int capacity) {
+        items = new String[capacity];
+        counts = new long[capacity];
+        seqs = new long[capacity];
+    }
+
+    private SpaceSaving(SpaceSaving other) {
+        items = other.items.clone();
+        counts = other.counts.clone();
+        seqs = other.seqs.clone();
+        size = other.size;
+    }
+
+    /**
+     * @return a copy of this that does not change when this does.
+     */
+    SpaceSaving copy() {
+        return new SpaceSaving(this);
+    }
+
+    private Map<String, Integer> positions() {
+        if (positions == null) {
+            positions = new HashMap<>(items.length * 2);
+            for (int i = 0; i < size; i++) {
+                positions.put(items[i], i);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Count uses of a String.
+     *
+     * @param item the String used.
+     * @param uses the number of uses, must be > 0.
+     * @param seq the caller's sequence number for the String, kept if the String was not monitored before.
+     */
+    void add(String item, long uses, long seq) {
+        Integer position = positions().get(item);
+        if (position != null) {
+            counts[position] += uses;
+            siftDown(position);
+            return;
+        }
+
+        int i;
+        if (size < items.length) {
+            i = size++;
+        } else {
+            // the least used String gives up its counter
+            i = 0;
+            positions.remove(items[0]);
+        }
+        items[i] = item;
+        counts[i] += uses;
+        seqs[i] = seq;
+        positions.put(item, i);
+        siftUp(i);
+        siftDown(i);
+    }
+
+    /**
+     * @param item a String.
+     * @return the estimated number of uses of item, never lower than the true number, or 0 if it is not monitored.
+     */
+    long count(String item) {
+        Integer position = positions().get(item);
+        return position == null ? 0 : counts[position];
+    }
+
+    /**
+     * @param limit the maximum number of Strings to return, must be > 0.
+     * @return the limit monitored Strings with the largest counts, largest first, with equal counts in order of
+     * their sequence numbers.
+     */
+    List<String> top(int limit) {
+        // the lowest ranked of the top limit so far is at the head
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, (i, j) -> counts[i] != counts[j]
+                ? Long.compare(counts[i], counts[j]) : Long.compare(seqs[j], seqs[i]));
+        for (int i = 0; i < size; i++) {
+            top.add(i);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        String[] ranked = new String[top.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = items[top.poll()];
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    /**
+     * Add the estimated counts of the monitored Strings to a map, keeping the smallest sequence number of each.
+     *
+     * @param sums maps each String to its count so far and its sequence number, extended in place.
+     */
+    void addTo(Map<String, long[]> sums) {
+        for (int i = 0; i < size; i++) {
+            long[] sum = sums.get(items[i]);
+            if (sum == null) {
+                sums.put(items[i], new long[] {counts[i], seqs[i]});
+            } else {
+                sum[0] += counts[i];
+                sum[1] = Math.min(sum[1], seqs[i]);
+            }
+        }
+    }
+
+    /**
+     * Forget every use counted.
+     */
+    void clear() {
+        Arrays.fill(items, 0, size, null);
+        Arrays.fill(counts, 0, size, 0);
+        size = 0;
+        positions().clear();
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[parent] <= counts[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && counts[child + 1] < counts[child]) {
+                child++;
+            }
+            if (counts[i] <= counts[child]) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        long seq = seqs[i];
+        seqs[i] = seqs[j];
+        seqs[j] = seq;
+        positions.put(items[i], i);
+        positions.put(items[j], j);
+    }
+}
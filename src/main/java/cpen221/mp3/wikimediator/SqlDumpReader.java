@@ -0,0 +1,176 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the rows of one table out of a MySQL dump, such as the page and pagelinks dumps Wikimedia
+ * publishes, without loading the dump. Only the INSERT statements of the table are read; each one
+ * lists many rows on a single line, as mysqldump writes them.
+ */
+final class SqlDumpReader {
+
+    /* read 1 MiB of the dump at a time */
+    private static final int BUFFER = 1 << 20;
+
+    /**
+     * Receives the rows of a table, one at a time.
+     */
+    interface RowHandler {
+
+        /**
+         * @param values the values of the row, in column order: strings unescaped, numbers as written,
+         *               and null for NULL. The array is not used again by the reader.
+         * @throws IOException if the row cannot be handled.
+         */
+        void row(String[] values) throws IOException;
+    }
+
+    private SqlDumpReader() {
+    }
+
+    /**
+     * Read the rows of a table from a dump, which is gunzipped if its name ends in .gz.
+     *
+     * @param dump the dump.
+     * @param table the name of the table.
+     * @param rows receives each row of the table, in the order of the dump.
+     * @return the number of rows read.
+     * @throws IOException if the dump cannot be read, an INSERT statement of the table is malformed,
+     *                     or rows throws it.
+     */
+    static long read(Path dump, String table, RowHandler rows) throws IOException {
+        String insert = "INSERT INTO `" + table + "` VALUES ";
+        long count = 0;
+        try (InputStream in = open(dump);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(insert)) {
+                    count += parse(line, insert.length(), rows);
+                }
+            }
+        }
+        return count;
+    }
+
+    private static InputStream open(Path dump) throws IOException {
+        InputStream in = Files.newInputStream(dump);
+        if (!dump.getFileName().toString().endsWith(".gz")) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in, BUFFER);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param line an INSERT statement.
+     * @param at where the first row of the statement starts.
+     * @param rows receives each row.
+     * @return the number of rows in the statement.
+     * @throws IOException if the statement is malformed, or rows throws it.
+     */
+    private static long parse(String line, int at, RowHandler rows) throws IOException {
+        List<String> values = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        long count = 0;
+        int i = at;
+        while (true) {
+            i = expect(line, i, '(');
+            values.clear();
+            while (true) {
+                if (i < line.length() && line.charAt(i) == '\'') {
+                    text.setLength(0);
+                    i = unquote(line, i + 1, text);
+                    values.add(text.toString());
+                } else {
+                    int end = i;
+                    while (end < line.length() && line.charAt(end) != ',' && line.charAt(end) != ')') {
+                        end++;
+                    }
+                    String value = line.substring(i, end);
+                    values.add(value.equals("NULL") ? null : value);
+                    i = end;
+                }
+                if (i < line.length() && line.charAt(i) == ',') {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            i = expect(line, i, ')');
+            rows.row(values.toArray(new String[0]));
+            count++;
+            if (i < line.length() && line.charAt(i) == ',') {
+                i++;
+            } else {
+                expect(line, i, ';');
+                return count;
+            }
+        }
+    }
+
+    private static int expect(String line, int i, char c) throws IOException {
+        if (i >= line.length() || line.charAt(i) != c) {
+            throw new IOException("expected '" + c + "' at column " + i + " of an INSERT statement");
+        }
+        return i + 1;
+    }
+
+    /**
+     * @param line an INSERT statement.
+     * @param i where a quoted string starts, just after its opening quote.
+     * @param text receives the string, unescaped.
+     * @return where the string ends, just after its closing quote.
+     * @throws IOException if the string is not closed.
+     */
+    private static int unquote(String line, int i, StringBuilder text) throws IOException {
+        while (i < line.length()) {
+            char c = line.charAt(i++);
+            if (c == '\\' && i < line.length()) {
+                char escaped = line.charAt(i++);
+                switch (escaped) {
+                    case '0':
+                        text.append('\0');
+                        break;
+                    case 'n':
+                        text.append('\n');
+                        break;
+                    case 'r':
+                        text.append('\r');
+                        break;
+                    case 't':
+                        text.append('\t');
+                        break;
+                    case 'Z':
+                        text.append('\u001A');
+                        break;
+                    default:
+                        text.append(escaped);
+                }
+            } else if (c == '\'') {
+                if (i < line.length() && line.charAt(i) == '\'') {
+                    text.append('\'');
+                    i++;
+                } else {
+                    return i;
+                }
+            } else {
+                text.append(c);
+            }
+        }
+        throw new IOException("unterminated string in an INSERT statement");
+    }
+}
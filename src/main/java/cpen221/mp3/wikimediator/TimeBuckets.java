@@ -0,0 +1,307 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The times at which requests were made, counted in one bucket per second in which any
+ * was made. Each bucket also keeps the running total of requests up to its end, so the
+ * number of requests made since any time is found by a binary search. Under a
+ * RetentionPolicy, old buckets are merged into per-minute and per-hour buckets and
+ * finally dropped, so that the number of buckets stays bounded.
+ *
+ * Buckets are stored in primitive chunks of up to 4096, so a long history grows by adding
+ * chunks rather than copying every bucket into a larger array.
+ */
+public final class TimeBuckets {
+
+    /* how often, in seconds of recorded time, buckets are merged and dropped */
+    private static final long RETAIN_EVERY = 60;
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK - 1;
+
+    private long[][] times;
+    private long[][] totals;
+    private int chunks;
+    private int size;
+    private long dropped;
+    private transient long nextRetain = Long.MIN_VALUE;
+
+    /* Representation Invariant */
+    // times.length == totals.length >= chunks >= 1, and times[c], totals[c] are set for c < chunks and null after
+    // times[c].length == totals[c].length, which is CHUNK for every c < chunks - 1 and at most CHUNK for the last
+    // size <= the total length of the chunks, and size > (chunks - 1) * CHUNK unless chunks == 1
+    // time(0..size) is strictly increasing, and total(0..size) is strictly increasing and > dropped, where time(i)
+    //   is times[i / CHUNK][i % CHUNK] and total(i) is totals[i / CHUNK][i % CHUNK]
+
+    /* Abstraction Function */
+    // A TimeBuckets represents dropped requests whose times are forgotten, followed, for each i < size, by
+    // total(i) - total(i - 1) requests (total(0) - dropped for the first) made at time(i), or in the minute or
+    // hour starting at time(i) if the bucket was merged.
+
+    TimeBuckets() {
+        times = new long[][] {new long[4]};
+        totals = new long[][] {new long[4]};
+        chunks = 1;
+    }
+
+    private TimeBuckets(TimeBuckets other) {
+        chunks = Math.max(1, (other.size + CHUNK - 1) >>> CHUNK_BITS);
+        times = new long[chunks][];
+        totals = new long[chunks][];
+        for (int c = 0; c < chunks; c++) {
+            int length = Math.min(CHUNK, other.size - (c << CHUNK_BITS));
+            times[c] = Arrays.copyOf(other.times[c], length);
+            totals[c] = Arrays.copyOf(other.totals[c], length);
+        }
+        size = other.size;
+        dropped = other.dropped;
+    }
+
+    /**
+     * @return a copy of this with no unused room.
+     */
+    TimeBuckets copy() {
+        return new TimeBuckets(this);
+    }
+
+    private long totalAt(int i) {
+        return totals[i >>> CHUNK_BITS][i & CHUNK_MASK];
+    }
+
+    private void set(int i, long time, long total) {
+        times[i >>> CHUNK_BITS][i & CHUNK_MASK] = time;
+        totals[i >>> CHUNK_BITS][i & CHUNK_MASK] = total;
+    }
+
+    /* make room for one more bucket */
+    private void grow() {
+        long[] last = times[chunks - 1];
+        if (size < ((chunks - 1) << CHUNK_BITS) + last.length) {
+            return;
+        }
+        if (last.length < CHUNK) {
+            // a short last chunk doubles until it is full size
+            int length = Math.min(CHUNK, Math.max(4, last.length * 2));
+            times[chunks - 1] = Arrays.copyOf(last, length);
+            totals[chunks - 1] = Arrays.copyOf(totals[chunks - 1], length);
+            return;
+        }
+        if (chunks == times.length) {
+            times = Arrays.copyOf(times, chunks * 2);
+            totals = Arrays.copyOf(totals, chunks * 2);
+        }
+        times[chunks] = new long[CHUNK];
+        totals[chunks] = new long[CHUNK];
+        chunks++;
+    }
+
+    /**
+     * Record a request.
+     *
+     * @param time the time of the request, in seconds. Usually no earlier than any request recorded before;
+     *             a request that is recorded late is still counted in its own second.
+     */
+    void add(long time) {
+        int last = size - 1;
+        if (size > 0 && time(last) == time) {
+            totals[last >>> CHUNK_BITS][last & CHUNK_MASK]++;
+            return;
+        }
+
+        // requests arrive in time order except for threads racing to record them, so look back from the end
+        int i = size;
+        while (i > 0 && time(i - 1) > time) {
+            i--;
+        }
+        if (i > 0 && time(i - 1) == time) {
+            for (int j = i - 1; j < size; j++) {
+                totals[j >>> CHUNK_BITS][j & CHUNK_MASK]++;
+            }
+            return;
+        }
+
+        grow();
+        for (int j = size; j > i; j--) {
+            set(j, time(j - 1), totalAt(j - 1) + 1);
+        }
+        set(i, time, totalBefore(i) + 1);
+        size++;
+    }
+
+    /**
+     * @param since a time in seconds.
+     * @return a copy of the buckets starting at or after since, with no requests dropped.
+     */
+    TimeBuckets copySince(long since) {
+        int first = indexOf(since);
+        long base = totalBefore(first);
+        TimeBuckets copy = new TimeBuckets();
+        for (int i = first; i < size; i++) {
+            copy.grow();
+            copy.set(copy.size++, time(i), totalAt(i) - base);
+        }
+        return copy;
+    }
+
+    /**
+     * @return a read-only view of the time of every request kept, oldest first, which reads the buckets rather
+     * than copying them. A request kept only to the minute or hour is listed at the start of its minute or hour.
+     */
+    List<Long> asList() {
+        return new AbstractList<Long>() {
+            @Override
+            public Long get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                // the request is in the first bucket whose running total passes it
+                long request = dropped + index;
+                int lo = 0;
+                int hi = TimeBuckets.this.size - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (totalAt(mid) <= request) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                return time(lo);
+            }
+
+            @Override
+            public int size() {
+                return (int) (total() - dropped);
+            }
+        };
+    }
+
+    /**
+     * Merge the buckets that have grown old into coarser ones, and drop those older than the policy keeps.
+     * Does nothing under a policy that keeps every request to the second forever, and otherwise
+     * unless a minute of recorded time has passed since it last did something.
+     *
+     * @param policy the retention policy to apply, relative to the latest request.
+     * @return true if buckets may have been merged or dropped.
+     */
+    boolean retain(RetentionPolicy policy) {
+        // a policy that keeps everything to the second forever can neither merge nor drop
+        if (policy.getMaxAge() == Long.MAX_VALUE && policy.getPerSecond() == Long.MAX_VALUE) {
+            return false;
+        }
+        long now = latest();
+        if (size == 0 || now < nextRetain) {
+            return false;
+        }
+        nextRetain = now + RETAIN_EVERY;
+        return retainAt(policy, now);
+    }
+
+    /**
+     * Merge the buckets that have grown old into coarser ones, and drop those older than the policy keeps,
+     * whenever the last request was made.
+     *
+     * @param policy the retention policy to apply.
+     * @param now the time the policy is applied at, in seconds, no earlier than the latest request.
+     * @return true if buckets may have been merged or dropped.
+     */
+    boolean retainAt(RetentionPolicy policy, long now) {
+        boolean changed = false;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            long time = time(i);
+            long age = now - time;
+            if (age >= policy.getMaxAge()) {
+                dropped = totalAt(i);
+                changed = true;
+                continue;
+            }
+            // older buckets get coarser, so merged buckets stay in order
+            long start = policy.bucketStart(time, age);
+            changed |= start != time;
+            if (kept > 0 && time(kept - 1) == start) {
+                set(kept - 1, start, totalAt(i));
+            } else {
+                set(kept, start, totalAt(i));
+                kept++;
+            }
+        }
+        size = kept;
+
+        // chunks no longer needed are given back, keeping the first
+        int needed = Math.max(1, (size + CHUNK - 1) >>> CHUNK_BITS);
+        while (chunks > needed) {
+            chunks--;
+            times[chunks] = null;
+            totals[chunks] = null;
+        }
+        return changed;
+    }
+
+    /**
+     * @param since a time in seconds.
+     * @return the number of requests kept in buckets starting at or after since.
+     */
+    long countSince(long since) {
+        return total() - totalBefore(indexOf(since));
+    }
+
+    /**
+     * @param time a time in seconds.
+     * @return the index of the first bucket at or after time, or size() if there is none.
+     */
+    int indexOf(long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time(mid) < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the number of buckets.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param i the index of a bucket, oldest first.
+     * @return the start time of the bucket, in seconds.
+     */
+    long time(int i) {
+        return times[i >>> CHUNK_BITS][i & CHUNK_MASK];
+    }
+
+    /**
+     * @param i the index of a bucket, or size().
+     * @return the number of requests, dropped or in the buckets before it.
+     */
+    long totalBefore(int i) {
+        return i == 0 ? dropped : totalAt(i - 1);
+    }
+
+    /**
+     * @return the number of requests recorded, including dropped ones.
+     */
+    long total() {
+        return totalBefore(size);
+    }
+
+    /**
+     * @return the start time of the latest bucket, or Long.MIN_VALUE if there is none.
+     */
+    long latest() {
+        return size == 0 ? Long.MIN_VALUE : time(size - 1);
+    }
+}
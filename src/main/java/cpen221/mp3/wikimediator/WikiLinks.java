@@ -0,0 +1,35 @@
+package cpen221.mp3.wikimediator;
+
+import org.fastily.jwiki.core.Wiki;
+
+import java.util.List;
+
+/**
+ * The links between the pages of a wiki, fetched from it on every call.
+ */
+class WikiLinks implements LinkProvider {
+    private final Wiki wiki;
+
+    /* Representation Invariant */
+    // wiki is not null
+
+    /* Abstraction Function */
+    // A WikiLinks represents the links between the existing pages of wiki, as they are when asked for.
+
+    /**
+     * @param wiki the wiki to fetch links from.
+     */
+    WikiLinks(Wiki wiki) {
+        this.wiki = wiki;
+    }
+
+    @Override
+    public List<String> linksFrom(String title) {
+        return wiki.getLinksOnPage(true, title);
+    }
+
+    @Override
+    public List<String> linksTo(String title) {
+        return wiki.whatLinksHere(title);
+    }
+}
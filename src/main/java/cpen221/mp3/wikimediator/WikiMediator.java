@@ -1,25 +1,59 @@
 package cpen221.mp3.wikimediator;
 
-import cpen221.mp3.fsftbuffer.FSFTBuffer;
+import cpen221.mp3.fsftbuffer.Buffer;
+import cpen221.mp3.fsftbuffer.CacheStats;
+import cpen221.mp3.fsftbuffer.ConcurrentFSFTBuffer;
+import cpen221.mp3.fsftbuffer.EvictionPolicy;
+import cpen221.mp3.fsftbuffer.RemovalCause;
 import cpen221.mp3.server.WikiMediatorState;
 import org.fastily.jwiki.core.Wiki;
 
 import java.util.*;
 import java.io.*;
 import com.google.gson.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class WikiMediator {
-    private final Wiki wiki = new Wiki.Builder().withDomain("en.wikipedia.org").build();
-    private FSFTBuffer<WikiPage> wikiBuffer;
-    private List<Request> requestsTracker = Collections.synchronizedList(new ArrayList<>());
-    private List<Long> allRequestsTracker = Collections.synchronizedList(new ArrayList<>());
+    /* the MediaWiki API returns the texts of at most 50 pages per query */
+    private static final int TITLES_PER_QUERY = 50;
+    private static final double DEFAULT_HALF_LIFE = 300;
+
+    private final Wiki wiki;
+    private volatile LinkProvider links;
+    private volatile LinkCache linkCache;
+    private volatile LinkGraph linkGraph;
+    private volatile String linkGraphFile;
+    private volatile ExecutorService linkFetchers;
+    private volatile int pathConcurrency = 1;
+    private Buffer<WikiPage> wikiBuffer;
+    private OffHeapArena arena;
+    private double refreshAhead;
+    private volatile DiskPageStore diskTier;
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder upstreamFetches = new LongAdder();
+    private volatile RequestTracker requestsTracker = new RequestTracker();
+    private volatile HeavyHitters heavyHitters;
+    private volatile LoadTracker allRequestsTracker = new LoadTracker();
+    private volatile RetentionPolicy retention = RetentionPolicy.UNBOUNDED;
+    private volatile RequestEventRing events;
+    private volatile boolean flushOnRead;
+    private volatile DecayedTracker decayedTracker = new DecayedTracker(DEFAULT_HALF_LIFE);
 
     /* Representation Invariant */
-    // wikiBuffer, requestTracker, and allRequestTracker are not null
-    // wikiBuffer and requestsTracker contain no null elements
-    // allRequestTracker.size() >= requestsTracker.size()
+    // wikiBuffer, requestTracker, allRequestTracker, retention and decayedTracker are not null
+    // wikiBuffer contains no null elements
+    // if arena is not null, every page in wikiBuffer is stored off-heap in arena
+    // allRequestTracker.total() >= requestsTracker.size()
+    // if heavyHitters is not null, requestsTracker is empty
 
     /* Abstraction Function */
     // WikiMediator represents a mediator service for Wikipedia which allows users to search, access and
@@ -33,10 +67,7 @@ public class WikiMediator {
         assert !wikiBuffer.equals(null);
         assert !requestsTracker.equals(null);
         assert !allRequestsTracker.equals(null);
-        for (Request r : requestsTracker) {
-            assert !r.equals(null);
-        }
-        assert allRequestsTracker.size() >= requestsTracker.size();
+        assert allRequestsTracker.history().total() >= requestsTracker.requests().size();
     }
 
 
@@ -49,8 +80,367 @@ public class WikiMediator {
      *                          being removed, must be > 0.
      */
     public WikiMediator(int capacity, int stalenessInterval) {
-        wikiBuffer = new FSFTBuffer<>(capacity, stalenessInterval);
+        this(capacity, stalenessInterval, false);
+    }
+
+    /**
+     * Creates a new WikiMediator instance that is capable of caching Wikipedia pages, with cache specifications
+     * determined by capacity and stalenessInterval, optionally keeping cached page texts compressed off-heap.
+     *
+     * @param capacity the maximum number of Wikipedia pages that can be cached at any given time, must be > 0.
+     * @param stalenessInterval the maximum time, in seconds, that each Wikipedia page remains in the cache before
+     *                          being removed, must be > 0.
+     * @param offHeapText whether cached page texts are stored compressed outside the garbage-collected heap.
+     */
+    public WikiMediator(int capacity, int stalenessInterval, boolean offHeapText) {
+        this(capacity, stalenessInterval, offHeapText, EvictionPolicy.LRU);
+    }
+
+    /**
+     * Creates a new WikiMediator instance that is capable of caching Wikipedia pages, with cache specifications
+     * determined by capacity and stalenessInterval and the policy that decides which pages a full cache evicts.
+     *
+     * @param capacity the maximum number of Wikipedia pages that can be cached at any given time, must be > 0.
+     * @param stalenessInterval the maximum time, in seconds, that each Wikipedia page remains in the cache before
+     *                          being removed, must be > 0.
+     * @param offHeapText whether cached page texts are stored compressed outside the garbage-collected heap.
+     * @param policy the eviction policy of the cache. EvictionPolicy.TINY_LFU keeps frequently requested pages
+     *               cached when many pages are requested only once.
+     */
+    public WikiMediator(int capacity, int stalenessInterval, boolean offHeapText, EvictionPolicy policy) {
+        this(defaultWiki(), new ConcurrentFSFTBuffer<>(capacity, stalenessInterval, policy), offHeapText);
+    }
+
+    /**
+     * Creates a new WikiMediator instance that reads pages from the given wiki instead of English Wikipedia.
+     *
+     * @param wiki the wiki to read pages from.
+     * @param capacity the maximum number of pages that can be cached at any given time, must be > 0.
+     * @param stalenessInterval the maximum time, in seconds, that each page remains in the cache before
+     *                          being removed, must be > 0.
+     */
+    public WikiMediator(Wiki wiki, int capacity, int stalenessInterval) {
+        this(wiki, new ConcurrentFSFTBuffer<>(capacity, stalenessInterval, EvictionPolicy.LRU), false);
+    }
+
+    /**
+     * Creates a new WikiMediator instance whose cache is bounded by the total size of the cached page texts
+     * rather than by the number of pages.
+     *
+     * @param maxTextBytes the maximum total size, in bytes of UTF-8, of the texts of the Wikipedia pages cached
+     *                     at any given time, must be > 0. Pages larger than this are never cached.
+     * @param stalenessInterval the maximum time, in seconds, that each Wikipedia page remains in the cache before
+     *                          being removed, must be > 0.
+     */
+    public WikiMediator(long maxTextBytes, int stalenessInterval) {
+        this(maxTextBytes, stalenessInterval, false);
+    }
+
+    /**
+     * Creates a new WikiMediator instance whose cache is bounded by the total size of the cached page texts,
+     * optionally keeping those texts compressed off-heap.
+     *
+     * @param maxTextBytes the maximum total size, in bytes, of the texts of the Wikipedia pages cached at any given
+     *                     time, must be > 0. Texts are measured as stored: compressed if offHeapText is true and
+     *                     UTF-8 otherwise. Pages larger than this are never cached.
+     * @param stalenessInterval the maximum time, in seconds, that each Wikipedia page remains in the cache before
+     *                          being removed, must be > 0.
+     * @param offHeapText whether cached page texts are stored compressed outside the garbage-collected heap.
+     */
+    public WikiMediator(long maxTextBytes, int stalenessInterval, boolean offHeapText) {
+        this(maxTextBytes, stalenessInterval, offHeapText, EvictionPolicy.LRU);
+    }
+
+    /**
+     * Creates a new WikiMediator instance whose cache is bounded by the total size of the cached page texts,
+     * with the policy that decides which pages a full cache evicts.
+     *
+     * @param maxTextBytes the maximum total size, in bytes, of the texts of the Wikipedia pages cached at any given
+     *                     time, must be > 0. Texts are measured as stored: compressed if offHeapText is true and
+     *                     UTF-8 otherwise. Pages larger than this are never cached.
+     * @param stalenessInterval the maximum time, in seconds, that each Wikipedia page remains in the cache before
+     *                          being removed, must be > 0.
+     * @param offHeapText whether cached page texts are stored compressed outside the garbage-collected heap.
+     * @param policy the eviction policy of the cache. EvictionPolicy.TINY_LFU keeps frequently requested pages
+     *               cached when many pages are requested only once.
+     */
+    public WikiMediator(long maxTextBytes, int stalenessInterval, boolean offHeapText, EvictionPolicy policy) {
+        this(defaultWiki(), new ConcurrentFSFTBuffer<>(maxTextBytes, stalenessInterval, WikiPage::storedSize, policy),
+                offHeapText);
+    }
+
+    private WikiMediator(Wiki wiki, Buffer<WikiPage> wikiBuffer, boolean offHeapText) {
+        this.wiki = wiki;
+        this.links = new WikiLinks(wiki);
+        this.wikiBuffer = wikiBuffer;
+        wikiBuffer.setRemovalListener(this::pageRemoved);
+        if (offHeapText) {
+            arena = new OffHeapArena();
+        }
+    }
+
+    private static Wiki defaultWiki() {
+        return new Wiki.Builder().withDomain("en.wikipedia.org").build();
+    }
+
+    /**
+     * Called whenever a page leaves the cache. A page that was evicted or timed out is kept in the disk tier, if
+     * there is one, and the memory of an off-heap page is released. A loaded page the cache refused is only
+     * released once it is unreachable, since the getPage() calls that waited for the same load still read it.
+     *
+     * @param page the page that left the cache.
+     * @param cause why the page left the cache.
+     */
+    private void pageRemoved(WikiPage page, RemovalCause cause) {
+        DiskPageStore store = diskTier;
+        if (store != null && (cause == RemovalCause.EVICTED || cause == RemovalCause.EXPIRED)) {
+            String text = page.getText();
+            if (text != null) {
+                // the buffer's lock is held here, so the disk is written on the store's own thread
+                store.putLater(page.getTitle(), text, page.getFetchedAt());
+            }
+        }
+        if (cause == RemovalCause.REJECTED) {
+            page.releaseWhenUnreachable();
+        } else {
+            page.release();
+        }
+    }
+
+    /**
+     * Keep the pages that leave the cache in a log of files on disk. getPage() looks for a page that is not cached
+     * on disk before fetching it from Wikipedia. The log left in the directory by an earlier disk tier is reused.
+     * A page read back from disk keeps the time it was fetched from Wikipedia, so however often it moves between
+     * the cache and the disk, it is fetched again once it is maxAgeSeconds old.
+     *
+     * @param directory the directory to keep the log in, or null to stop using a disk tier.
+     * @param maxBytes the maximum total size of the log files, must be at least 16 MiB.
+     * @param maxAgeSeconds how long, in seconds, after a page was fetched from Wikipedia it may be read from disk,
+     *                      must be > 0.
+     * @throws IOException if the log cannot be read or created.
+     */
+    public void setDiskTier(String directory, long maxBytes, int maxAgeSeconds) throws IOException {
+        // loaders still holding the old store find it closed, and miss, rather than touch its closed files
+        DiskPageStore old = diskTier;
+        diskTier = null;
+        if (old != null) {
+            old.close();
+        }
+        if (directory != null) {
+            diskTier = new DiskPageStore(Paths.get(directory), maxBytes, maxAgeSeconds);
+        }
+    }
 
+    /**
+     * Bound the memory used to remember past requests. From now on, request times are kept to the second, then
+     * to the minute and then to the hour as they age, and forgotten once older than the policy keeps them.
+     * trending() counts a request kept to the minute or hour as made at the start of its minute or hour.
+     * trending() and windowedPeakLoad() do not count forgotten requests; zeitgeist() still counts them, unless
+     * every request for their String has been forgotten, in which case the String is forgotten too, so that the
+     * number of Strings remembered stays bounded. Requests are kept to the second forever unless this is called.
+     *
+     * @param retention the retention policy, not null.
+     */
+    public void setRetention(RetentionPolicy retention) {
+        this.retention = retention;
+        requestsTracker.setRetention(retention);
+        allRequestsTracker.setRetention(retention);
+    }
+
+    /**
+     * Count requests approximately for zeitgeist() and trending(), in memory that does not grow with the number
+     * of distinct Strings requested. Each String's count may be too high by up to maxError times the number of
+     * requests counted, and only Strings requested more often than that are sure to be listed. trending() only
+     * sees the last horizonSeconds seconds, and counts requests up to slotSeconds older than its time frame.
+     * The requests counted exactly so far are counted again approximately; switching back to exact counting
+     * forgets every request counted approximately.
+     *
+     * @param maxError the largest error of a count, as a fraction of the requests counted, must be in (0, 1),
+     *                 or 0 to count requests exactly.
+     * @param horizonSeconds the longest time frame, in seconds, that trending() can count, must be > 0.
+     * @param slotSeconds the resolution, in seconds, of trending() time frames, must be in (0, horizonSeconds].
+     */
+    public void setApproximateAnalytics(double maxError, int horizonSeconds, int slotSeconds) {
+        flushEvents();
+        if (maxError == 0) {
+            if (heavyHitters != null) {
+                heavyHitters = null;
+                requestsTracker = new RequestTracker();
+                requestsTracker.setRetention(retention);
+            }
+            return;
+        }
+        HeavyHitters approximate = new HeavyHitters(maxError, horizonSeconds, slotSeconds);
+        for (Request request : requestsTracker.requests()) {
+            TimeBuckets history = request.history();
+            for (int i = 0; i < history.size(); i++) {
+                approximate.add(request.getRequestString(), history.time(i),
+                        history.totalBefore(i + 1) - history.totalBefore(i));
+            }
+        }
+        heavyHitters = approximate;
+        requestsTracker = new RequestTracker();
+    }
+
+    /**
+     * Count requests for zeitgeist(), trending() and windowedPeakLoad() off the request path. Requests are
+     * published to a ring without locking, and a single background thread counts them in batches, so callers do
+     * not wait for or contend over the counts. When the ring is full, callers wait for room, so no request goes
+     * uncounted. Each of zeitgeist(), trending() and windowedPeakLoad() reads the counts of a prefix of the
+     * requests recorded; with flushOnRead, it first waits until every request recorded before it is counted.
+     * Requests in flight while the ring is replaced are counted through the new ring, or as they are made if
+     * there is none.
+     *
+     * @param ringSize the number of requests the ring holds, rounded up to a power of two, must be > 0, or 0 to
+     *                 count requests as they are made.
+     * @param flushOnRead true if zeitgeist(), trending() and windowedPeakLoad() should see every request
+     *                    recorded before them.
+     */
+    public void setAsyncAnalytics(int ringSize, boolean flushOnRead) {
+        RequestEventRing old = events;
+        this.flushOnRead = flushOnRead;
+        events = ringSize > 0 ? new RequestEventRing(ringSize, this::applyEvent) : null;
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * Set how quickly the scores of decayedTrending() fade: a request counts half as much after each half-life.
+     * The scores so far are forgotten. The half-life is 300 seconds unless this is called.
+     *
+     * @param halfLifeSeconds the half-life of a score, in seconds, must be > 0.
+     */
+    public void setDecayHalfLife(double halfLifeSeconds) {
+        flushEvents();
+        decayedTracker = new DecayedTracker(halfLifeSeconds);
+    }
+
+    /**
+     * Set where shortestPath() finds the links between pages.
+     *
+     * @param links the links between pages, or null to fetch them from the wiki pages are read from.
+     */
+    public void setLinkProvider(LinkProvider links) {
+        this.links = links != null ? links : new WikiLinks(wiki);
+        LinkCache cache = linkCache;
+        if (cache != null) {
+            setLinkCache(cache.getCapacity(), cache.getTimeout(), cache.getMaxBytes());
+        }
+    }
+
+    /**
+     * Cache the links that shortestPath() fetches, both the links on pages and the links to them, for all
+     * searches. Links stay cached for at most timeoutSeconds after they are fetched, so a search may miss links
+     * added since. The pages most searches pass through are kept over those reached only once. Links already
+     * cached are forgotten. Links are not cached unless this is called.
+     *
+     * @param capacity the most pages whose links in one direction are cached at once, must be > 0, or 0 to stop
+     *                 caching links.
+     * @param timeoutSeconds how long, in seconds, links stay cached after they are fetched, must be > 0.
+     * @param maxBytes the most memory, estimated in bytes, that the cached links take, must be > 0.
+     */
+    public void setLinkCache(int capacity, int timeoutSeconds, long maxBytes) {
+        linkCache = capacity > 0 ? new LinkCache(links, capacity, timeoutSeconds, maxBytes) : null;
+    }
+
+    /**
+     * Answer shortestPath() from a snapshot of the links between pages instead of fetching them. The snapshot is
+     * read into memory once, or mapped if it is a graph file written by LinkGraphIngest; searches then take
+     * milliseconds, but do not see links made since. Pages that are not in the snapshot have no path to or from
+     * them.
+     *
+     * @param edgeListFile a graph file written by LinkGraphIngest, or a UTF-8 file listing one link per line, as
+     *                     the title of the page the link is on, a tab, and the title of the page it links to, or
+     *                     null to fetch links again.
+     * @throws IOException if the file cannot be read, is a graph file of another version, or a line is not a link.
+     */
+    public void setLinkGraph(String edgeListFile) throws IOException {
+        if (edgeListFile == null) {
+            linkGraph = null;
+        } else {
+            Path file = Paths.get(edgeListFile);
+            linkGraph = LinkGraph.isGraphFile(file) ? LinkGraph.open(file) : LinkGraph.load(file);
+        }
+        linkGraphFile = edgeListFile;
+    }
+
+    /**
+     * Let shortestPath() fetch the links of many pages at once. Each step of a search fetches the links of every
+     * page it has just reached together, on a pool of threads shared by all searches, so no more than
+     * maxInFlight fetches are ever made at once. Searches find the same paths as when fetching one page at a time.
+     * Links are fetched one page at a time unless this is called.
+     *
+     * @param maxInFlight the most link fetches made at once, must be > 0; 1 fetches them on the searching thread.
+     */
+    public void setPathConcurrency(int maxInFlight) {
+        ExecutorService old = linkFetchers;
+        if (maxInFlight > 1) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxInFlight, maxInFlight, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "link-fetch-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            linkFetchers = pool;
+        } else {
+            linkFetchers = null;
+        }
+        pathConcurrency = Math.max(1, maxInFlight);
+        // searches already running finish the fetches they started, then fetch on their own threads
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Keep the cached copies of frequently read pages fresh. Once a cached page was fetched the given fraction
+     * of the staleness interval ago, the next getPage() for it returns the cached text and also fetches the page
+     * again in the background, replacing the cached copy when the fetch completes.
+     *
+     * @param fraction the fraction of the staleness interval after which a read page is fetched again, must be
+     *                 > 0, or 0 to stop refreshing pages ahead of time.
+     */
+    public void setRefreshAhead(double fraction) {
+        refreshAhead = fraction;
+        wikiBuffer.setRefreshAhead(fraction > 0 ? this::fetchPage : null, fraction);
+    }
+
+    /**
+     * Fetch a page from Wikipedia, in the storage mode of this mediator.
+     *
+     * @param pageTitle the title of the page.
+     * @return the page, or null if there is no page with this title.
+     */
+    private WikiPage fetchPage(String pageTitle) {
+        String text = wiki.getPageText(pageTitle);
+        return text.equals("") ? null : newPage(pageTitle, text);
+    }
+
+    /**
+     * Create a page to cache, fetched now, in the storage mode of this mediator.
+     *
+     * @param pageTitle the title of the page.
+     * @param text the text of the page.
+     * @return the page.
+     */
+    private WikiPage newPage(String pageTitle, String text) {
+        return newPage(pageTitle, text, System.currentTimeMillis());
+    }
+
+    /**
+     * Create a page to cache, in the storage mode of this mediator.
+     *
+     * @param pageTitle the title of the page.
+     * @param text the text of the page.
+     * @param fetchedAt when the text was fetched from Wikipedia, in milliseconds since the epoch.
+     * @return the page.
+     */
+    private WikiPage newPage(String pageTitle, String text, long fetchedAt) {
+        return arena == null ? new WikiPage(pageTitle, text, fetchedAt)
+                : new WikiPage(pageTitle, text, fetchedAt, arena);
     }
 
     /**
@@ -64,8 +454,7 @@ public class WikiMediator {
     public List<String> search(String query, int limit) {
         long currentTime = System.currentTimeMillis() / 1000;
         ArrayList<String> searchResults = wiki.search(query, limit);
-        trackRequest(query, currentTime);
-        allRequestsTracker.add(currentTime);
+        recordEvent(query, currentTime, true);
         return searchResults;
     }
 
@@ -78,18 +467,186 @@ public class WikiMediator {
      */
     public String getPage(String pageTitle) {
         long currentTime = System.currentTimeMillis() / 1000;
+        // concurrent misses for the same title share a single load, from disk or upstream
+        String[] fetched = new String[1];
+        WikiPage page = wikiBuffer.get(pageTitle, title -> {
+            DiskPageStore store = diskTier;
+            DiskPageStore.Page stored = store == null ? null : store.read(title);
+            if (stored != null) {
+                // a page read from disk is as old as when it was fetched, not as when it was read
+                diskHits.increment();
+                fetched[0] = stored.text;
+                return newPage(title, stored.text, stored.fetchedAt);
+            }
+            fetched[0] = wiki.getPageText(title);
+            upstreamFetches.increment();
+            return fetched[0].equals("") ? null : newPage(title, fetched[0], System.currentTimeMillis());
+        });
+
         String text;
-        try {
-            text = wikiBuffer.get(pageTitle).getText();
-        } catch (NoSuchElementException e) {
+        if (fetched[0] != null) {
+            text = fetched[0];
+        } else {
+            memoryHits.increment();
+            text = page == null ? "" : page.getText();
+        }
+
+        // an off-heap page that was evicted after get() returned it reads as null
+        if (text == null) {
             text = wiki.getPageText(pageTitle);
+            upstreamFetches.increment();
+        }
+        recordEvent(pageTitle, currentTime, true);
+        return text;
+    }
+
+    /**
+     * Given a list of page titles, return the texts of the Wikipedia pages that match them. Cached pages are read
+     * from the cache, and the pages that are not are fetched from Wikipedia together, up to 50 pages per query.
+     * Each title counts as one getPage() request for zeitgeist() and trending(), and the whole call counts as
+     * one request for windowedPeakLoad().
+     *
+     * @param pageTitles the titles of Wikipedia pages.
+     * @return a Map from each title in pageTitles to the text of the Wikipedia page with that title, in the order
+     * of pageTitles. A title for which no page is found maps to an empty String.
+     */
+    public Map<String, String> getPages(List<String> pageTitles) {
+        long currentTime = System.currentTimeMillis() / 1000;
+        Map<String, String> texts = new LinkedHashMap<>();
+        wikiBuffer.getAll(pageTitles).forEach((title, page) -> {
+            // an off-heap page that was evicted after getAll() returned it reads as null
+            String text = page.getText();
+            if (text != null) {
+                texts.put(title, text);
+                memoryHits.increment();
+            }
+        });
+
+        List<String> misses = new ArrayList<>();
+        DiskPageStore store = diskTier;
+        for (String title : new LinkedHashSet<>(pageTitles)) {
+            if (texts.containsKey(title)) {
+                continue;
+            }
+            String text = store == null ? null : store.get(title);
+            if (text != null) {
+                texts.put(title, text);
+                diskHits.increment();
+            } else {
+                misses.add(title);
+            }
+        }
+
+        Map<String, String> fetched = fetchPageTexts(misses);
+        upstreamFetches.add(misses.size());
+        texts.putAll(fetched);
+
+        List<WikiPage> pages = new ArrayList<>();
+        fetched.forEach((title, text) -> {
             if (!text.equals("")) {
-                wikiBuffer.put(new WikiPage(pageTitle, text));
+                pages.add(newPage(title, text));
             }
+        });
+        wikiBuffer.putAll(pages).forEach(WikiPage::release);
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String title : pageTitles) {
+            result.put(title, texts.get(title));
+            recordEvent(title, currentTime, false);
+        }
+        recordEvent(null, currentTime, true);
+        return result;
+    }
+
+    /**
+     * Fetch the texts of many pages from Wikipedia, asking for up to 50 pages in each query.
+     *
+     * @param pageTitles the titles of the pages, without duplicates.
+     * @return a Map from each title in pageTitles to the text of the page, or an empty String if there is no page
+     * with that title.
+     */
+    private Map<String, String> fetchPageTexts(List<String> pageTitles) {
+        Map<String, String> texts = new HashMap<>();
+        for (int i = 0; i < pageTitles.size(); i += TITLES_PER_QUERY) {
+            List<String> chunk = pageTitles.subList(i, Math.min(i + TITLES_PER_QUERY, pageTitles.size()));
+            try {
+                fetchChunk(chunk, texts);
+            } catch (IOException | RuntimeException e) {
+                // fall back to one query per page for whatever the failed query did not return
+                for (String title : chunk) {
+                    texts.computeIfAbsent(title, wiki::getPageText);
+                }
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * Fetch the texts of up to 50 pages from Wikipedia in one query, following continuations until the query
+     * is complete.
+     *
+     * @param pageTitles the titles of the pages, at most 50.
+     * @param texts the Map to put each title and the text of its page, or an empty String, into.
+     * @throws IOException if the query fails or its response cannot be read.
+     */
+    private void fetchChunk(List<String> pageTitles, Map<String, String> texts) throws IOException {
+        String joined = String.join("|", pageTitles);
+        // titles come back normalized ("foo" as "Foo"), so remember which requested titles each one answers
+        Map<String, List<String>> requested = new HashMap<>();
+        for (String title : pageTitles) {
+            requested.computeIfAbsent(title, t -> new ArrayList<>()).add(title);
+        }
+
+        List<String> continuation = new ArrayList<>();
+        do {
+            List<String> params = new ArrayList<>(List.of("prop", "revisions", "rvprop", "content",
+                    "titles", joined));
+            params.addAll(continuation);
+            JsonObject response;
+            try (okhttp3.Response r = wiki.basicGET("query", params.toArray(new String[0]))) {
+                if (r == null || r.body() == null) {
+                    throw new IOException("no response for " + joined);
+                }
+                response = JsonParser.parseString(r.body().string()).getAsJsonObject();
+            }
+
+            JsonObject query = response.getAsJsonObject("query");
+            if (query.has("normalized")) {
+                for (JsonElement e : query.getAsJsonArray("normalized")) {
+                    String from = e.getAsJsonObject().get("from").getAsString();
+                    String to = e.getAsJsonObject().get("to").getAsString();
+                    List<String> titles = requested.remove(from);
+                    if (titles != null) {
+                        requested.computeIfAbsent(to, t -> new ArrayList<>()).addAll(titles);
+                    }
+                }
+            }
+            for (Map.Entry<String, JsonElement> e : query.getAsJsonObject("pages").entrySet()) {
+                JsonObject page = e.getValue().getAsJsonObject();
+                String text = "";
+                if (page.has("revisions")) {
+                    text = page.getAsJsonArray("revisions").get(0).getAsJsonObject().get("*").getAsString();
+                } else if (!page.has("missing") && !page.has("invalid")) {
+                    // the text of this page is in a later continuation of the query
+                    continue;
+                }
+                for (String title : requested.getOrDefault(page.get("title").getAsString(), List.of())) {
+                    texts.put(title, text);
+                }
+            }
+
+            continuation.clear();
+            if (response.has("continue")) {
+                for (Map.Entry<String, JsonElement> e : response.getAsJsonObject("continue").entrySet()) {
+                    continuation.add(e.getKey());
+                    continuation.add(e.getValue().getAsString());
+                }
+            }
+        } while (!continuation.isEmpty());
+
+        for (String title : pageTitles) {
+            texts.putIfAbsent(title, "");
         }
-        trackRequest(pageTitle, currentTime);
-        allRequestsTracker.add(currentTime);
-        return text;
     }
 
     /**
@@ -104,12 +661,10 @@ public class WikiMediator {
      */
     public List<String> zeitgeist(int limit) {
         long currentTime = System.currentTimeMillis() / 1000;
-        allRequestsTracker.add(currentTime);
-        //sort requestTracker based on how many times each request was made and map the requests to their String forms
-        synchronized (requestsTracker) {
-            return requestsTracker.stream().sorted((r1, r2) -> r2.getCountList().size() - r1.getCountList().size())
-                    .limit(limit).map(Request::getRequestString).collect(Collectors.toList());
-        }
+        recordEvent(null, currentTime, true);
+        awaitEvents();
+        HeavyHitters approximate = heavyHitters;
+        return approximate != null ? approximate.mostCommon(limit) : requestsTracker.mostCommon(limit);
     }
 
     /**
@@ -125,20 +680,31 @@ public class WikiMediator {
      */
     public List<String> trending(int timeLimitInSeconds, int maxItems) {
         long currentTime = System.currentTimeMillis() / 1000;
-        ArrayList<Request> filteredRequestTracker = new ArrayList<>();
-        //create a filteredRequestTracker by filtering out all request times that are outside the time range
-        synchronized (requestsTracker) {
-            requestsTracker.forEach(request -> {
-                try {
-                    filteredRequestTracker.add(request.deepFilteredCopy(currentTime, timeLimitInSeconds));
-                } catch (NoRecentRequestsException ignored) {}
-            });
-        }
-        allRequestsTracker.add(currentTime);
-        synchronized (requestsTracker) {
-            return filteredRequestTracker.stream().sorted((r1, r2) -> r2.getCountList().size() - r1.getCountList().size())
-                    .limit(maxItems).map(Request::getRequestString).collect(Collectors.toList());
+        recordEvent(null, currentTime, true);
+        awaitEvents();
+        HeavyHitters approximate = heavyHitters;
+        if (approximate != null) {
+            return approximate.mostCommonSince(currentTime, timeLimitInSeconds, maxItems);
         }
+        return requestsTracker.mostCommonSince(currentTime, timeLimitInSeconds, maxItems);
+    }
+
+    /**
+     * Similar in function to trending(), but weighs every search() and getPage() request by how recent it is
+     * rather than counting those in a fixed time frame: a request adds 1 to the score of its String when it is
+     * made, which halves every half-life after that (see setDecayHalfLife()). Only one score and time are kept
+     * per String, however many times it was requested.
+     *
+     * @param maxItems the maximum number of Strings in the returned List, must be >= 0.
+     * @return a List containing Strings used in search() and getPage() requests, sorted by their current scores
+     * in non-increasing order, with Strings of equal scores in the order they were first requested. The size of
+     * the List is at most maxItems.
+     */
+    public List<String> decayedTrending(int maxItems) {
+        long currentTime = System.currentTimeMillis() / 1000;
+        recordEvent(null, currentTime, true);
+        awaitEvents();
+        return decayedTracker.mostPopular(maxItems);
     }
 
     /**
@@ -151,24 +717,9 @@ public class WikiMediator {
      */
     public int windowedPeakLoad(int timeWindowInSeconds) {
         long currentTime = System.currentTimeMillis() / 1000;
-        ArrayList<Long> requestsInWindow;
-        int peakLoad = 0;
-        //try all possible starting points for the time window to determine peakLoad
-        synchronized (allRequestsTracker) {
-            for (int i = 0; i < allRequestsTracker.size(); i++) {
-                requestsInWindow = new ArrayList<>();
-                for (int j = i; j < allRequestsTracker.size(); j++) {
-                    if (allRequestsTracker.get(j) >= allRequestsTracker.get(i) + timeWindowInSeconds) {
-                        break;
-                    }
-                    requestsInWindow.add(allRequestsTracker.get(j));
-                }
-                if (requestsInWindow.size() > peakLoad) {
-                    peakLoad = requestsInWindow.size();
-                }
-            }
-        }
-        allRequestsTracker.add(currentTime);
+        awaitEvents();
+        int peakLoad = allRequestsTracker.peak(timeWindowInSeconds);
+        recordEvent(null, currentTime, true);
         return peakLoad;
     }
 
@@ -182,6 +733,56 @@ public class WikiMediator {
         return windowedPeakLoad(30);
     }
 
+    /**
+     * Record a request for zeitgeist(), trending() and windowedPeakLoad(), through the event ring if there is one.
+     *
+     * @param request the String for which getPage() or search() was called, or null for other requests.
+     * @param time the system time of the request, in seconds.
+     * @param load true if the request counts towards windowedPeakLoad().
+     */
+    private void recordEvent(String request, long time, boolean load) {
+        while (true) {
+            RequestEventRing ring = events;
+            if (ring == null) {
+                applyEvent(request, time, load);
+                return;
+            }
+            // a ring refuses events only once it is closed, which happens after it has been replaced
+            if (ring.publish(request, time, load)) {
+                return;
+            }
+        }
+    }
+
+    private void applyEvent(String request, long time, boolean load) {
+        if (request != null) {
+            trackRequest(request, time);
+        }
+        if (load) {
+            allRequestsTracker.record(time);
+        }
+    }
+
+    /**
+     * Wait for the requests recorded so far to be counted, if reads are to see them.
+     */
+    private void awaitEvents() {
+        RequestEventRing ring = events;
+        if (ring != null && flushOnRead) {
+            ring.flush();
+        }
+    }
+
+    /**
+     * Wait for the requests recorded so far to be counted.
+     */
+    private void flushEvents() {
+        RequestEventRing ring = events;
+        if (ring != null) {
+            ring.flush();
+        }
+    }
+
     /**
      * A helper method to track Strings used in search() and getPage() requests for use when executing
      * zeitgeist() and trending().
@@ -190,15 +791,13 @@ public class WikiMediator {
      * @param time the system time at which getPage() or search() was called, in seconds.
      */
     private void trackRequest(String request, long time) {
-        synchronized (requestsTracker) {
-            for (Request value : requestsTracker) {
-                if (value.getRequestString().equals(request)) {
-                    value.addInstance(time);
-                    return;
-                }
-            }
+        HeavyHitters approximate = heavyHitters;
+        if (approximate != null) {
+            approximate.record(request, time);
+        } else {
+            requestsTracker.record(request, time);
         }
-        requestsTracker.add(new Request(request, time));
+        decayedTracker.record(request, time);
     }
 
     /**
@@ -217,19 +816,36 @@ public class WikiMediator {
         List<List<String>> path = new ArrayList<>();
 
         long currentTime = System.currentTimeMillis() / 1000;
-        allRequestsTracker.add(currentTime);
+        recordEvent(null, currentTime, true);
 
         if (Objects.equals(pageTitle1, pageTitle2)) {
             return List.of(pageTitle1);
         }
 
-        BFS search = new BFS(wiki, path, pageTitle1, pageTitle2);
+        LinkGraph graph = linkGraph;
+        if (graph != null) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+            List<String> found = graph.shortestPath(pageTitle1, pageTitle2, deadline);
+            if (found == null) {
+                throw new TimeoutException();
+            }
+            return found;
+        }
+
+        LinkCache cache = linkCache;
+        BFS search = new BFS(cache != null ? cache : links, linkFetchers, path, pageTitle1, pageTitle2);
         Thread t = new Thread(search);
         Timer timer = new Timer();
         timer.schedule(new Timeout(t, timer), timeout * 1000L);
         t.start();
 
-        while(t.isAlive());
+        try {
+            t.join();
+        } catch (InterruptedException ie) {
+            t.interrupt();
+            Thread.currentThread().interrupt();
+        }
+        timer.cancel();
 
         if (path.isEmpty()) {
             throw new TimeoutException();
@@ -243,6 +859,7 @@ public class WikiMediator {
      */
 
     public void saveState() {
+        flushEvents();
         try {
             File stateFile = new File("local/state.txt");
             if (stateFile.createNewFile()) {
@@ -271,10 +888,54 @@ public class WikiMediator {
                 Gson gson = new GsonBuilder().create();
                 String line = scanner.nextLine();
                 WikiMediatorState state = gson.fromJson(line, WikiMediatorState.class);
-                wikiBuffer = new FSFTBuffer<>();
+                // states saved before eviction policies existed have none
+                EvictionPolicy policy = state.policy == null ? EvictionPolicy.LRU : state.policy;
+                if (state.weighted) {
+                    wikiBuffer = new ConcurrentFSFTBuffer<>(state.maxWeight, state.timeout, WikiPage::storedSize,
+                            policy);
+                } else {
+                    wikiBuffer = new ConcurrentFSFTBuffer<>(state.capacity, state.timeout, policy);
+                }
+                arena = null;
+                if (state.offHeap) {
+                    arena = new OffHeapArena();
+                    state.buffer.replaceAll((title, page) -> new WikiPage(title, page.getText(), page.getFetchedAt(), arena));
+                }
+                wikiBuffer.setRemovalListener(this::pageRemoved);
+                setRefreshAhead(state.refreshAhead);
+                try {
+                    setDiskTier(state.diskTierDirectory, state.diskTierMaxBytes, state.diskTierMaxAge);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
                 wikiBuffer.loadState(state);
-                requestsTracker = state.requestsTracker;
-                allRequestsTracker = state.allRequestsTracker;
+                if (state.offHeap) {
+                    Set<String> loaded = wikiBuffer.getBuffer().keySet();
+                    state.buffer.forEach((title, page) -> {
+                        if (!loaded.contains(title)) {
+                            page.release();
+                        }
+                    });
+                }
+                flushEvents();
+                requestsTracker = new RequestTracker(state.requestsTracker);
+                heavyHitters = state.heavyHitters;
+                // states saved before request times were bucketed list every time instead
+                allRequestsTracker = state.allRequests != null ? new LoadTracker(state.allRequests)
+                        : new LoadTracker(state.allRequestsTracker);
+                // states saved before decayed scores existed have none
+                decayedTracker = state.decayHalfLife > 0
+                        ? new DecayedTracker(state.decayHalfLife, state.decayedScores)
+                        : new DecayedTracker(DEFAULT_HALF_LIFE);
+                setRetention(state.retention != null ? state.retention : RetentionPolicy.UNBOUNDED);
+                setAsyncAnalytics(state.analyticsRingSize, state.analyticsFlushOnRead);
+                setPathConcurrency(state.pathConcurrency);
+                setLinkCache(state.linkCacheCapacity, state.linkCacheTimeout, state.linkCacheMaxBytes);
+                try {
+                    setLinkGraph(state.linkGraphFile);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
             }
         } catch (FileNotFoundException fnfe) {
             // File doesn't exist (this is fine)
@@ -284,107 +945,81 @@ public class WikiMediator {
     /**
      * Below is a collection of observer methods that allow the construction of WikiMediatorState.
      */
-    public FSFTBuffer<WikiPage> getFSFTBuffer() { return wikiBuffer; }
-    public List<Request> getRequestsTracker() { return requestsTracker; }
-    public List<Long> getAllRequestTracker() { return allRequestsTracker; }
-}
+    public Buffer<WikiPage> getFSFTBuffer() { return wikiBuffer; }
+    public OffHeapArena getOffHeapArena() { return arena; }
+    public double getRefreshAhead() { return refreshAhead; }
+    public DiskPageStore getDiskTier() { return diskTier; }
+    public RetentionPolicy getRetention() { return retention; }
+    public boolean isFlushOnRead() { return flushOnRead; }
+    public int getPathConcurrency() { return pathConcurrency; }
+    public String getLinkGraphFile() { return linkGraphFile; }
 
-class BFS implements Runnable {
-    private final String start;
-    private final String target;
-    private final Wiki wiki;
-    private final List<List<String>> path;
+    /**
+     * Below are the capacity, timeout and memory budget of the link cache, all 0 if links are not cached.
+     */
+    public int getLinkCacheCapacity() {
+        LinkCache cache = linkCache;
+        return cache == null ? 0 : cache.getCapacity();
+    }
 
-    public BFS(Wiki wiki, List<List<String>> path, String start, String target) {
-        this.start = start;
-        this.target = target;
-        this.wiki = wiki;
-        this.path = path;
+    public int getLinkCacheTimeout() {
+        LinkCache cache = linkCache;
+        return cache == null ? 0 : cache.getTimeout();
+    }
+
+    public long getLinkCacheMaxBytes() {
+        LinkCache cache = linkCache;
+        return cache == null ? 0 : cache.getMaxBytes();
     }
 
     /**
-     * Find all paths between two Wikipedia pages using BFS
-     *
-     * @param start the starting page
-     * @param target the target page
+     * Below are the fractions of the lookups of links on pages and of links to pages that the link cache
+     * answered since it was set up, each 1 if there were none or links are not cached.
      */
-    private void bfs(String start, String target) {
-        List<String> children = wiki.getLinksOnPage(true, start);
-        Collections.sort(children);
-
-        // 1 degree of separation
-        if (children.contains(target)) {
-            path.add(Arrays.asList(start, target));
-            return;
-        }
+    public double getForwardLinkHitRate() {
+        LinkCache cache = linkCache;
+        return cache == null ? 1.0 : cache.hitRate(true);
+    }
 
-        List<String> linksToTarget = wiki.whatLinksHere(target);
-        int degrees = 2;
+    public double getBackwardLinkHitRate() {
+        LinkCache cache = linkCache;
+        return cache == null ? 1.0 : cache.hitRate(false);
+    }
+    public double getDecayHalfLife() { return decayedTracker.getHalfLife(); }
+    public List<DecayedScore> getDecayedScores() { return decayedTracker.scores(); }
 
-        while (true) {
-            for (String c : children) {
-                if (degrees == 2 && linksToTarget.contains(c)) {
-                    path.add(Arrays.asList(start, c, target));
-                    return;
-                }
+    /**
+     * @return the number of requests the event ring holds, or 0 if requests are counted as they are made.
+     */
+    public int getAnalyticsRingSize() {
+        RequestEventRing ring = events;
+        return ring == null ? 0 : ring.capacity();
+    }
 
-                if (degrees >= 3) {
-                    List<String> grandchildren = wiki.getLinksOnPage(true, c);
-                    Collections.sort(grandchildren);
+    /**
+     * @return a copy of the approximate counts of requests, or null if requests are counted exactly.
+     */
+    public HeavyHitters getHeavyHitters() {
+        HeavyHitters approximate = heavyHitters;
+        return approximate == null ? null : approximate.copy();
+    }
 
-                    for (String gc : grandchildren) {
-                        if (degrees == 3 && linksToTarget.contains(gc)) {
-                            path.add(Arrays.asList(start, c, gc, target));
-                            return;
-                        }
+    /**
+     * Below are the number of getPage() requests answered by each tier: the in-memory cache, the disk tier
+     * and Wikipedia. Requests that waited for another request's load count as cache hits.
+     */
+    public long getMemoryHits() { return memoryHits.sum(); }
+    public long getDiskHits() { return diskHits.sum(); }
+    public long getUpstreamFetches() { return upstreamFetches.sum(); }
 
-                        if (degrees >= 4) {
-                            List<String> greatgrandchildren = wiki.getLinksOnPage(true, gc);
-                            Collections.sort(greatgrandchildren);
-
-                            for (String ggc : greatgrandchildren) {
-                                if (degrees == 4 && linksToTarget.contains(ggc)) {
-                                    path.add(Arrays.asList(start, c, gc, ggc, target));
-                                    return;
-                                }
-
-                                if (degrees >= 5) {
-                                    //great-great-gc
-                                    List<String> g2grandchildren = wiki.getLinksOnPage(true, ggc);
-                                    Collections.sort(g2grandchildren);
-
-                                    for (String g2gc : g2grandchildren) {
-                                        if (degrees == 5 && linksToTarget.contains(g2gc)) {
-                                            path.add(Arrays.asList(start, c, gc, ggc, g2gc, target));
-                                            return;
-                                        }
-
-                                        if (degrees >= 6) {
-                                            List<String> g3grandchildren = wiki.getLinksOnPage(true, g2gc);
-                                            Collections.sort(g3grandchildren);
-
-                                            for (String g3gc : g3grandchildren) {
-                                                if (degrees == 6 && linksToTarget.contains(g3gc)) {
-                                                    path.add(Arrays.asList(start, c, gc, ggc, g2gc, g3gc, target));
-                                                    return;
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            degrees++;
-        }
-    }
+    /**
+     * @return the statistics of the page cache since it was created or last loaded by loadState(): hits, misses,
+     * pages added, refused, evicted and timed out, and how long loading missed pages took.
+     */
+    public CacheStats getCacheStats() { return wikiBuffer.stats(); }
 
-    @Override
-    public void run() {
-        bfs(start, target);
-    }
+    public List<Request> getRequestsTracker() { return requestsTracker.requests(); }
+    public TimeBuckets getAllRequestTracker() { return allRequestsTracker.history(); }
 }
 
 class Timeout extends TimerTask {
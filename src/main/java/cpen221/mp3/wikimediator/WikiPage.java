@@ -2,17 +2,41 @@ package cpen221.mp3.wikimediator;
 
 import cpen221.mp3.fsftbuffer.Bufferable;
 
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
 public class WikiPage implements Bufferable {
+
+    /* frees the blocks of pages released once unreachable */
+    private static final Cleaner CLEANER = Cleaner.create();
+
     private final String title;
     private final String text;
+    private final long fetchedAt;
+
+    private final transient OffHeapArena arena;
+    private transient long handle = -1;
+    private transient int storedLength;
+    private transient int textLength;
+    private transient Cleaner.Cleanable cleanable;
 
     /* Representation Invariant */
-    // title and text are not null
+    // title is not null
+    // fetchedAt is a System.currentTimeMillis() time no later than now
+    // exactly one of text and arena is null
+    // if arena is not null, either handle is -1 (released) or it is a live block of arena holding storedLength bytes
+    //   that inflate to the textLength bytes of the UTF-8 encoding of the page's text
+    // if cleanable is not null, it frees the block of handle, and handle is not freed otherwise
     // title exists as the actual title of a Wikipedia page
-    // text corresponds to the actual text of the Wikipedia page with the title of the page being title
+    // the text corresponds to the actual text of the Wikipedia page with the title of the page being title
 
     /* Abstraction Function */
-    // An instance of WikiPage represents a page on Wikipedia.
+    // An instance of WikiPage represents a page on Wikipedia as it was when fetched at fetchedAt. Its text is either
+    // held as a String or, to keep it off the garbage-collected heap, compressed in a block of an OffHeapArena.
 
     /**
      * Private method to check that the representation invariant holds, not present in any of the final
@@ -21,19 +45,79 @@ public class WikiPage implements Bufferable {
     private void checkRep() {
         WikiMediator mediator = new WikiMediator(100, 10);
         assert !title.equals(null);
-        assert !text.equals(null);
-        assert mediator.getPage(title).equals(text);
+        assert (text == null) != (arena == null);
+        assert mediator.getPage(title).equals(getText());
     }
 
     /**
-     * Creates a WikiPage instance given a title and text.
+     * Creates a WikiPage instance given a title and text, fetched now.
      *
      * @param title the title of the Wikipedia page.
      * @param text the text of the Wikipedia page.
      */
     public WikiPage(String title, String text) {
+        this(title, text, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a WikiPage instance given a title, text and the time the text was fetched from Wikipedia.
+     *
+     * @param title the title of the Wikipedia page.
+     * @param text the text of the Wikipedia page.
+     * @param fetchedAt when the text was fetched, in milliseconds since the epoch.
+     */
+    public WikiPage(String title, String text, long fetchedAt) {
         this.title = title;
         this.text = text;
+        this.fetchedAt = fetchedAt;
+        this.arena = null;
+    }
+
+    /**
+     * Creates a WikiPage instance, fetched now, whose text is stored compressed in an off-heap arena.
+     * The arena block is held until release() is called.
+     *
+     * @param title the title of the Wikipedia page.
+     * @param text the text of the Wikipedia page.
+     * @param arena the arena to store the compressed text in.
+     */
+    public WikiPage(String title, String text, OffHeapArena arena) {
+        this(title, text, System.currentTimeMillis(), arena);
+    }
+
+    /**
+     * Creates a WikiPage instance whose text is stored compressed in an off-heap arena.
+     * The arena block is held until release() is called.
+     *
+     * @param title the title of the Wikipedia page.
+     * @param text the text of the Wikipedia page.
+     * @param fetchedAt when the text was fetched, in milliseconds since the epoch.
+     * @param arena the arena to store the compressed text in.
+     */
+    public WikiPage(String title, String text, long fetchedAt, OffHeapArena arena) {
+        this.title = title;
+        this.text = null;
+        this.fetchedAt = fetchedAt;
+        this.arena = arena;
+
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(utf8);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(utf8.length / 3 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                compressed.write(chunk, 0, n);
+            }
+            byte[] bytes = compressed.toByteArray();
+            this.textLength = utf8.length;
+            this.storedLength = bytes.length;
+            this.handle = arena.store(bytes, bytes.length);
+        } finally {
+            deflater.end();
+        }
     }
 
     /**
@@ -44,10 +128,118 @@ public class WikiPage implements Bufferable {
     }
 
     /**
-     * @return the text of this.
+     * @return when the text of this was fetched from Wikipedia, in milliseconds since the epoch.
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * @return the text of this, or null if this page was stored off-heap and has been released.
      */
     public String getText() {
-        return text;
+        if (text != null) {
+            return text;
+        }
+
+        synchronized (this) {
+            if (handle == -1) {
+                return null;
+            }
+
+            byte[] compressed = new byte[storedLength];
+            arena.load(handle, compressed, storedLength);
+            byte[] utf8 = new byte[textLength];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+                while (n < textLength) {
+                    int inflated = inflater.inflate(utf8, n, textLength - n);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new DataFormatException("truncated");
+                    }
+                    n += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("corrupt off-heap page " + title, e);
+            } finally {
+                inflater.end();
+            }
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Return the off-heap memory holding the text of this to its arena. Does nothing
+     * for pages stored on the heap or pages that have already been released.
+     */
+    public synchronized void release() {
+        if (handle != -1) {
+            if (cleanable != null) {
+                cleanable.clean();
+            } else {
+                arena.free(handle, storedLength);
+            }
+            handle = -1;
+        }
+    }
+
+    /**
+     * Return the off-heap memory holding the text of this to its arena once nothing refers to this any more,
+     * or when release() is called, whichever comes first. Until then the text can still be read, so a page that
+     * other threads may be about to read can be let go of safely. Does nothing for pages stored on the heap or
+     * pages that have already been released.
+     */
+    public synchronized void releaseWhenUnreachable() {
+        if (handle != -1 && cleanable == null) {
+            // the action must not refer to this, or this would never become unreachable
+            OffHeapArena blockArena = arena;
+            long block = handle;
+            int length = storedLength;
+            cleanable = CLEANER.register(this, () -> blockArena.free(block, length));
+        }
+    }
+
+    /**
+     * @return true if the text of this is stored compressed off-heap.
+     */
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    /**
+     * @return the number of bytes in the UTF-8 encoding of the text of this.
+     */
+    public long textSize() {
+        if (text == null) {
+            return textLength;
+        }
+
+        long size = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes this page's text takes up where it is stored:
+     * the compressed size for off-heap pages, and the UTF-8 size otherwise.
+     */
+    public long storedSize() {
+        return text == null ? storedLength : textSize();
     }
 
     /**
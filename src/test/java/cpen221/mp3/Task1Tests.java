@@ -1,11 +1,20 @@
 package cpen221.mp3;
 
 import cpen221.mp3.fsftbuffer.Bufferable;
+import cpen221.mp3.fsftbuffer.CacheStats;
+import cpen221.mp3.fsftbuffer.Buffer;
+import cpen221.mp3.fsftbuffer.ConcurrentFSFTBuffer;
+import cpen221.mp3.fsftbuffer.EvictionPolicy;
 import cpen221.mp3.fsftbuffer.FSFTBuffer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 class T implements Bufferable {
@@ -82,4 +91,220 @@ public class Task1Tests {
         Assertions.assertThrows(NoSuchElementException.class, () -> buffer.get("3"));
 
     }
+
+    @Test
+    public void testGetRefreshes() throws InterruptedException {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(3, 2);
+
+        T a = new T(1);
+        Assertions.assertTrue(buffer.put(a));
+        Assertions.assertTrue(buffer.put(new T(2)));
+
+        TimeUnit.MILLISECONDS.sleep(1200);
+        Assertions.assertEquals(a, buffer.get("1"));
+
+        TimeUnit.MILLISECONDS.sleep(1200);
+        Assertions.assertEquals(a, buffer.get("1"));
+        Assertions.assertThrows(NoSuchElementException.class, () -> buffer.get("2"));
+        Assertions.assertEquals(1, buffer.getCurrentCapacity());
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws InterruptedException {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(3, 2);
+        buffer.setExpireAfterWrite(true);
+
+        T a = new T(1);
+        Assertions.assertTrue(buffer.put(a));
+        Assertions.assertTrue(buffer.put(new T(2)));
+
+        TimeUnit.MILLISECONDS.sleep(1200);
+        Assertions.assertEquals(a, buffer.get("1"));
+        Assertions.assertTrue(buffer.touch("2"));
+
+        // reading 1 did not keep it, but touching 2 did
+        TimeUnit.MILLISECONDS.sleep(1200);
+        Assertions.assertThrows(NoSuchElementException.class, () -> buffer.get("1"));
+        Assertions.assertEquals("2", buffer.get("2").id());
+    }
+
+    @Test
+    public void testRefreshAhead() throws InterruptedException {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(3, 2);
+        T a = new T(1);
+        T b = new T(1);
+        CountDownLatch reloaded = new CountDownLatch(1);
+        buffer.setRefreshAhead(id -> {
+            reloaded.countDown();
+            return b;
+        }, 0.5);
+
+        Assertions.assertTrue(buffer.put(a));
+        Assertions.assertSame(a, buffer.get("1"));
+        Assertions.assertEquals(1, reloaded.getCount());
+
+        // past half the timeout the old version is still returned while the new one loads
+        TimeUnit.MILLISECONDS.sleep(1100);
+        Assertions.assertSame(a, buffer.get("1"));
+        Assertions.assertTrue(reloaded.await(1, TimeUnit.SECONDS));
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assertions.assertSame(b, buffer.get("1"));
+    }
+
+    @Test
+    public void testEvictionOrder() {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(3, 100);
+
+        for (int i = 1; i <= 3; i++) {
+            Assertions.assertTrue(buffer.put(new T(i)));
+        }
+
+        buffer.get("2");
+        buffer.get("1");
+        buffer.get("3");
+        buffer.get("2");
+
+        // 1 is now the least recently accessed
+        Assertions.assertTrue(buffer.put(new T(4)));
+        Assertions.assertThrows(NoSuchElementException.class, () -> buffer.get("1"));
+
+        // 4 has not been accessed, so 3 goes next
+        Assertions.assertTrue(buffer.put(new T(5)));
+        Assertions.assertFalse(buffer.touch("3"));
+        Assertions.assertEquals(List.of("2", "4", "5"), buffer.getBufferIds());
+    }
+
+    @Test
+    public void testManyPut() {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(100000, 100);
+
+        for (int i = 0; i < 100000; i++) {
+            Assertions.assertTrue(buffer.put(new T(i)));
+        }
+
+        Assertions.assertEquals(100000, buffer.getCurrentCapacity());
+        Assertions.assertFalse(buffer.put(new T(100000)));
+    }
+
+    @Test
+    public void testWeighted() {
+        // each object weighs as much as its number
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(10, 100, t -> Long.parseLong(t.id()));
+
+        Assertions.assertTrue(buffer.put(new T(4)));
+        Assertions.assertTrue(buffer.put(new T(5)));
+        Assertions.assertFalse(buffer.put(new T(11)));
+
+        // nothing accessed, so nothing can be evicted
+        Assertions.assertFalse(buffer.put(new T(3)));
+        Assertions.assertEquals(9, buffer.getCurrentWeight());
+
+        buffer.get("4");
+        Assertions.assertTrue(buffer.put(new T(3)));
+        Assertions.assertEquals(8, buffer.getCurrentWeight());
+        Assertions.assertThrows(NoSuchElementException.class, () -> buffer.get("4"));
+
+        // evicts as many accessed objects as needed
+        buffer.get("5");
+        buffer.get("3");
+        Assertions.assertTrue(buffer.put(new T(9)));
+        Assertions.assertEquals(List.of("9"), buffer.getBufferIds());
+    }
+
+    @Test
+    public void testTinyLfuAlwaysAdmits() {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(3, 100, EvictionPolicy.TINY_LFU);
+
+        for (int i = 1; i <= 3; i++) {
+            Assertions.assertTrue(buffer.put(new T(i)));
+        }
+
+        // nothing has been accessed, but any object may be evicted
+        Assertions.assertTrue(buffer.put(new T(4)));
+        Assertions.assertEquals(3, buffer.getCurrentCapacity());
+        Assertions.assertEquals(EvictionPolicy.TINY_LFU, buffer.getEvictionPolicy());
+    }
+
+    @Test
+    public void testTinyLfuResistsScan() {
+        FSFTBuffer<T> lru = new FSFTBuffer<>(100, 100);
+        FSFTBuffer<T> tinyLfu = new FSFTBuffer<>(100, 100, EvictionPolicy.TINY_LFU);
+        int[] hotHits = new int[2];
+
+        for (int b = 0; b < 2; b++) {
+            FSFTBuffer<T> buffer = b == 0 ? lru : tinyLfu;
+            // a hot set of 50 objects, each requested five times
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 50; i++) {
+                    request(buffer, i);
+                }
+            }
+            // then a scan of objects requested once each, interleaved with requests for the hot set
+            for (int i = 1000; i < 3000; i++) {
+                request(buffer, i);
+                hotHits[b] += request(buffer, i % 50) ? 1 : 0;
+            }
+        }
+
+        for (int i = 0; i < 50; i++) {
+            Assertions.assertTrue(tinyLfu.touch(String.valueOf(i)));
+        }
+        Assertions.assertEquals(2000, hotHits[1]);
+        Assertions.assertTrue(hotHits[0] < hotHits[1]);
+    }
+
+    @Test
+    public void testGetAllPutAll() {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(3, 100);
+
+        // nothing accessed, so the fourth object is refused
+        T refused = new T(4);
+        Assertions.assertEquals(List.of(refused), buffer.putAll(List.of(new T(1), new T(2), new T(3), refused)));
+
+        Map<String, T> found = buffer.getAll(List.of("3", "9", "1"));
+        Assertions.assertEquals(List.of("3", "1"), List.copyOf(found.keySet()));
+
+        // getAll() counts as an access, so 3 and 1 can now be evicted, least recently read first
+        Assertions.assertEquals(List.of(), buffer.putAll(List.of(new T(5), new T(6))));
+        Assertions.assertEquals(Set.of("2", "5", "6"), Set.copyOf(buffer.getBufferIds()));
+    }
+
+    @Test
+    public void testStats() {
+        Buffer<T> buffer = new ConcurrentFSFTBuffer<>(2, 100, 4);
+
+        buffer.put(new T(1));
+        buffer.put(new T(2));
+        buffer.put(new T(3));
+        buffer.get("1");
+        Assertions.assertThrows(NoSuchElementException.class, () -> buffer.get("9"));
+        Assertions.assertEquals("3", buffer.get("3", id -> new T(3)).id());
+        Assertions.assertThrows(IllegalStateException.class, () -> buffer.get("4", id -> {
+            throw new IllegalStateException();
+        }));
+
+        CacheStats stats = buffer.stats();
+        Assertions.assertEquals(1, stats.getHitCount());
+        Assertions.assertEquals(3, stats.getMissCount());
+        Assertions.assertEquals(0.25, stats.getHitRate());
+        Assertions.assertEquals(3, stats.getPutCount());
+        Assertions.assertEquals(1, stats.getRejectionCount());
+        Assertions.assertEquals(1, stats.getEvictionCount());
+        Assertions.assertEquals(1, stats.getLoadCount());
+        Assertions.assertEquals(1, stats.getLoadFailureCount());
+        Assertions.assertEquals(2, Arrays.stream(stats.getLoadLatencyHistogram()).sum());
+        Assertions.assertTrue(stats.getLoadLatencyPercentile(100) >= stats.getLoadLatencyPercentile(50));
+    }
+
+    /* look an object up, adding it on a miss, as WikiMediator.getPage does */
+    private static boolean request(Buffer<T> buffer, int i) {
+        try {
+            buffer.get(String.valueOf(i));
+            return true;
+        } catch (NoSuchElementException e) {
+            buffer.put(new T(i));
+            return false;
+        }
+    }
 }
@@ -1,15 +1,24 @@
 package cpen221.mp3;
 
 import cpen221.mp3.fsftbuffer.Bufferable;
+import cpen221.mp3.fsftbuffer.Buffer;
+import cpen221.mp3.fsftbuffer.ConcurrentFSFTBuffer;
 import cpen221.mp3.fsftbuffer.FSFTBuffer;
+import cpen221.mp3.fsftbuffer.RemovalCause;
+import cpen221.mp3.server.WikiMediatorState;
+import cpen221.mp3.wikimediator.WikiPage;
+import com.google.gson.Gson;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 // Uses class T in Task1Tests
 
@@ -35,4 +44,188 @@ public class Task2Tests {
             System.out.println("InterruptedException");
         }
     }
+
+    @Test
+    public void testConcurrentManyPut() throws InterruptedException {
+        Buffer<T> buffer = new ConcurrentFSFTBuffer<>(5000, 100000, 8);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int finalI = i;
+            Thread t = new Thread(() -> buffer.put(new T(finalI)));
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assertions.assertEquals(5000, buffer.getCurrentCapacity());
+        Assertions.assertFalse(buffer.put(new T(5000)));
+    }
+
+    @Test
+    public void testConcurrentGlobalCapacity() {
+        Buffer<T> buffer = new ConcurrentFSFTBuffer<>(3, 100, 16);
+
+        for (int i = 1; i <= 3; i++) {
+            Assertions.assertTrue(buffer.put(new T(i)));
+        }
+        Assertions.assertFalse(buffer.put(new T(4)));
+
+        buffer.get("3");
+        buffer.get("1");
+        buffer.get("2");
+
+        // 3 is the least recently accessed object, whatever segment it lives in
+        Assertions.assertTrue(buffer.put(new T(4)));
+        Assertions.assertEquals(3, buffer.getCurrentCapacity());
+        Assertions.assertThrows(NoSuchElementException.class, () -> buffer.get("3"));
+        Assertions.assertFalse(buffer.put(new T(1)));
+    }
+
+    @Test
+    public void testConcurrentRefusedPutEvictsNothing() {
+        Buffer<T> buffer = new ConcurrentFSFTBuffer<>(10, 100, t -> Long.parseLong(t.id()), 4);
+        Assertions.assertTrue(buffer.put(new T(3)));
+        Assertions.assertTrue(buffer.put(new T(4)));
+        buffer.get("3");
+
+        // only 3 may be evicted, which would not make room for 9, so it stays
+        Assertions.assertFalse(buffer.put(new T(9)));
+        Assertions.assertEquals(7, buffer.getCurrentWeight());
+        Assertions.assertEquals("3", buffer.get("3").id());
+
+        // evicting 3 does make room for 5
+        Assertions.assertTrue(buffer.put(new T(5)));
+        Assertions.assertThrows(NoSuchElementException.class, () -> buffer.get("3"));
+        Assertions.assertEquals(9, buffer.getCurrentWeight());
+    }
+
+    @Test
+    public void testConcurrentLoadStateMatchesFSFTBuffer() {
+        WikiMediatorState state = new Gson().fromJson("{\"capacity\":2,\"timeout\":7,\"buffer\":{}}",
+                WikiMediatorState.class);
+        for (String title : List.of("A", "B", "C")) {
+            state.buffer.put(title, new WikiPage(title, "text of " + title));
+        }
+
+        // both kinds of buffer take the saved capacity and timeout
+        for (Buffer<WikiPage> buffer : List.of(new FSFTBuffer<WikiPage>(10, 100),
+                new ConcurrentFSFTBuffer<WikiPage>(10, 100, 4))) {
+            buffer.loadState(state);
+            Assertions.assertEquals(2, buffer.getCapacity());
+            Assertions.assertEquals(7, buffer.getTimeout());
+            Assertions.assertEquals(List.of("A", "B"), buffer.getBufferIds().stream().sorted()
+                    .collect(Collectors.toList()));
+            Assertions.assertFalse(buffer.put(new WikiPage("D", "text of D")));
+        }
+    }
+
+    @Test
+    public void testConcurrentGetAndPut() throws InterruptedException {
+        Buffer<T> buffer = new ConcurrentFSFTBuffer<>(100, 100, 4);
+        for (int i = 0; i < 100; i++) {
+            buffer.put(new T(i));
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int offset = i;
+            Thread t = new Thread(() -> {
+                for (int j = 0; j < 2000; j++) {
+                    int id = (j * 7 + offset) % 200;
+                    try {
+                        buffer.get(String.valueOf(id));
+                    } catch (NoSuchElementException e) {
+                        buffer.put(new T(id));
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assertions.assertTrue(buffer.getCurrentCapacity() <= 100);
+    }
+
+    @Test
+    public void testLoaderCoalescesMisses() throws InterruptedException {
+        Buffer<T> buffer = new ConcurrentFSFTBuffer<>(100, 100, 4);
+        AtomicInteger loads = new AtomicInteger();
+        T loaded = new T(1);
+        List<T> results = new ArrayList<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Thread t = new Thread(() -> {
+                T result = buffer.get("1", id -> {
+                    loads.incrementAndGet();
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(200);
+                    } catch (InterruptedException ignored) {}
+                    return loaded;
+                });
+                synchronized (results) {
+                    results.add(result);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(50, results.size());
+        for (T result : results) {
+            Assertions.assertSame(loaded, result);
+        }
+        Assertions.assertSame(loaded, buffer.get("1"));
+    }
+
+    @Test
+    public void testLoaderMissAndFailure() {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(1, 100);
+        Assertions.assertTrue(buffer.put(new T(1)));
+
+        // a hit does not load, and a null load is returned without being stored
+        Assertions.assertEquals("1", buffer.get("1", id -> null).id());
+        Assertions.assertNull(buffer.get("2", id -> null));
+        Assertions.assertEquals(1, buffer.getCurrentCapacity());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> buffer.get("3", id -> {
+            throw new IllegalStateException();
+        }));
+
+        // a failed load does not stop the next caller from loading
+        List<RemovalCause> causes = new ArrayList<>();
+        buffer.setRemovalListener((t, cause) -> causes.add(cause));
+        Assertions.assertEquals("3", buffer.get("3", id -> new T(3)).id());
+        Assertions.assertEquals(List.of(RemovalCause.EVICTED), causes);
+
+        // 3 has not been accessed, so a loaded 4 is returned but not stored
+        Assertions.assertEquals("4", buffer.get("4", id -> new T(4)).id());
+        Assertions.assertEquals(List.of(RemovalCause.EVICTED, RemovalCause.REJECTED), causes);
+        Assertions.assertEquals(List.of("3"), buffer.getBufferIds());
+    }
+
+    @Test
+    public void testLoaderStoreFailure() {
+        FSFTBuffer<T> buffer = new FSFTBuffer<>(1, 100);
+        Assertions.assertTrue(buffer.put(new T(1)));
+        buffer.get("1");
+
+        // storing the loaded 2 evicts 1, and the listener that hears of it throws
+        buffer.setRemovalListener((t, cause) -> {
+            throw new IllegalStateException();
+        });
+        Assertions.assertThrows(IllegalStateException.class, () -> buffer.get("2", id -> new T(2)));
+
+        // the failed store did not leave 2 marked as loading, so the next caller does not wait on it for ever
+        buffer.setRemovalListener(null);
+        Assertions.assertEquals("2", Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> buffer.get("2", id -> new T(2))).id());
+    }
 }
@@ -1,5 +1,33 @@
 package cpen221.mp3;
 
+import com.sun.net.httpserver.HttpServer;
+import cpen221.mp3.fsftbuffer.FSFTBuffer;
+import cpen221.mp3.fsftbuffer.RemovalCause;
+import cpen221.mp3.wikimediator.DiskPageStore;
+import cpen221.mp3.wikimediator.LinkGraphIngest;
+import cpen221.mp3.wikimediator.LinkProvider;
+import cpen221.mp3.wikimediator.OffHeapArena;
+import cpen221.mp3.wikimediator.WikiMediator;
+import cpen221.mp3.wikimediator.WikiPage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.fastily.jwiki.core.Wiki;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 public class Tests {
 
     /*
@@ -8,4 +36,507 @@ public class Tests {
         as cpen221.mp3.fsftbuffer.
      */
 
+    @Test
+    public void pageTextSize() {
+        String text = "héllo € 😀";
+        Assertions.assertEquals(text.getBytes(StandardCharsets.UTF_8).length,
+                new WikiPage("Smiley", text).textSize());
+    }
+
+    @Test
+    public void offHeapPage() {
+        OffHeapArena arena = new OffHeapArena(4096);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("Trampolining ").append(i % 17).append(" é€ ");
+        }
+
+        WikiPage small = new WikiPage("Small", "tiny", arena);
+        WikiPage large = new WikiPage("Large", text.toString(), arena);
+        WikiPage empty = new WikiPage("Empty", "", arena);
+
+        Assertions.assertTrue(large.isOffHeap());
+        Assertions.assertEquals("tiny", small.getText());
+        Assertions.assertEquals(text.toString(), large.getText());
+        Assertions.assertEquals("", empty.getText());
+        Assertions.assertEquals(text.toString().getBytes(StandardCharsets.UTF_8).length, large.textSize());
+        Assertions.assertTrue(large.storedSize() < large.textSize());
+
+        long allocated = arena.getAllocatedBytes();
+        small.release();
+        small.release();
+        Assertions.assertNull(small.getText());
+        Assertions.assertTrue(arena.getAllocatedBytes() < allocated);
+
+        // a freed block is reused for the next page of the same size class
+        long reserved = arena.getReservedBytes();
+        WikiPage again = new WikiPage("Again", "tiny", arena);
+        Assertions.assertEquals(reserved, arena.getReservedBytes());
+        Assertions.assertEquals("tiny", again.getText());
+        Assertions.assertEquals(text.toString(), large.getText());
+    }
+
+    @Test
+    public void offHeapLargeBlock() {
+        OffHeapArena arena = new OffHeapArena(64);
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        long handle = arena.store(data, data.length);
+        Assertions.assertEquals(1024, arena.getReservedBytes());
+
+        byte[] copy = new byte[data.length];
+        arena.load(handle, copy, copy.length);
+        Assertions.assertArrayEquals(data, copy);
+
+        arena.free(handle, data.length);
+        Assertions.assertEquals(0, arena.getReservedBytes());
+        Assertions.assertEquals(0, arena.getAllocatedBytes());
+    }
+
+    @Test
+    public void offHeapReleasedOnEviction() {
+        OffHeapArena arena = new OffHeapArena();
+        FSFTBuffer<WikiPage> buffer = new FSFTBuffer<>(1, 100);
+        buffer.setRemovalListener((page, cause) -> page.release());
+
+        WikiPage first = new WikiPage("First", "first page", arena);
+        Assertions.assertTrue(buffer.put(first));
+        buffer.get("First");
+        Assertions.assertTrue(buffer.put(new WikiPage("Second", "second page", arena)));
+
+        Assertions.assertNull(first.getText());
+        Assertions.assertEquals(64, arena.getAllocatedBytes());
+    }
+
+    @Test
+    public void rejectedOffHeapPageStaysReadable() throws InterruptedException {
+        OffHeapArena arena = new OffHeapArena();
+        FSFTBuffer<WikiPage> buffer = new FSFTBuffer<>(1, 100);
+        // as WikiMediator releases pages
+        buffer.setRemovalListener((page, cause) -> {
+            if (cause == RemovalCause.REJECTED) {
+                page.releaseWhenUnreachable();
+            } else {
+                page.release();
+            }
+        });
+        Assertions.assertTrue(buffer.put(new WikiPage("First", "first page", arena)));
+
+        // First was never read, so the buffer refuses the shared load of Second
+        AtomicInteger loads = new AtomicInteger();
+        List<String> texts = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> texts.add(buffer.get("Second", title -> {
+                loads.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignored) {
+                }
+                return new WikiPage(title, "second page", arena);
+            }).getText()));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(Collections.nCopies(8, "second page"), texts);
+
+        // the refused page's block is freed once nothing refers to it
+        for (int i = 0; i < 100 && arena.getAllocatedBytes() > 64; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assertions.assertEquals(64, arena.getAllocatedBytes());
+
+        // releasing a page directly still frees its block at once
+        WikiPage third = new WikiPage("Third", "third page", arena);
+        third.releaseWhenUnreachable();
+        Assertions.assertEquals("third page", third.getText());
+        third.release();
+        Assertions.assertNull(third.getText());
+        Assertions.assertEquals(64, arena.getAllocatedBytes());
+    }
+
+    @Test
+    public void diskPageStore() throws IOException {
+        Path directory = Files.createTempDirectory("pages");
+        DiskPageStore store = new DiskPageStore(directory, 1 << 20, 100, 256);
+
+        Assertions.assertTrue(store.put("Coffee", "a brewed drink"));
+        Assertions.assertTrue(store.put("Tea", "an infusion é€"));
+        Assertions.assertTrue(store.put("Coffee", "a brewed drink from roasted seeds"));
+        Assertions.assertFalse(store.put("Huge", "x".repeat(300)));
+        // a page fetched longer ago than the store keeps pages is not stored
+        Assertions.assertFalse(store.put("Old", "an old text", System.currentTimeMillis() - 100_000));
+        Assertions.assertNull(store.get("Old"));
+
+        Assertions.assertEquals("a brewed drink from roasted seeds", store.get("Coffee"));
+        Assertions.assertEquals("an infusion é€", store.get("Tea"));
+        Assertions.assertNull(store.get("Huge"));
+
+        // rewrite Coffee until several segments are mostly garbage
+        for (int i = 0; i < 20; i++) {
+            store.put("Coffee", "version " + i);
+        }
+        int segments = store.getSegmentCount();
+        Assertions.assertTrue(segments > 1);
+        store.compact();
+        Assertions.assertTrue(store.getSegmentCount() < segments);
+        Assertions.assertEquals("version 19", store.get("Coffee"));
+        Assertions.assertEquals("an infusion é€", store.get("Tea"));
+
+        // a new store in the same directory recovers the pages
+        store.close();
+        DiskPageStore reopened = new DiskPageStore(directory, 1 << 20, 100, 256);
+        Assertions.assertEquals(2, reopened.size());
+        Assertions.assertEquals("version 19", reopened.get("Coffee"));
+        Assertions.assertEquals("an infusion é€", reopened.get("Tea"));
+        reopened.close();
+
+        // a closed store refuses to be used, as by a getPage() that read it before it was replaced
+        Assertions.assertNull(reopened.get("Tea"));
+        Assertions.assertFalse(reopened.put("Tea", "another infusion"));
+        reopened.putLater("Tea", "another infusion", System.currentTimeMillis());
+        reopened.compact();
+        Assertions.assertNull(reopened.get("Tea"));
+        reopened.close();
+    }
+
+    @Test
+    public void diskPageStoreDropsOldestSegment() throws IOException {
+        DiskPageStore store = new DiskPageStore(Files.createTempDirectory("pages"), 512, 100, 256);
+
+        // each record takes 100 bytes, so two fit in a segment and two segments in the store
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertTrue(store.put("Page" + i, "y".repeat(100 - 16 - 5)));
+        }
+        Assertions.assertEquals(2, store.getSegmentCount());
+        Assertions.assertNull(store.get("Page0"));
+        Assertions.assertNull(store.get("Page1"));
+        Assertions.assertNotNull(store.get("Page4"));
+        store.close();
+    }
+
+    @Test
+    public void diskPageStoreCompactsAtMaxBytes() throws IOException {
+        DiskPageStore store = new DiskPageStore(Files.createTempDirectory("pages"), 512, 100, 256);
+
+        // the first segment holds A, D and B, of 60, 60 and 130 bytes, and the second B again and C
+        Assertions.assertTrue(store.put("A", "a".repeat(60 - 17)));
+        Assertions.assertTrue(store.put("D", "d".repeat(60 - 17)));
+        Assertions.assertTrue(store.put("B", "b".repeat(130 - 17)));
+        Assertions.assertTrue(store.put("B", "B".repeat(130 - 17)));
+        Assertions.assertTrue(store.put("C", "c".repeat(120 - 17)));
+        Assertions.assertEquals(2, store.getSegmentCount());
+
+        // copying A rolls the full log, which must keep the first segment until D is copied too
+        store.compact();
+        Assertions.assertEquals(2, store.getSegmentCount());
+        Assertions.assertEquals("a".repeat(60 - 17), store.get("A"));
+        Assertions.assertEquals("d".repeat(60 - 17), store.get("D"));
+        Assertions.assertEquals("B".repeat(130 - 17), store.get("B"));
+        Assertions.assertEquals("c".repeat(120 - 17), store.get("C"));
+        store.close();
+    }
+
+    @Test
+    public void diskPageStoreWritesLater() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("pages");
+        DiskPageStore store = new DiskPageStore(directory, 1 << 20, 100, 256);
+        store.putLater("Coffee", "a brewed drink", System.currentTimeMillis());
+        Assertions.assertEquals("a brewed drink", store.get("Coffee"));
+
+        // closing writes what is still waiting
+        store.close();
+        DiskPageStore reopened = new DiskPageStore(directory, 1 << 20, 100, 256);
+        Assertions.assertEquals("a brewed drink", reopened.get("Coffee"));
+
+        // with the directory gone, the third page needs a new segment that cannot be created
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+        for (int i = 0; i < 4; i++) {
+            reopened.putLater("Page" + i, "y".repeat(100 - 16 - 5), System.currentTimeMillis());
+        }
+        for (int i = 0; i < 100 && reopened.get("Page3") != null; i++) {
+            Thread.sleep(20);
+        }
+
+        // the writes that failed were logged and left out, without stopping the background thread
+        Assertions.assertNull(reopened.get("Page3"));
+        Assertions.assertNull(reopened.get("Page2"));
+        Assertions.assertNotNull(reopened.get("Page1"));
+        reopened.close();
+    }
+
+    @Test
+    public void diskTierAgesPagesFromTheirFetch() throws IOException, InterruptedException {
+        HttpServer server = stubWikipedia(new ArrayList<>());
+        try {
+            WikiMediator mediator = new WikiMediator(stubWiki(server), 1, 100);
+            mediator.setDiskTier(Files.createTempDirectory("pages").toString(), DiskPageStore.DSEGMENT, 2);
+
+            // each page is read twice so that the next page may evict it to disk
+            mediator.getPage("A");
+            mediator.getPage("A");
+            mediator.getPage("B");
+            mediator.getPage("B");
+            Thread.sleep(1200);
+            mediator.getPage("A");
+            mediator.getPage("A");
+            mediator.getPage("B");
+            mediator.getPage("B");
+            Assertions.assertEquals(2, mediator.getDiskHits());
+
+            // A went back to disk a second ago, but was fetched more than two seconds ago
+            Thread.sleep(1000);
+            Assertions.assertEquals("text of A", mediator.getPage("A"));
+            Assertions.assertEquals(2, mediator.getDiskHits());
+            Assertions.assertEquals(3, mediator.getUpstreamFetches());
+            mediator.setDiskTier(null, 0, 0);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void getPagesBatchesMisses() throws IOException {
+        List<String> queries = new ArrayList<>();
+        HttpServer server = stubWikipedia(queries);
+        try {
+            WikiMediator mediator = new WikiMediator(stubWiki(server), 100, 100);
+
+            Assertions.assertEquals("text of Page0", mediator.getPage("Page0"));
+            queries.clear();
+
+            List<String> titles = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                titles.add("Page" + i);
+            }
+            titles.add("coffee");
+            titles.add("Missing page");
+            Map<String, String> pages = mediator.getPages(titles);
+
+            // Page0 is cached, so the other 61 titles take two queries
+            Assertions.assertEquals(2, queries.size());
+            Assertions.assertEquals(titles, List.copyOf(pages.keySet()));
+            Assertions.assertEquals("text of Page59", pages.get("Page59"));
+            Assertions.assertEquals("text of Coffee", pages.get("coffee"));
+            Assertions.assertEquals("", pages.get("Missing page"));
+
+            // every page found is now cached
+            queries.clear();
+            Assertions.assertEquals("text of Coffee", mediator.getPages(List.of("coffee", "Page30")).get("coffee"));
+            Assertions.assertEquals(List.of(), queries);
+            Assertions.assertEquals(List.of("Page0", "Page30", "coffee"), mediator.zeitgeist(3));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void zeitgeistBreaksTiesByFirstUse() throws IOException {
+        HttpServer server = stubWikipedia(new ArrayList<>());
+        try {
+            WikiMediator mediator = new WikiMediator(stubWiki(server), 100, 100);
+            for (String title : List.of("A", "B", "C", "B", "C", "C")) {
+                mediator.getPage(title);
+            }
+            Assertions.assertEquals(List.of("C", "B", "A"), mediator.zeitgeist(5));
+            Assertions.assertEquals(List.of("C", "B", "A"), mediator.trending(100, 5));
+
+            mediator.getPage("A");
+            mediator.getPage("A");
+            Assertions.assertEquals(List.of("A", "C"), mediator.zeitgeist(2));
+            Assertions.assertEquals(List.of(), mediator.zeitgeist(0));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void asyncAnalyticsCountsEveryRequest() throws IOException, InterruptedException {
+        HttpServer server = stubWikipedia(new ArrayList<>());
+        try {
+            WikiMediator mediator = new WikiMediator(stubWiki(server), 100, 100);
+            List<String> titles = List.of("A", "B", "C", "D");
+            mediator.getPages(titles);
+            mediator.setAsyncAnalytics(16, true);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                String title = titles.get(t);
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 500 * (titles.indexOf(title) + 1); i++) {
+                        mediator.getPage(title);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // read-your-writes: every request made so far is counted
+            Assertions.assertEquals(List.of("D", "C", "B", "A"), mediator.zeitgeist(4));
+            Assertions.assertEquals(List.of("D", "C"), mediator.trending(100, 2));
+            Assertions.assertEquals(1 + 5000 + 2, mediator.windowedPeakLoad(100));
+
+            mediator.setAsyncAnalytics(0, false);
+            mediator.getPage("A");
+            Assertions.assertEquals(1 + 5000 + 4, mediator.windowedPeakLoad(100));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void asyncAnalyticsCountsRequestsAcrossRingSwitches() throws IOException, InterruptedException {
+        HttpServer server = stubWikipedia(new ArrayList<>());
+        try {
+            WikiMediator mediator = new WikiMediator(stubWiki(server), 100, 100);
+            mediator.setAsyncAnalytics(2, false);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        mediator.zeitgeist(1);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            // replace the ring, or drop it, while requests are being recorded through it
+            for (int switches = 0; threads.stream().anyMatch(Thread::isAlive); switches++) {
+                mediator.setAsyncAnalytics(switches % 3 == 2 ? 0 : 2 << (switches % 3), switches % 2 == 0);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            mediator.setAsyncAnalytics(0, false);
+            Assertions.assertEquals(4 * 2000, mediator.windowedPeakLoad(100));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void shortestPathUsesLinkProvider() throws IOException, TimeoutException {
+        HttpServer server = stubWikipedia(new ArrayList<>());
+        try {
+            WikiMediator mediator = new WikiMediator(stubWiki(server), 100, 100);
+            Map<String, List<String>> links = Map.of("A", List.of("C", "B"), "B", List.of("D"), "C", List.of("D"));
+            mediator.setLinkProvider(new LinkProvider() {
+                @Override
+                public List<String> linksFrom(String title) {
+                    return links.getOrDefault(title, List.of());
+                }
+
+                @Override
+                public List<String> linksTo(String title) {
+                    List<String> linking = new ArrayList<>();
+                    links.forEach((page, linked) -> {
+                        if (linked.contains(title)) {
+                            linking.add(page);
+                        }
+                    });
+                    return linking;
+                }
+            });
+
+            Assertions.assertEquals(List.of("A", "B", "D"), mediator.shortestPath("A", "D", 5));
+            Assertions.assertThrows(TimeoutException.class, () -> mediator.shortestPath("D", "A", 5));
+            Assertions.assertEquals(2, mediator.windowedPeakLoad(100));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void shortestPathUsesLinkGraphFiles() throws IOException, InterruptedException, TimeoutException {
+        HttpServer server = stubWikipedia(new ArrayList<>());
+        Path directory = Files.createTempDirectory("graph");
+        try {
+            WikiMediator mediator = new WikiMediator(stubWiki(server), 100, 100);
+            Path edgeList = directory.resolve("links.tsv");
+            Files.write(edgeList, List.of("A\tB", "A\tC", "B\tD", "C\tD"));
+            Path page = directory.resolve("page.sql");
+            Path pagelinks = directory.resolve("pagelinks.sql");
+            Files.write(page, List.of("INSERT INTO `page` VALUES (1,0,'A'),(2,0,'B'),(3,0,'C'),(4,0,'D');"));
+            Files.write(pagelinks, List.of("INSERT INTO `pagelinks` VALUES (1,0,'C',0),(1,0,'B',0),(2,0,'D',0),"
+                    + "(3,0,'D',0);"));
+            Path graph = directory.resolve("links.graph");
+            LinkGraphIngest.main(new String[] {page.toString(), pagelinks.toString(), graph.toString()});
+
+            // an edge list is read, and a graph file mapped
+            for (Path file : List.of(edgeList, graph)) {
+                mediator.setLinkGraph(file.toString());
+                Assertions.assertEquals(file.toString(), mediator.getLinkGraphFile());
+                Assertions.assertEquals(List.of("A", "B", "D"), mediator.shortestPath("A", "D", 5));
+                Assertions.assertThrows(TimeoutException.class, () -> mediator.shortestPath("D", "A", 5));
+            }
+            mediator.setLinkGraph(null);
+            Assertions.assertNull(mediator.getLinkGraphFile());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static Wiki stubWiki(HttpServer server) {
+        return new Wiki.Builder().withApiEndpoint(okhttp3.HttpUrl.parse(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/w/api.php")).build();
+    }
+
+    /*
+     * A stand-in for the MediaWiki API that has a page "Title" with text "text of Title" for every title that does
+     * not start with "Missing", and upper-cases the first letter of titles. Each page text query is added to queries.
+     */
+    private static HttpServer stubWikipedia(List<String> queries) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/w/api.php", exchange -> {
+            String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+            String body;
+            if (query.contains("siteinfo")) {
+                body = "{\"query\":{\"namespaces\":{\"0\":{\"id\":0,\"case\":\"first-letter\",\"*\":\"\"}},"
+                        + "\"namespacealiases\":[]}}";
+            } else {
+                queries.add(query);
+                List<String> normalized = new ArrayList<>();
+                List<String> pages = new ArrayList<>();
+                String[] titles = query.replaceAll(".*titles=([^&]*).*", "$1").split("\\|");
+                for (int i = 0; i < titles.length; i++) {
+                    String title = Character.toUpperCase(titles[i].charAt(0)) + titles[i].substring(1);
+                    if (!title.equals(titles[i])) {
+                        normalized.add("{\"from\":\"" + titles[i] + "\",\"to\":\"" + title + "\"}");
+                    }
+                    if (title.startsWith("Missing")) {
+                        pages.add("\"-" + (i + 1) + "\":{\"ns\":0,\"title\":\"" + title + "\",\"missing\":\"\"}");
+                    } else {
+                        pages.add("\"" + (i + 1) + "\":{\"pageid\":" + (i + 1) + ",\"ns\":0,\"title\":\"" + title
+                                + "\",\"revisions\":[{\"*\":\"text of " + title + "\"}]}");
+                    }
+                }
+                body = "{\"batchcomplete\":\"\",\"query\":{\"normalized\":[" + String.join(",", normalized)
+                        + "],\"pages\":{" + String.join(",", pages) + "}}}";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
 }
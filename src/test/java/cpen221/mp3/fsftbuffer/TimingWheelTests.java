@@ -0,0 +1,154 @@
+package cpen221.mp3.fsftbuffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimingWheelTests {
+
+    private static class Recorder extends TimingWheel.Entry {
+        private final String name;
+        private final List<String> fired;
+
+        Recorder(String name, List<String> fired) {
+            this.name = name;
+            this.fired = fired;
+        }
+
+        @Override
+        void expire() {
+            fired.add(name);
+        }
+    }
+
+    private static class Page implements Bufferable {
+        private final String id;
+
+        Page(String id) {
+            this.id = id;
+        }
+
+        public String id() {
+            return id;
+        }
+    }
+
+    @Test
+    public void testFiresAtDeadline() {
+        List<String> fired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(10, 0);
+
+        wheel.schedule(new Recorder("soon", fired), 35);
+        wheel.schedule(new Recorder("later", fired), 5_000);
+        wheel.schedule(new Recorder("much later", fired), 3_000_000);
+
+        wheel.advance(30);
+        Assertions.assertEquals(List.of(), fired);
+        wheel.advance(40);
+        Assertions.assertEquals(List.of("soon"), fired);
+
+        // "later" has to be cascaded down from level 1 before it fires
+        wheel.advance(4_990);
+        Assertions.assertEquals(List.of("soon"), fired);
+        wheel.advance(5_000);
+        Assertions.assertEquals(List.of("soon", "later"), fired);
+
+        wheel.advance(2_999_990);
+        Assertions.assertEquals(2, fired.size());
+        wheel.advance(3_000_000);
+        Assertions.assertEquals(List.of("soon", "later", "much later"), fired);
+    }
+
+    @Test
+    public void testCancelAndReschedule() {
+        List<String> fired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(10, 0);
+
+        Recorder a = new Recorder("a", fired);
+        Recorder b = new Recorder("b", fired);
+        wheel.schedule(a, 100);
+        wheel.schedule(b, 100);
+        wheel.cancel(a);
+        wheel.schedule(b, 2_000);
+
+        wheel.advance(1_000);
+        Assertions.assertEquals(List.of(), fired);
+        wheel.advance(2_000);
+        Assertions.assertEquals(List.of("b"), fired);
+    }
+
+    @Test
+    public void testPastDeadlineFiresOnNextTick() {
+        List<String> fired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(10, 1_000);
+
+        wheel.schedule(new Recorder("late", fired), 500);
+        wheel.advance(1_010);
+        Assertions.assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    public void testThrowingCallbackDoesNotStopOthers() {
+        List<String> fired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(10, 0);
+        wheel.schedule(new TimingWheel.Entry() {
+            @Override
+            void expire() {
+                throw new IllegalStateException();
+            }
+        }, 20);
+        wheel.schedule(new Recorder("same tick", fired), 20);
+        wheel.schedule(new Recorder("later", fired), 50);
+
+        wheel.advance(30);
+        Assertions.assertEquals(List.of("same tick"), fired);
+        wheel.advance(60);
+        Assertions.assertEquals(List.of("same tick", "later"), fired);
+    }
+
+    @Test
+    public void testReaperSurvivesThrowingListener() throws InterruptedException {
+        AtomicInteger removed = new AtomicInteger();
+        FSFTBuffer<Page> buffer = new FSFTBuffer<>(10, 1);
+        buffer.setRemovalListener((page, cause) -> {
+            removed.incrementAndGet();
+            throw new IllegalStateException("listener failed for " + page.id());
+        });
+
+        Assertions.assertTrue(buffer.put(new Page("a")));
+        TimeUnit.MILLISECONDS.sleep(1300);
+        Assertions.assertEquals(1, removed.get());
+
+        // the reaper that ran the throwing listener still expires later objects
+        Assertions.assertTrue(buffer.put(new Page("b")));
+        TimeUnit.MILLISECONDS.sleep(1300);
+        Assertions.assertEquals(2, removed.get());
+    }
+
+    @Test
+    public void testReaperExpiresIdleBuffer() throws InterruptedException {
+        AtomicInteger removed = new AtomicInteger();
+        FSFTBuffer<Page> buffer = new FSFTBuffer<>(10, 1) {
+            @Override
+            void removed(Page p, long weight, RemovalCause cause) {
+                removed.incrementAndGet();
+            }
+        };
+
+        Assertions.assertTrue(buffer.put(new Page("a")));
+        Assertions.assertTrue(buffer.put(new Page("b")));
+        TimeUnit.MILLISECONDS.sleep(600);
+        Assertions.assertTrue(buffer.touch("b"));
+
+        // nothing calls into the buffer; only the reaper can remove "a"
+        TimeUnit.MILLISECONDS.sleep(700);
+        Assertions.assertEquals(1, removed.get());
+
+        TimeUnit.MILLISECONDS.sleep(700);
+        Assertions.assertEquals(2, removed.get());
+    }
+}
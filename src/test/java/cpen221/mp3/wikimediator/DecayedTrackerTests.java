@@ -0,0 +1,77 @@
+package cpen221.mp3.wikimediator;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+public class DecayedTrackerTests {
+
+    @Test
+    public void scoresHalveEachHalfLife() {
+        DecayedTracker tracker = new DecayedTracker(10);
+        tracker.record("a", 100);
+        tracker.record("a", 100);
+        tracker.record("b", 110);
+
+        Assertions.assertEquals(2, tracker.score("a", 100), 1e-9);
+        Assertions.assertEquals(1, tracker.score("a", 110), 1e-9);
+        Assertions.assertEquals(0.5, tracker.score("a", 120), 1e-9);
+        Assertions.assertEquals(0, tracker.score("c", 120));
+        // a and b are equally popular at 110, so a, first requested, is listed first
+        Assertions.assertEquals(List.of("a", "b"), tracker.mostPopular(2));
+
+        // a request recorded after a later one counts as decayed to the later time
+        tracker.record("a", 140);
+        tracker.record("a", 130);
+        Assertions.assertEquals(0.125 + 1 + 0.5, tracker.score("a", 140), 1e-9);
+        Assertions.assertEquals(List.of("a"), tracker.mostPopular(1));
+    }
+
+    @Test
+    public void topMatchesCurrentScores() {
+        DecayedTracker tracker = new DecayedTracker(30);
+        Map<String, Double> scores = new HashMap<>();
+        Random random = new Random(221);
+        long time = 1_000_000;
+        for (int i = 0; i < 20_000; i++) {
+            time += random.nextInt(2);
+            // strings go in and out of fashion as the offset moves
+            String request = "s" + (random.nextInt(50) + i / 500);
+            tracker.record(request, time);
+            // every score grows as time passes instead of shrinking, which keeps the same order
+            scores.merge(request, Math.pow(2, (time - 1_000_000) / 30.0), Double::sum);
+        }
+
+        List<String> expected = new ArrayList<>(scores.keySet());
+        expected.sort((s1, s2) -> Double.compare(scores.get(s2), scores.get(s1)));
+        List<String> top = tracker.mostPopular(10);
+        Assertions.assertEquals(10, top.size());
+        for (int i = 0; i < 10; i++) {
+            // scores that differ only by rounding may be listed in either order
+            Assertions.assertEquals(scores.get(expected.get(i)) / Math.pow(2, (time - 1_000_000) / 30.0),
+                    tracker.score(top.get(i), time), 1e-6);
+        }
+        Assertions.assertEquals(scores.size(), tracker.mostPopular(Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void savedAsJson() {
+        DecayedTracker tracker = new DecayedTracker(5);
+        for (int i = 0; i < 60; i++) {
+            tracker.record("s" + (i % 7 == 0 ? 0 : i % 4), i);
+        }
+        Gson gson = new Gson();
+        List<DecayedScore> saved = gson.fromJson(gson.toJson(tracker.scores()),
+                new TypeToken<List<DecayedScore>>() { }.getType());
+        DecayedTracker loaded = new DecayedTracker(5, saved);
+
+        Assertions.assertEquals(tracker.mostPopular(5), loaded.mostPopular(5));
+        tracker.record("s2", 70);
+        loaded.record("s2", 70);
+        Assertions.assertEquals(tracker.score("s2", 80), loaded.score("s2", 80), 1e-9);
+        Assertions.assertEquals(tracker.mostPopular(5), loaded.mostPopular(5));
+    }
+}
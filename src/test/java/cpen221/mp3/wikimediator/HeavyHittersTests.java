@@ -0,0 +1,88 @@
+package cpen221.mp3.wikimediator;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+public class HeavyHittersTests {
+
+    @Test
+    public void exactWhileFewStrings() {
+        HeavyHitters approximate = new HeavyHitters(0.1, 60, 10);
+        RequestTracker exact = new RequestTracker();
+        String[] requests = {"a", "b", "a", "c", "b", "a", "d", "c", "c", "c"};
+        for (int i = 0; i < requests.length; i++) {
+            approximate.record(requests[i], 100 + 5 * i);
+            exact.record(requests[i], 100 + 5 * i);
+        }
+
+        Assertions.assertEquals(4, approximate.count("c"));
+        Assertions.assertEquals(exact.mostCommon(3), approximate.mostCommon(3));
+        // [130, 150] widens to whole slots, of which those starting at 130 and 140 hold requests
+        Assertions.assertEquals(List.of("c", "d"), approximate.mostCommonSince(150, 20, 5));
+        // and a time frame longer than the horizon narrows to it
+        Assertions.assertEquals(List.of("c", "a", "b", "d"), approximate.mostCommonSince(150, 1000, 5));
+    }
+
+    @Test
+    public void errorStaysWithinBound() {
+        double maxError = 0.001;
+        HeavyHitters approximate = new HeavyHitters(maxError, 600, 60);
+        Map<String, Integer> allTime = new HashMap<>();
+        Map<String, Integer> lastMinutes = new HashMap<>();
+        Random random = new Random(221);
+        int requests = 200_000;
+        int recent = 0;
+        for (int i = 0; i < requests; i++) {
+            // cubing a uniform number makes low-numbered strings far more popular, among 50k in all
+            double u = random.nextDouble();
+            String request = "s" + (int) (u * u * u * 50_000);
+            long time = i / 100;
+            approximate.record(request, time);
+            allTime.merge(request, 1, Integer::sum);
+            if (time >= 1800) {
+                lastMinutes.merge(request, 1, Integer::sum);
+                recent++;
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : allTime.entrySet()) {
+            if (entry.getValue() > maxError * requests) {
+                long count = approximate.count(entry.getKey());
+                Assertions.assertTrue(count >= entry.getValue(), entry.getKey());
+                Assertions.assertTrue(count <= entry.getValue() + maxError * requests, entry.getKey());
+            }
+        }
+        assertNearTop(allTime, approximate.mostCommon(10), maxError * requests);
+        assertNearTop(lastMinutes, approximate.mostCommonSince(1999, 199, 10), maxError * recent);
+    }
+
+    @Test
+    public void savedAsJson() {
+        HeavyHitters approximate = new HeavyHitters(0.25, 60, 10);
+        for (int i = 0; i < 40; i++) {
+            approximate.record("s" + (i % 3 == 0 ? 0 : i), i);
+        }
+        Gson gson = new Gson();
+        HeavyHitters loaded = gson.fromJson(gson.toJson(approximate.copy()), HeavyHitters.class);
+
+        Assertions.assertEquals(approximate.mostCommon(4), loaded.mostCommon(4));
+        Assertions.assertEquals(approximate.mostCommonSince(39, 20, 4), loaded.mostCommonSince(39, 20, 4));
+        approximate.record("s1", 40);
+        loaded.record("s1", 40);
+        Assertions.assertEquals(approximate.count("s1"), loaded.count("s1"));
+    }
+
+    /* every String listed is within the error of being as common as the least common of the true top */
+    private static void assertNearTop(Map<String, Integer> counts, List<String> listed, double error) {
+        List<Integer> sorted = new ArrayList<>(counts.values());
+        sorted.sort(Collections.reverseOrder());
+        int least = sorted.get(listed.size() - 1);
+        Assertions.assertEquals(Math.min(10, counts.size()), listed.size());
+        for (String request : listed) {
+            Assertions.assertTrue(counts.getOrDefault(request, 0) >= least - error, request);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+public class LinkCacheTests {
+
+    private static ShortestPathTests.MemoryLinks chain(int pages) {
+        ShortestPathTests.MemoryLinks links = new ShortestPathTests.MemoryLinks();
+        for (int i = 0; i < pages; i++) {
+            links.link("P" + i, "P" + (i + 1));
+            links.link("P" + i, "Q" + i);
+        }
+        return links;
+    }
+
+    @Test
+    public void searchesShareFetchedLinks() {
+        ShortestPathTests.MemoryLinks links = chain(10);
+        LinkCache cache = new LinkCache(links, 1000, 3600, 1 << 20);
+
+        List<String> first = new BFS(cache, null, new ArrayList<>(), "P0", "P10").search();
+        int fetches = links.fetches.values().stream().mapToInt(Integer::intValue).sum();
+        Assertions.assertEquals(0, cache.hitRate(true));
+        Assertions.assertEquals(0, cache.hitRate(false));
+        Assertions.assertEquals(first, new BFS(cache, null, new ArrayList<>(), "P0", "P10").search());
+
+        // the second search fetched nothing, so half the lookups in each direction were hits
+        Assertions.assertEquals(fetches, links.fetches.values().stream().mapToInt(Integer::intValue).sum());
+        Assertions.assertEquals(0.5, cache.hitRate(true), 1e-9);
+        Assertions.assertEquals(0.5, cache.hitRate(false), 1e-9);
+    }
+
+    @Test
+    public void boundedByCapacityAndMemory() {
+        ShortestPathTests.MemoryLinks links = chain(100);
+        LinkCache byCount = new LinkCache(links, 2, 3600, 1 << 20);
+        LinkCache byBytes = new LinkCache(links, 1000, 3600, 600);
+        for (LinkCache cache : List.of(byCount, byBytes)) {
+            links.fetches.clear();
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < 10; i++) {
+                    Assertions.assertEquals(List.of("P" + (i + 1), "Q" + i), cache.linksFrom("P" + i));
+                }
+            }
+            // two lists, or about three of a hundred-odd bytes each, fit; the rest are fetched again
+            Assertions.assertTrue(links.fetches.values().stream().mapToInt(Integer::intValue).sum() >= 16);
+        }
+    }
+
+    @Test
+    public void linksExpireAfterTheyAreFetched() throws InterruptedException {
+        ShortestPathTests.MemoryLinks links = chain(1);
+        LinkCache cache = new LinkCache(links, 1000, 1, 1 << 20);
+
+        // reading the links every 50 ms does not keep them past a second after they were fetched
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() < start + 1600) {
+            Assertions.assertEquals(List.of("P1", "Q0"), cache.linksFrom("P0"));
+            Thread.sleep(50);
+        }
+        Assertions.assertEquals(2, links.fetches.get("from P0"));
+    }
+
+    @Test
+    public void concurrentSearchesFetchEachListOnce() throws InterruptedException {
+        ShortestPathTests.MemoryLinks links = new ShortestPathTests.MemoryLinks();
+        Random random = new Random(221);
+        for (int i = 0; i < 3000; i++) {
+            links.link("p" + random.nextInt(500), "p" + random.nextInt(500));
+        }
+        LinkCache cache = new LinkCache(links, 10_000, 3600, 1 << 24);
+
+        List<Thread> threads = new ArrayList<>();
+        List<List<String>> found = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> found.add(new BFS(cache, null, new ArrayList<>(), "p0", "p1").search()));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // searches that looked up a list being fetched waited for it
+        for (int count : links.fetches.values()) {
+            Assertions.assertEquals(1, count);
+        }
+        for (List<String> path : found) {
+            Assertions.assertEquals(new BFS(links, null, new ArrayList<>(), "p0", "p1").search(), path);
+        }
+        links.fetches.clear();
+        new BFS(cache, null, new ArrayList<>(), "p0", "p1").search();
+        Assertions.assertEquals(Map.of(), links.fetches);
+    }
+}
@@ -0,0 +1,258 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+public class LinkGraphIngestTests {
+
+    /* titles as the dumps write them, with underscores for spaces and characters that need escaping */
+    private static final List<String> NAMES = List.of("Apple", "O'Brien", "Back\\slash", "Café_au_lait", "東京",
+            "Zebra_crossing", "Mango", "Kiwi_(fruit)", "\"Quoted\"", "Semi;colon,_(comma)");
+
+    @TempDir
+    Path directory;
+
+    /*
+     * A wiki of random pages and links. Pages are numbered by their index in titles, and have the page id
+     * 1000 + 7 * index; odd-numbered pages past NAMES are talk pages, in namespace 1.
+     */
+    private static final class Wiki {
+        final List<String> titles = new ArrayList<>();
+        final List<int[]> links = new ArrayList<>();
+
+        Wiki(Random random, int pages, int linkCount) {
+            titles.addAll(NAMES);
+            while (titles.size() < pages) {
+                titles.add("Page_" + titles.size());
+            }
+            for (int i = 0; i < linkCount; i++) {
+                links.add(new int[] {random.nextInt(pages), random.nextInt(pages + 5)});
+            }
+        }
+
+        boolean isArticle(int page) {
+            return page < titles.size() && (page < NAMES.size() || page % 2 == 0);
+        }
+
+        String title(int page) {
+            return page < titles.size() ? titles.get(page) : "Missing_" + page;
+        }
+
+        /* the links between articles, in the form LinkGraph.load() reads */
+        List<String> edgeList() {
+            List<String> lines = new ArrayList<>();
+            for (int[] link : links) {
+                if (isArticle(link[0]) && isArticle(link[1])) {
+                    lines.add(title(link[0]).replace('_', ' ') + "\t" + title(link[1]).replace('_', ' '));
+                }
+            }
+            return lines;
+        }
+
+        void writePages(Path dump) throws IOException {
+            List<String> rows = new ArrayList<>();
+            for (int p = 0; p < titles.size(); p++) {
+                rows.add("(" + (1000 + 7 * p) + "," + (isArticle(p) ? 0 : 1) + "," + quote(titles.get(p))
+                        + ",0,0,0.123,'20240101000000',NULL,1,2,'wikitext',NULL)");
+            }
+            writeDump(dump, "page", rows);
+        }
+
+        void writeClassicLinks(Path dump) throws IOException {
+            List<String> rows = new ArrayList<>();
+            for (int[] link : links) {
+                int namespace = link[1] < titles.size() && !isArticle(link[1]) ? 1 : 0;
+                rows.add("(" + (1000 + 7 * link[0]) + "," + namespace + "," + quote(title(link[1])) + ","
+                        + (isArticle(link[0]) ? 0 : 1) + ")");
+            }
+            writeDump(dump, "pagelinks", rows);
+        }
+
+        /* link targets are numbered 50 + the number of the page they name */
+        void writeTargetLinks(Path pagelinks, Path linktarget) throws IOException {
+            List<String> rows = new ArrayList<>();
+            for (int[] link : links) {
+                rows.add("(" + (1000 + 7 * link[0]) + "," + (isArticle(link[0]) ? 0 : 1) + "," + (50 + link[1])
+                        + ")");
+            }
+            writeDump(pagelinks, "pagelinks", rows);
+            List<String> targets = new ArrayList<>();
+            for (int p = 0; p < titles.size() + 5; p++) {
+                int namespace = p < titles.size() && !isArticle(p) ? 1 : 0;
+                targets.add("(" + (50 + p) + "," + namespace + "," + quote(title(p)) + ")");
+            }
+            writeDump(linktarget, "linktarget", targets);
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("'");
+        for (char c : value.toCharArray()) {
+            if (c == '\'' || c == '\\' || c == '"') {
+                quoted.append('\\').append(c);
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('\'').toString();
+    }
+
+    /* a gzipped dump as mysqldump writes it, with a few rows in each INSERT statement */
+    private static void writeDump(Path dump, String table, List<String> rows) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(dump));
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            writer.write("-- MySQL dump 10.19\n/*!40101 SET NAMES utf8mb4 */;\n");
+            writer.write("DROP TABLE IF EXISTS `" + table + "`;\nCREATE TABLE `" + table + "` (\n"
+                    + "  `id` int(8) unsigned NOT NULL\n);\n");
+            for (int i = 0; i < rows.size(); i += 5) {
+                writer.write("INSERT INTO `" + table + "` VALUES "
+                        + String.join(",", rows.subList(i, Math.min(rows.size(), i + 5))) + ";\n");
+            }
+            writer.write("UNLOCK TABLES;\n");
+        }
+    }
+
+    private void assertSameGraph(Wiki wiki, Path graphFile, Random random) throws IOException {
+        Path edgeList = directory.resolve("links.tsv");
+        Files.write(edgeList, wiki.edgeList(), StandardCharsets.UTF_8);
+        LinkGraph expected = LinkGraph.load(edgeList);
+        Assertions.assertTrue(LinkGraph.isGraphFile(graphFile));
+        Assertions.assertFalse(LinkGraph.isGraphFile(edgeList));
+        LinkGraph graph = LinkGraph.open(graphFile);
+
+        Assertions.assertEquals(expected.linkCount(), graph.linkCount());
+        List<String> titles = new ArrayList<>();
+        for (int p = 0; p < wiki.titles.size(); p++) {
+            if (wiki.isArticle(p)) {
+                titles.add(wiki.titles.get(p).replace('_', ' '));
+            }
+        }
+        Assertions.assertEquals(titles.size(), graph.pageCount());
+        for (String title : titles) {
+            Assertions.assertEquals(expected.linksFrom(title), graph.linksFrom(title), title);
+            Assertions.assertEquals(expected.linksTo(title), graph.linksTo(title), title);
+        }
+        Assertions.assertEquals(List.of(), graph.linksFrom("Page 1"));
+        for (int i = 0; i < 50; i++) {
+            String start = titles.get(random.nextInt(titles.size()));
+            String target = titles.get(random.nextInt(titles.size()));
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            Assertions.assertEquals(expected.shortestPath(start, target, deadline),
+                    graph.shortestPath(start, target, deadline), start + " to " + target);
+        }
+    }
+
+    @Test
+    public void ingestsClassicDumps() throws IOException, InterruptedException {
+        Random random = new Random(221);
+        Wiki wiki = new Wiki(random, 300, 2000);
+        Path page = directory.resolve("page.sql.gz");
+        Path pagelinks = directory.resolve("pagelinks.sql.gz");
+        wiki.writePages(page);
+        wiki.writeClassicLinks(pagelinks);
+
+        // chunks of 7 links, so the links are sorted and merged in hundreds of runs
+        Path graph = directory.resolve("classic.graph");
+        LinkGraphIngest.ingest(page, pagelinks, null, graph, 7, 3, null);
+        assertSameGraph(wiki, graph, random);
+        try (var files = Files.list(directory)) {
+            Assertions.assertFalse(files.anyMatch(file -> file.getFileName().toString().startsWith("ingest")));
+        }
+    }
+
+    @Test
+    public void ingestsLinkTargetDumps() throws IOException, InterruptedException {
+        Random random = new Random(222);
+        Wiki wiki = new Wiki(random, 200, 1500);
+        Path page = directory.resolve("page.sql.gz");
+        Path pagelinks = directory.resolve("pagelinks.sql.gz");
+        Path linktarget = directory.resolve("linktarget.sql.gz");
+        Path temp = Files.createDirectory(directory.resolve("temp"));
+        wiki.writePages(page);
+        wiki.writeTargetLinks(pagelinks, linktarget);
+
+        Path graph = directory.resolve("targets.graph");
+        LinkGraphIngest.main(new String[] {page.toString(), pagelinks.toString(), graph.toString(),
+            linktarget.toString(), "--chunk", "50", "--threads", "2", "--temp", temp.toString()});
+        assertSameGraph(wiki, graph, random);
+        try (var files = Files.list(temp)) {
+            Assertions.assertEquals(0, files.count());
+        }
+
+        // link targets cannot be named without the linktarget dump
+        Assertions.assertThrows(IOException.class,
+            () -> LinkGraphIngest.ingest(page, pagelinks, null, directory.resolve("no.graph"), 50, 2, null));
+    }
+
+    @Test
+    public void emptyDumps() throws IOException, InterruptedException {
+        Path page = directory.resolve("page.sql");
+        Path pagelinks = directory.resolve("pagelinks.sql");
+        Files.write(page, List.of("-- no pages"));
+        Files.write(pagelinks, List.of("-- no links"));
+        Path graph = directory.resolve("empty.graph");
+        LinkGraphIngest.ingest(page, pagelinks, null, graph, 10, 1, null);
+
+        LinkGraph empty = LinkGraph.open(graph);
+        Assertions.assertEquals(0, empty.pageCount());
+        Assertions.assertEquals(0, empty.linkCount());
+        Assertions.assertNull(empty.shortestPath("Apple", "Apple", System.nanoTime() + 1_000_000_000L));
+    }
+
+    @Test
+    public void rejectsBadInput() throws IOException, InterruptedException {
+        Path page = directory.resolve("page.sql");
+        Path pagelinks = directory.resolve("pagelinks.sql");
+        Files.write(page, List.of("INSERT INTO `page` VALUES (1,0,'Apple'),(2,0,'Mango');"));
+        Files.write(pagelinks, List.of("INSERT INTO `pagelinks` VALUES (1,0,'Mango',0);"));
+        Path graph = directory.resolve("small.graph");
+        LinkGraphIngest.ingest(page, pagelinks, null, graph, 10, 1, null);
+        Assertions.assertEquals(List.of("Mango"), LinkGraph.open(graph).linksFrom("Apple"));
+
+        // another version of the format, a truncated file, and not a graph file
+        byte[] bytes = Files.readAllBytes(graph);
+        try (FileChannel channel = FileChannel.open(graph, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, LinkGraph.VERSION + 1), 4);
+        }
+        Assertions.assertThrows(IOException.class, () -> LinkGraph.open(graph));
+        Files.write(graph, Arrays.copyOf(bytes, bytes.length - 4));
+        Assertions.assertThrows(IOException.class, () -> LinkGraph.open(graph));
+        Assertions.assertThrows(IOException.class, () -> LinkGraph.open(page));
+        Assertions.assertFalse(LinkGraph.isGraphFile(page));
+
+        for (String dump : List.of("INSERT INTO `page` VALUES (1,0,'Apple')", "INSERT INTO `page` VALUES (1,0,'Apple",
+                "INSERT INTO `page` VALUES 1,0,'Apple';", "INSERT INTO `page` VALUES (one,0,'Apple');",
+                "INSERT INTO `page` VALUES (1,0);")) {
+            Files.write(page, List.of(dump));
+            Assertions.assertThrows(IOException.class,
+                () -> LinkGraphIngest.ingest(page, pagelinks, null, graph, 10, 1, null), dump);
+        }
+        Files.write(page, List.of("INSERT INTO `page` VALUES (1,0,'Apple');"));
+        Files.write(pagelinks, List.of("INSERT INTO `pagelinks` VALUES (1,0);"));
+        Assertions.assertThrows(IOException.class,
+            () -> LinkGraphIngest.ingest(page, pagelinks, null, graph, 10, 1, null));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> LinkGraphIngest.main(new String[] {page.toString(), pagelinks.toString()}));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> LinkGraphIngest.main(new String[] {page.toString(), pagelinks.toString(), "out", "--chunk"}));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> LinkGraphIngest.main(new String[] {page.toString(), pagelinks.toString(), "out", "--fast", "1"}));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> LinkGraphIngest.ingest(page, pagelinks, null, graph, 0, 1, null));
+    }
+}
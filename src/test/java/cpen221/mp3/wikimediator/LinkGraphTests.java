@@ -0,0 +1,74 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class LinkGraphTests {
+
+    @TempDir
+    Path directory;
+
+    private LinkGraph load(String... lines) throws IOException {
+        Path file = directory.resolve("links.tsv");
+        Files.write(file, List.of(lines), StandardCharsets.UTF_8);
+        return LinkGraph.load(file);
+    }
+
+    @Test
+    public void loadsEdgeList() throws IOException {
+        LinkGraph graph = load("# a comment", "Zebra\tApple", "", "Apple\tMango", "Zebra\tMango", "Zebra\tApple",
+                "Mango\tZebra crossing");
+
+        Assertions.assertEquals(4, graph.pageCount());
+        Assertions.assertEquals(4, graph.linkCount());
+        Assertions.assertEquals(List.of("Apple", "Mango"), graph.linksFrom("Zebra"));
+        Assertions.assertEquals(List.of("Apple", "Zebra"), graph.linksTo("Mango"));
+        Assertions.assertEquals(List.of(), graph.linksFrom("Zebra crossing"));
+        Assertions.assertEquals(List.of(), graph.linksTo("Kiwi"));
+
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        Assertions.assertEquals(List.of("Zebra", "Mango", "Zebra crossing"),
+                graph.shortestPath("Zebra", "Zebra crossing", deadline));
+        Assertions.assertEquals(List.of("Apple"), graph.shortestPath("Apple", "Apple", deadline));
+        Assertions.assertNull(graph.shortestPath("Zebra crossing", "Apple", deadline));
+        Assertions.assertNull(graph.shortestPath("Kiwi", "Apple", deadline));
+        Assertions.assertNull(graph.shortestPath("Zebra", "Zebra crossing", System.nanoTime() - 1));
+
+        Assertions.assertThrows(IOException.class, () -> load("Apple Mango"));
+    }
+
+    @Test
+    public void findsTheSamePathsAsBFS() throws IOException {
+        Random random = new Random(221);
+        for (int trial = 0; trial < 200; trial++) {
+            ShortestPathTests.MemoryLinks links = new ShortestPathTests.MemoryLinks();
+            List<String> lines = new ArrayList<>();
+            int pages = 5 + random.nextInt(100);
+            int edges = pages + random.nextInt(pages * 3);
+            for (int i = 0; i < edges; i++) {
+                // numbers of differing lengths, so that title order is not number order
+                String page = "p" + random.nextInt(pages);
+                String linked = "p" + random.nextInt(pages);
+                links.link(page, linked);
+                lines.add(page + "\t" + linked);
+            }
+            LinkGraph graph = load(lines.toArray(new String[0]));
+
+            // pages that are in the graph, as sources and targets of links
+            String start = lines.get(random.nextInt(lines.size())).split("\t")[0];
+            String target = lines.get(random.nextInt(lines.size())).split("\t")[1];
+            List<String> expected = new BFS(links, null, new ArrayList<>(), start, target).search();
+            Assertions.assertEquals(expected, graph.shortestPath(start, target, System.nanoTime() + 10_000_000_000L),
+                    start + " to " + target);
+            // the graph also serves as the links of an ordinary search
+            Assertions.assertEquals(expected, new BFS(graph, null, new ArrayList<>(), start, target).search());
+        }
+    }
+}
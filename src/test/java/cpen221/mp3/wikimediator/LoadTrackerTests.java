@@ -0,0 +1,71 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class LoadTrackerTests {
+
+    @Test
+    public void peak() {
+        LoadTracker tracker = new LoadTracker();
+        Assertions.assertEquals(0, tracker.peak(30));
+
+        for (long time : new long[] {10, 10, 11, 15, 40, 41, 42, 43}) {
+            tracker.record(time);
+        }
+        Assertions.assertEquals(0, tracker.peak(0));
+        Assertions.assertEquals(2, tracker.peak(1));
+        Assertions.assertEquals(3, tracker.peak(2));
+        Assertions.assertEquals(4, tracker.peak(4));
+        Assertions.assertEquals(5, tracker.peak(30));
+        Assertions.assertEquals(8, tracker.peak(34));
+
+        // more requests after the remembered peaks were taken
+        tracker.record(43);
+        tracker.record(44);
+        Assertions.assertEquals(5, tracker.peak(4));
+        Assertions.assertEquals(10, tracker.peak(35));
+    }
+
+    @Test
+    public void peakMatchesEveryWindow() {
+        Random random = new Random(221);
+        LoadTracker tracker = new LoadTracker();
+        List<Long> times = new ArrayList<>();
+        long time = 0;
+        for (int i = 0; i < 3000; i++) {
+            time += random.nextInt(4) == 0 ? random.nextInt(30) : 0;
+            // now and then a request is recorded after a later one
+            long recorded = random.nextInt(50) == 0 ? Math.max(0, time - random.nextInt(5)) : time;
+            tracker.record(recorded);
+            times.add(recorded);
+
+            if (i % 100 == 99) {
+                for (int window : new int[] {1, 5, 30, 120}) {
+                    Assertions.assertEquals(everyWindow(times, window), tracker.peak(window));
+                }
+            }
+        }
+        Assertions.assertEquals(times.size(), new LoadTracker(times).history().total());
+        Assertions.assertEquals(tracker.peak(60), new LoadTracker(times).peak(60));
+    }
+
+    /* try every request as the start of a window, over the times sorted */
+    private static int everyWindow(List<Long> times, int window) {
+        List<Long> sorted = new ArrayList<>(times);
+        sorted.sort(null);
+        int peak = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            int count = 0;
+            for (int j = i; j < sorted.size() && sorted.get(j) < sorted.get(i) + window; j++) {
+                count++;
+            }
+            peak = Math.max(peak, count);
+        }
+        return peak;
+    }
+}
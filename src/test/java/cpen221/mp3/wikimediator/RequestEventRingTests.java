@@ -0,0 +1,111 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RequestEventRingTests {
+
+    @Test
+    public void appliesEveryEventInOrderPerProducer() throws InterruptedException {
+        int producers = 8;
+        int perProducer = 20_000;
+        // only touched by the consumer thread until flush() returns
+        long[] next = new long[producers];
+        List<String> outOfOrder = new ArrayList<>();
+        int[] loads = new int[1];
+        RequestEventRing ring = new RequestEventRing(64, (request, time, load) -> {
+            int producer = Integer.parseInt(request);
+            if (time != next[producer]) {
+                outOfOrder.add(request + "@" + time);
+            }
+            next[producer] = time + 1;
+            loads[0] += load ? 1 : 0;
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String producer = String.valueOf(p);
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < perProducer; i++) {
+                    ring.publish(producer, i, i % 2 == 0);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ring.flush();
+
+        Assertions.assertEquals(List.of(), outOfOrder);
+        for (int p = 0; p < producers; p++) {
+            Assertions.assertEquals(perProducer, next[p]);
+        }
+        Assertions.assertEquals(producers * perProducer / 2, loads[0]);
+        Assertions.assertEquals(64, ring.capacity());
+
+        ring.publish("0", perProducer, true);
+        ring.close();
+        Assertions.assertEquals(perProducer + 1, next[0]);
+    }
+
+    @Test
+    public void closeRefusesEventsAndReleasesWaitingProducers() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20_000;
+        AtomicLong applied = new AtomicLong();
+        RequestEventRing.Sink sink = (request, time, load) -> applied.incrementAndGet();
+        AtomicReference<RequestEventRing> current = new AtomicReference<>(new RequestEventRing(2, sink));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < perProducer; i++) {
+                    // a refused event goes to whichever ring replaced the closed one
+                    while (!current.get().publish("", i, true)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        // close rings while producers are publishing to them, and often waiting for room in them
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            current.getAndSet(new RequestEventRing(2, sink)).close();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        current.get().close();
+
+        Assertions.assertEquals(producers * perProducer, applied.get());
+        Assertions.assertFalse(current.get().publish("", 0, true));
+        Assertions.assertEquals(producers * perProducer, applied.get());
+    }
+
+    @Test
+    public void throwingSinkDoesNotStopTheConsumer() {
+        List<Long> applied = new ArrayList<>();
+        RequestEventRing ring = new RequestEventRing(4, (request, time, load) -> {
+            if (time % 3 == 0) {
+                throw new IllegalArgumentException("bad event " + time);
+            }
+            applied.add(time);
+        });
+
+        // more events than the ring holds, so producers need the slots of the events that failed
+        for (long time = 1; time <= 10; time++) {
+            Assertions.assertTrue(ring.publish("A", time, true));
+        }
+        ring.flush();
+        Assertions.assertEquals(List.of(1L, 2L, 4L, 5L, 7L, 8L, 10L), applied);
+        ring.close();
+    }
+}
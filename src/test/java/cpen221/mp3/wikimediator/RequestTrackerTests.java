@@ -0,0 +1,111 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class RequestTrackerTests {
+
+    @Test
+    public void trendingCountsOnlyTheTimeFrame() {
+        RequestTracker tracker = new RequestTracker();
+        tracker.record("old", 100);
+        tracker.record("old", 101);
+        tracker.record("old", 102);
+        tracker.record("new", 150);
+        tracker.record("newer", 155);
+        tracker.record("new", 158);
+
+        Assertions.assertEquals(List.of("old", "new", "newer"), tracker.mostCommon(5));
+        Assertions.assertEquals(List.of("new", "newer"), tracker.mostCommonSince(160, 10, 5));
+        Assertions.assertEquals(List.of("new"), tracker.mostCommonSince(160, 10, 1));
+        Assertions.assertEquals(List.of("new", "newer"), tracker.mostCommonSince(160, 5, 5));
+        Assertions.assertEquals(List.of("new"), tracker.mostCommonSince(160, 4, 5));
+        Assertions.assertEquals(List.of(), tracker.mostCommonSince(160, 1, 5));
+        Assertions.assertEquals(List.of(), tracker.mostCommonSince(160, 100, 0));
+    }
+
+    @Test
+    public void trendingMatchesFilteredCopies() {
+        Random random = new Random(221);
+        RequestTracker tracker = new RequestTracker();
+        long time = 0;
+        for (int i = 0; i < 5000; i++) {
+            time += random.nextInt(3);
+            // now and then a request is recorded after a later one
+            long recorded = random.nextInt(20) == 0 ? time - random.nextInt(3) : time;
+            tracker.record("t" + random.nextInt(200), recorded);
+        }
+
+        for (int window : new int[] {0, 1, 7, 60, 500, 10000}) {
+            Assertions.assertEquals(filteredCopies(tracker.requests(), time, window, 15),
+                    tracker.mostCommonSince(time, window, 15));
+        }
+
+        // a tracker rebuilt from saved requests ranks them the same way
+        RequestTracker loaded = new RequestTracker(tracker.requests());
+        Assertions.assertEquals(tracker.mostCommon(20), loaded.mostCommon(20));
+        Assertions.assertEquals(tracker.mostCommonSince(time, 60, 15), loaded.mostCommonSince(time, 60, 15));
+    }
+
+    @Test
+    public void retentionBoundsHistory() {
+        RequestTracker tracker = new RequestTracker();
+        tracker.setRetention(new RetentionPolicy(60, 3600, 86400));
+        tracker.record("once", 0);
+        long now = 2 * 86400 - 1;
+        for (long time = 0; time <= now; time++) {
+            tracker.record("often", time);
+        }
+
+        Request often = tracker.requests().get(0);
+        Assertions.assertEquals(2 * 86400, often.count());
+        // two minutes to the second, an hour to the minute and a day to the hour, give or take a bucket each
+        Assertions.assertTrue(often.history().size() <= 120 + 61 + 25, "" + often.history().size());
+        Assertions.assertEquals(31, often.history().countSince(now - 30));
+
+        // every request for "once" was forgotten, so it was too
+        Assertions.assertEquals(List.of("often"), tracker.mostCommon(5));
+        Assertions.assertEquals(List.of("often"), tracker.mostCommonSince(now, 3 * 86400, 5));
+    }
+
+    @Test
+    public void retentionForgetsStringsNoLongerRequested() {
+        RequestTracker tracker = new RequestTracker();
+        tracker.setRetention(new RetentionPolicy(60, 600, 3600));
+        for (int i = 0; i < 5000; i++) {
+            tracker.record("old" + i, i / 10);
+        }
+        tracker.record("old0", 500);
+
+        // a day of requests for other Strings trims the old ones, which are never requested again
+        for (long time = 500; time < 86400; time += 10) {
+            tracker.record("new" + time % 100, time);
+        }
+        List<String> tracked = tracker.requests().stream().map(Request::getRequestString)
+                .collect(Collectors.toList());
+        Assertions.assertEquals(10, tracked.size());
+        Assertions.assertTrue(tracked.stream().allMatch(request -> request.startsWith("new")), "" + tracked);
+
+        // a forgotten String requested again starts over, after the Strings still tracked
+        tracker.record("old0", 86400);
+        Assertions.assertEquals(1, tracker.requests().get(10).count());
+        Assertions.assertEquals("old0", tracker.mostCommon(11).get(10));
+    }
+
+    /* how trending() used to rank requests */
+    private static List<String> filteredCopies(List<Request> requests, long currentTime, int window, int maxItems) {
+        List<Request> filtered = new ArrayList<>();
+        for (Request request : requests) {
+            try {
+                filtered.add(request.deepFilteredCopy(currentTime, window));
+            } catch (NoRecentRequestsException ignored) {}
+        }
+        return filtered.stream().sorted((r1, r2) -> Long.compare(r2.count(), r1.count()))
+                .limit(maxItems).map(Request::getRequestString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,180 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShortestPathTests {
+
+    /* links held in memory, counting how often each page's links are asked for */
+    static class MemoryLinks implements LinkProvider {
+        final Map<String, List<String>> from = new HashMap<>();
+        final Map<String, List<String>> to = new HashMap<>();
+        final Map<String, Integer> fetches = new HashMap<>();
+
+        void link(String page, String linked) {
+            from.computeIfAbsent(page, p -> new ArrayList<>()).add(linked);
+            to.computeIfAbsent(linked, p -> new ArrayList<>()).add(page);
+        }
+
+        @Override
+        public synchronized List<String> linksFrom(String title) {
+            fetches.merge("from " + title, 1, Integer::sum);
+            return from.getOrDefault(title, List.of());
+        }
+
+        @Override
+        public synchronized List<String> linksTo(String title) {
+            fetches.merge("to " + title, 1, Integer::sum);
+            return to.getOrDefault(title, List.of());
+        }
+    }
+
+    private static List<String> search(LinkProvider links, String start, String target) {
+        return new BFS(links, null, new ArrayList<>(), start, target).search();
+    }
+
+    @Test
+    public void findsSmallestOfEquallyShortPaths() {
+        MemoryLinks links = new MemoryLinks();
+        links.link("S", "M");
+        links.link("S", "B");
+        links.link("S", "A");
+        links.link("M", "T");
+        links.link("B", "C");
+        links.link("A", "D");
+        links.link("C", "T");
+        links.link("D", "T");
+        links.link("S", "Z");
+        links.link("Z", "T");
+
+        Assertions.assertEquals(List.of("S", "M", "T"), search(links, "S", "T"));
+        links.link("S", "T");
+        Assertions.assertEquals(List.of("S", "T"), search(links, "S", "T"));
+        Assertions.assertEquals(List.of("A"), search(links, "A", "A"));
+        Assertions.assertNull(search(links, "T", "S"));
+    }
+
+    @Test
+    public void searchesPastSixLinksFetchingEachPageOnce() {
+        MemoryLinks links = new MemoryLinks();
+        for (int i = 0; i < 12; i++) {
+            links.link("P" + i, "P" + (i + 1));
+            // dead ends along the way
+            links.link("P" + i, "Q" + i);
+            links.link("R" + i, "P" + i);
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i <= 12; i++) {
+            expected.add("P" + i);
+        }
+
+        Assertions.assertEquals(expected, search(links, "P0", "P12"));
+        for (int count : links.fetches.values()) {
+            Assertions.assertEquals(1, count);
+        }
+    }
+
+    @Test
+    public void matchesSingleDirectionSearch() {
+        Random random = new Random(221);
+        for (int trial = 0; trial < 200; trial++) {
+            MemoryLinks links = new MemoryLinks();
+            int pages = 5 + random.nextInt(60);
+            int edges = pages + random.nextInt(pages * 3);
+            for (int i = 0; i < edges; i++) {
+                links.link("p" + random.nextInt(pages), "p" + random.nextInt(pages));
+            }
+            String start = "p" + random.nextInt(pages);
+            String target = "p" + random.nextInt(pages);
+            Assertions.assertEquals(smallestShortestPath(links, start, target), search(links, start, target),
+                    start + " to " + target);
+        }
+    }
+
+    @Test
+    public void parallelFetchesFindTheSamePaths() throws InterruptedException {
+        ExecutorService fetchers = Executors.newFixedThreadPool(4);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger mostInFlight = new AtomicInteger();
+        try {
+            Random random = new Random(221);
+            for (int trial = 0; trial < 20; trial++) {
+                MemoryLinks memory = new MemoryLinks();
+                int pages = 50 + random.nextInt(200);
+                for (int i = 0; i < pages * 3; i++) {
+                    memory.link("p" + random.nextInt(pages), "p" + random.nextInt(pages));
+                }
+                // each fetch takes a moment, so that fetches overlap
+                LinkProvider slow = new LinkProvider() {
+                    @Override
+                    public List<String> linksFrom(String title) {
+                        return during(() -> memory.linksFrom(title));
+                    }
+
+                    @Override
+                    public List<String> linksTo(String title) {
+                        return during(() -> memory.linksTo(title));
+                    }
+
+                    private List<String> during(java.util.function.Supplier<List<String>> fetch) {
+                        mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                        inFlight.decrementAndGet();
+                        return fetch.get();
+                    }
+                };
+                String start = "p" + random.nextInt(pages);
+                String target = "p" + random.nextInt(pages);
+                Assertions.assertEquals(search(memory, start, target),
+                        new BFS(slow, fetchers, new ArrayList<>(), start, target).search());
+            }
+        } finally {
+            fetchers.shutdownNow();
+        }
+        Assertions.assertTrue(mostInFlight.get() > 1);
+        Assertions.assertTrue(mostInFlight.get() <= 4);
+    }
+
+    /* distances to target by a plain backward search, then the smallest page at each step that is one closer */
+    private static List<String> smallestShortestPath(MemoryLinks links, String start, String target) {
+        Map<String, Integer> toTarget = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        toTarget.put(target, 0);
+        queue.add(target);
+        while (!queue.isEmpty()) {
+            String page = queue.poll();
+            for (String before : links.to.getOrDefault(page, List.of())) {
+                if (!toTarget.containsKey(before)) {
+                    toTarget.put(before, toTarget.get(page) + 1);
+                    queue.add(before);
+                }
+            }
+        }
+        if (!toTarget.containsKey(start)) {
+            return null;
+        }
+        List<String> path = new ArrayList<>(List.of(start));
+        String page = start;
+        while (!page.equals(target)) {
+            int distance = toTarget.get(page);
+            String next = null;
+            for (String linked : links.from.getOrDefault(page, List.of())) {
+                if (toTarget.getOrDefault(linked, -1) == distance - 1 && (next == null || linked.compareTo(next) < 0)) {
+                    next = linked;
+                }
+            }
+            page = next;
+            path.add(page);
+        }
+        return path;
+    }
+}
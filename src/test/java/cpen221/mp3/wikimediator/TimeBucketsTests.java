@@ -0,0 +1,77 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TimeBucketsTests {
+
+    @Test
+    public void matchesSortedTimesAcrossChunks() {
+        Random random = new Random(221);
+        TimeBuckets buckets = new TimeBuckets();
+        List<Long> times = new ArrayList<>();
+        long time = 0;
+        for (int i = 0; i < 30_000; i++) {
+            time += random.nextInt(3);
+            // now and then a request is recorded after a later one
+            long recorded = random.nextInt(20) == 0 ? Math.max(0, time - random.nextInt(5)) : time;
+            buckets.add(recorded);
+            times.add(recorded);
+        }
+        times.sort(null);
+
+        Assertions.assertTrue(buckets.size() > 4096 * 2);
+        Assertions.assertEquals(times, buckets.asList());
+        Assertions.assertEquals(times, buckets.copy().asList());
+        for (long since : new long[] {-1, 0, 1000, time / 2, time, time + 1}) {
+            List<Long> recent = times.subList(countBefore(times, since), times.size());
+            Assertions.assertEquals(recent.size(), buckets.countSince(since));
+            Assertions.assertEquals(recent, buckets.copySince(since).asList());
+        }
+
+        // a copy with no unused room still grows, past its short last chunk
+        TimeBuckets copy = buckets.copy();
+        for (long t = time - 10; t <= time + 5000; t++) {
+            copy.add(t);
+            times.add(t);
+        }
+        times.sort(null);
+        Assertions.assertEquals(times, copy.asList());
+    }
+
+    @Test
+    public void retentionGivesBackChunks() {
+        TimeBuckets buckets = new TimeBuckets();
+        for (long time = 0; time < 20_000; time++) {
+            buckets.add(time);
+        }
+        Assertions.assertFalse(buckets.retain(RetentionPolicy.UNBOUNDED));
+        Assertions.assertEquals(20_000, buckets.size());
+        Assertions.assertTrue(buckets.retain(new RetentionPolicy(100, 1000, 1000)));
+
+        // a thousand seconds kept, the first 900 of them merged into the minutes starting at 18960 to 19860
+        Assertions.assertEquals(20_000, buckets.total());
+        Assertions.assertEquals(1000, buckets.countSince(18_960));
+        Assertions.assertEquals(100 + 16, buckets.size());
+        Assertions.assertEquals(18_960, buckets.time(0));
+        Assertions.assertEquals(19_999, buckets.latest());
+
+        for (long time = 20_000; time < 30_000; time++) {
+            buckets.add(time);
+        }
+        Assertions.assertEquals(30_000, buckets.total());
+        Assertions.assertEquals(10_000, buckets.countSince(20_000));
+    }
+
+    private static int countBefore(List<Long> sorted, long since) {
+        int count = 0;
+        while (count < sorted.size() && sorted.get(count) < since) {
+            count++;
+        }
+        return count;
+    }
+}